@@ -0,0 +1,189 @@
+/*
+ * Part of USBtinViewer - Simple GUI for USBtin - USB to CAN interface
+ * http://www.fischl.de/usbtin
+ *
+ * Copyright (C) 2026  Thomas Fischl
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import de.fischl.usbtin.*;
+import java.lang.management.ManagementFactory;
+import java.util.Random;
+
+/**
+ * Benchmark of the slcan receive path. Measures SlcanParser alone (in place
+ * into a frame slot) and the receive path of a channel: FastUSBtin (parser
+ * and CANChannel.createMessage) against USBtinLib's line based parsing
+ * (StringBuilder + CANMessage) with the same log message. Prints frames/s
+ * and bytes allocated per frame.
+ *
+ * Run with: ant benchmark
+ *
+ * @author Thomas Fischl
+ */
+public class SlcanParserBenchmark {
+
+    /** Count of frames in test stream */
+    protected static final int FRAMES = 100000;
+
+    /** Count of passes over the test stream */
+    protected static final int PASSES = 20;
+
+    /** Sink preventing dead code elimination */
+    protected static long sink = 0;
+
+    /** Ring keeping the last log messages, like the trace does */
+    protected static final LogMessage[] ring = new LogMessage[1024];
+
+    /**
+     * Entry point
+     *
+     * @param args Not used
+     */
+    public static void main(String[] args) {
+        byte[] stream = createStream();
+
+        // warm up
+        runParser(stream, 3);
+        runChannel(stream, 3);
+        runUSBtinLib(stream, 3);
+
+        report("SlcanParser", stream, 0);
+        report("FastUSBtin", stream, 1);
+        report("USBtinLib", stream, 2);
+    }
+
+    /**
+     * Run one measurement and print result
+     *
+     * @param name Name of parser
+     * @param stream Test stream
+     * @param path 0: SlcanParser, 1: FastUSBtin channel, 2: USBtinLib channel
+     */
+    protected static void report(String name, byte[] stream, int path) {
+        long allocated = allocatedBytes();
+        long start = System.nanoTime();
+        long frames = path == 0 ? runParser(stream, PASSES) : path == 1 ? runChannel(stream, PASSES) : runUSBtinLib(stream, PASSES);
+        long time = System.nanoTime() - start;
+        allocated = allocatedBytes() - allocated;
+
+        System.out.println(String.format("%-12s %10.0f frames/s %8.1f bytes/frame",
+                name, frames * 1e9 / time, allocated < 0 ? Double.NaN : (double) allocated / frames));
+    }
+
+    /**
+     * Parse stream with SlcanParser
+     *
+     * @param stream Test stream
+     * @param passes Count of passes
+     * @return Count of parsed frames
+     */
+    protected static long runParser(byte[] stream, int passes) {
+        SlcanParser parser = new SlcanParser();
+        CANFrame frame = parser.getFrame();
+        long frames = 0;
+        for (int p = 0; p < passes; p++) {
+            for (int i = 0; i < stream.length; i++) {
+                if (parser.feed(stream[i]) == SlcanParser.FRAME) {
+                    sink += frame.id + frame.data;
+                    frames++;
+                }
+            }
+        }
+        return frames;
+    }
+
+    /**
+     * Parse stream with SlcanParser and create log messages like
+     * CANChannel.receiveCANFrame does
+     *
+     * @param stream Test stream
+     * @param passes Count of passes
+     * @return Count of parsed frames
+     */
+    protected static long runChannel(byte[] stream, int passes) {
+        SlcanParser parser = new SlcanParser();
+        CANFrame frame = parser.getFrame();
+        CANChannel channel = new CANChannel(0, null, null);
+        long frames = 0;
+        for (int p = 0; p < passes; p++) {
+            for (int i = 0; i < stream.length; i++) {
+                if (parser.feed(stream[i]) == SlcanParser.FRAME) {
+                    ring[(int) frames & (ring.length - 1)] = channel.createMessage(frame, frames, 0);
+                    frames++;
+                }
+            }
+        }
+        return frames;
+    }
+
+    /**
+     * Parse stream like USBtin.serialEvent does and create log messages like
+     * CANChannel.receiveCANMessage does
+     *
+     * @param stream Test stream
+     * @param passes Count of passes
+     * @return Count of parsed frames
+     */
+    protected static long runUSBtinLib(byte[] stream, int passes) {
+        StringBuilder incoming = new StringBuilder();
+        long frames = 0;
+        for (int p = 0; p < passes; p++) {
+            for (int i = 0; i < stream.length; i++) {
+                byte b = stream[i];
+                if (b == '\r') {
+                    CANMessage canmsg = new CANMessage(incoming.toString());
+                    ring[(int) frames & (ring.length - 1)] = new LogMessage(canmsg, null, LogMessage.MessageType.IN, frames, 0);
+                    frames++;
+                    incoming.setLength(0);
+                } else {
+                    incoming.append((char) b);
+                }
+            }
+        }
+        return frames;
+    }
+
+    /**
+     * Create stream of random standard and extended frames
+     *
+     * @return Stream bytes
+     */
+    protected static byte[] createStream() {
+        Random random = new Random(1);
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < FRAMES; i++) {
+            byte[] data = new byte[random.nextInt(9)];
+            random.nextBytes(data);
+            boolean extended = random.nextInt(4) == 0;
+            int id = extended ? random.nextInt(0x20000000) : random.nextInt(0x800);
+            sb.append(new CANMessage(id, data, extended, false).toString()).append('\r');
+        }
+        return sb.toString().getBytes();
+    }
+
+    /**
+     * Get bytes allocated by current thread
+     *
+     * @return Allocated bytes, -1 if not supported by the VM
+     */
+    protected static long allocatedBytes() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return -1;
+    }
+}
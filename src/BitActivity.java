@@ -0,0 +1,54 @@
+/*
+ * Part of USBtinViewer - Simple GUI for USBtin - USB to CAN interface
+ * http://www.fischl.de/usbtin
+ *
+ * Copyright (C) 2026  Thomas Fischl
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import de.fischl.usbtin.*;
+
+/**
+ * Live per id statistics for bit activity analysis: toggle count per bit,
+ * value range and distinct values per byte. Each frame is counted in
+ * constant time, the frames are not kept.
+ *
+ * @author Thomas Fischl
+ */
+public class BitActivity extends IdStatisticsTable implements MessageSink {
+
+    /**
+     * Count message
+     *
+     * @param message Log message
+     */
+    @Override
+    public void receive(LogMessage message) {
+        CANMessage canmsg = message.getCanmsg();
+        if (canmsg == null) {
+            return;
+        }
+        byte[] data = canmsg.getData();
+        long key = IdStatistics.getKey(message.getChannel(), canmsg.getId(), canmsg.isExtended(), message.getType() == LogMessage.MessageType.OUT);
+        get(key).add(message.getTimestamp(), data.length, CANFrame.pack(data));
+    }
+
+    /**
+     * Nothing to do per flush
+     */
+    @Override
+    public void tick() {
+    }
+}
@@ -0,0 +1,192 @@
+/*
+ * Part of USBtinViewer - Simple GUI for USBtin - USB to CAN interface
+ * http://www.fischl.de/usbtin
+ *
+ * Copyright (C) 2026  Thomas Fischl
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.FontMetrics;
+import java.awt.Graphics;
+import java.awt.event.MouseEvent;
+import javax.swing.JComponent;
+
+/**
+ * Heatmap of bit activity of one id: 8 bytes by 8 bits, colored by toggle
+ * rate between consecutive frames on a logarithmic scale, with value range
+ * and count of distinct values per byte.
+ *
+ * @author Thomas Fischl
+ */
+public class BitHeatmap extends JComponent {
+
+    /** Width of byte label column */
+    protected static final int LABEL_WIDTH = 30;
+
+    /** Width of range column */
+    protected static final int RANGE_WIDTH = 150;
+
+    /** Height of title and bit label rows */
+    protected static final int HEADER_HEIGHT = 40;
+
+    /** Color of bits which never toggled */
+    protected static final Color STATIC_COLOR = new Color(225, 225, 225);
+
+    /** Color of lowest toggle rate */
+    protected static final Color LOW_COLOR = new Color(255, 235, 150);
+
+    /** Color of toggle rate 1 */
+    protected static final Color HIGH_COLOR = new Color(190, 0, 0);
+
+    /** Shown statistics, null if none */
+    protected IdStatistics statistics;
+
+    /**
+     * Create empty heatmap
+     */
+    public BitHeatmap() {
+        setPreferredSize(new Dimension(560, 330));
+        setToolTipText("");
+    }
+
+    /**
+     * Set shown statistics
+     *
+     * @param statistics Statistics, null for none
+     */
+    public void setStatistics(IdStatistics statistics) {
+        this.statistics = statistics;
+        repaint();
+    }
+
+    /**
+     * Get toggle rate of given bit
+     *
+     * @param index Byte index
+     * @param bit Bit in byte
+     * @return Toggles per frame pair (0..1)
+     */
+    protected double getRate(int index, int bit) {
+        return statistics.getCount() > 1 ? (double) statistics.getToggleCount(index, bit) / (statistics.getCount() - 1) : 0;
+    }
+
+    /**
+     * Get cell color of given toggle rate
+     *
+     * @param rate Toggle rate
+     * @return Color
+     */
+    protected static Color getColor(double rate) {
+        if (rate <= 0) {
+            return STATIC_COLOR;
+        }
+        // 0.1% .. 100% logarithmic
+        double t = Math.max(0, Math.min(1, Math.log10(rate * 1000) / 3));
+        return new Color((int) (LOW_COLOR.getRed() + (HIGH_COLOR.getRed() - LOW_COLOR.getRed()) * t),
+                (int) (LOW_COLOR.getGreen() + (HIGH_COLOR.getGreen() - LOW_COLOR.getGreen()) * t),
+                (int) (LOW_COLOR.getBlue() + (HIGH_COLOR.getBlue() - LOW_COLOR.getBlue()) * t));
+    }
+
+    /**
+     * Get cell width
+     *
+     * @return Width in pixels
+     */
+    protected int getCellWidth() {
+        return Math.max(8, (getWidth() - LABEL_WIDTH - RANGE_WIDTH) / 8);
+    }
+
+    /**
+     * Get cell height
+     *
+     * @return Height in pixels
+     */
+    protected int getCellHeight() {
+        return Math.max(8, (getHeight() - HEADER_HEIGHT) / 8);
+    }
+
+    /**
+     * Paint heatmap
+     *
+     * @param g Graphics
+     */
+    @Override
+    protected void paintComponent(Graphics g) {
+        g.setColor(Color.WHITE);
+        g.fillRect(0, 0, getWidth(), getHeight());
+        FontMetrics fm = g.getFontMetrics();
+        IdStatistics s = statistics;
+        if (s == null) {
+            g.setColor(Color.GRAY);
+            g.drawString("Select an id", LABEL_WIDTH, fm.getAscent());
+            return;
+        }
+
+        g.setColor(Color.BLACK);
+        g.drawString(String.format("%s  %d frames  period %.1f ms  dlc %d-%d", s.getName(), s.getCount(), s.getMeanPeriod(), s.getMinDlc(), s.getMaxDlc()), 2, fm.getAscent());
+        int cw = getCellWidth();
+        int ch = getCellHeight();
+        int y0 = HEADER_HEIGHT;
+        for (int bit = 7; bit >= 0; bit--) {
+            String label = "" + bit;
+            g.drawString(label, LABEL_WIDTH + (7 - bit) * cw + (cw - fm.stringWidth(label)) / 2, y0 - 4);
+        }
+        g.drawString("range / distinct", LABEL_WIDTH + 8 * cw + 6, y0 - 4);
+
+        for (int index = 0; index < 8; index++) {
+            int y = y0 + index * ch;
+            boolean used = index < s.getMaxDlc();
+            g.setColor(used ? Color.BLACK : Color.GRAY);
+            g.drawString("B" + index, 2, y + (ch + fm.getAscent()) / 2 - 1);
+            for (int bit = 7; bit >= 0; bit--) {
+                int x = LABEL_WIDTH + (7 - bit) * cw;
+                double rate = used ? getRate(index, bit) : 0;
+                g.setColor(used ? getColor(rate) : Color.WHITE);
+                g.fillRect(x, y, cw - 1, ch - 1);
+                if (rate > 0 && cw >= 30) {
+                    String text = rate < 0.1 ? String.format("%.1f", rate * 100) : String.format("%.0f", rate * 100);
+                    g.setColor(rate > 0.1 ? Color.WHITE : Color.BLACK);
+                    g.drawString(text, x + (cw - fm.stringWidth(text)) / 2, y + (ch + fm.getAscent()) / 2 - 1);
+                }
+            }
+            if (used) {
+                int distinct = s.getDistinct(index);
+                g.setColor(Color.BLACK);
+                g.drawString(String.format("%02x-%02x  %d%s", s.getMinByte(index), s.getMaxByte(index), distinct, distinct == 1 ? " const" : ""),
+                        LABEL_WIDTH + 8 * cw + 6, y + (ch + fm.getAscent()) / 2 - 1);
+            }
+        }
+    }
+
+    /**
+     * Get tooltip of cell under mouse
+     *
+     * @param e Mouse event
+     * @return Tooltip text
+     */
+    @Override
+    public String getToolTipText(MouseEvent e) {
+        IdStatistics s = statistics;
+        int column = (e.getX() - LABEL_WIDTH) / getCellWidth();
+        int index = (e.getY() - HEADER_HEIGHT) / getCellHeight();
+        if (s == null || e.getX() < LABEL_WIDTH || e.getY() < HEADER_HEIGHT || column > 7 || index > 7) {
+            return null;
+        }
+        int bit = 7 - column;
+        return String.format("Byte %d bit %d: %d toggles, %.3f%% of frames", index, bit, s.getToggleCount(index, bit), getRate(index, bit) * 100);
+    }
+}
@@ -0,0 +1,405 @@
+/*
+ * Part of USBtinViewer - Simple GUI for USBtin - USB to CAN interface
+ * http://www.fischl.de/usbtin
+ *
+ * Copyright (C) 2026  Thomas Fischl
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import de.fischl.usbtin.*;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Gateway forwarding CAN messages between two channels.
+ *
+ * Each direction listens on the source USBtin, filters on the receive thread
+ * and hands accepted messages to its own forwarding thread, which rewrites
+ * and sends them on the destination USBtin. Swing is never touched on this
+ * path; forwarded messages are only posted to the viewer log.
+ *
+ * @author Thomas Fischl
+ */
+public class CANBridge {
+
+    /**
+     * One forwarding direction
+     */
+    public static class Direction implements CANMessageListener, Runnable {
+
+        /** Capacity of the forwarding queue */
+        protected static final int QUEUE_SIZE = 1024;
+
+        /** Source channel */
+        protected final CANChannel source;
+
+        /** Destination channel */
+        protected final CANChannel destination;
+
+        /** Viewer receiving log messages of forwarded messages */
+        protected final USBtinViewer viewer;
+
+        /** Accepted ids: (id & filterMask) == filterValue */
+        protected int filterMask = 0;
+
+        /** Accepted ids: (id & filterMask) == filterValue */
+        protected int filterValue = 0;
+
+        /** Id rewrite table, null if ids are not rewritten */
+        protected HashMap<Integer, Integer> rewrite = null;
+
+        /** Payload AND mask, null if payload is not manipulated */
+        protected byte[] payloadAnd = null;
+
+        /** Payload OR mask, null if payload is not manipulated */
+        protected byte[] payloadOr = null;
+
+        /** Messages waiting for forwarding */
+        protected final ArrayBlockingQueue<Frame> queue = new ArrayBlockingQueue<Frame>(QUEUE_SIZE);
+
+        /** Host side forwarding latency (receive to sent) */
+        protected final LatencyHistogram latency = new LatencyHistogram();
+
+        /** Count of forwarded messages */
+        protected final AtomicLong forwarded = new AtomicLong();
+
+        /** Count of messages rejected by the filter */
+        protected final AtomicLong filtered = new AtomicLong();
+
+        /** Count of messages dropped because the queue was full */
+        protected final AtomicLong dropped = new AtomicLong();
+
+        /** Maximum queue depth seen */
+        protected volatile int maxDepth = 0;
+
+        /** Forwarding thread */
+        protected Thread thread;
+
+        /** True, while forwarding */
+        protected volatile boolean running = false;
+
+        /**
+         * Construct direction
+         *
+         * @param source Source channel
+         * @param destination Destination channel
+         * @param viewer Viewer receiving log messages
+         */
+        public Direction(CANChannel source, CANChannel destination, USBtinViewer viewer) {
+            this.source = source;
+            this.destination = destination;
+            this.viewer = viewer;
+        }
+
+        /**
+         * Set id filter. Ids are accepted if (id & mask) == (value & mask).
+         *
+         * @param mask Id mask, 0 accepts all ids
+         * @param value Id value
+         */
+        public void setFilter(int mask, int value) {
+            this.filterMask = mask;
+            this.filterValue = value & mask;
+        }
+
+        /**
+         * Set id rewrite table
+         *
+         * @param rewrite Map from source to destination id, null for none
+         */
+        public void setRewrite(HashMap<Integer, Integer> rewrite) {
+            this.rewrite = rewrite;
+        }
+
+        /**
+         * Set payload manipulation: data = (data & and) | or
+         *
+         * @param and AND mask (8 bytes), null for none
+         * @param or OR mask (8 bytes), null for none
+         */
+        public void setPayloadMasks(byte[] and, byte[] or) {
+            this.payloadAnd = and;
+            this.payloadOr = or;
+        }
+
+        /**
+         * Start forwarding
+         */
+        public void start() {
+            running = true;
+            thread = new Thread(this, "Bridge CH" + source.getIndex() + "->CH" + destination.getIndex());
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MAX_PRIORITY);
+            thread.start();
+            source.getUSBtin().addMessageListener(this);
+        }
+
+        /**
+         * Stop forwarding
+         */
+        public void stop() {
+            source.getUSBtin().removeMessageListener(this);
+            running = false;
+            if (thread != null) {
+                thread.interrupt();
+            }
+        }
+
+        /**
+         * Receive can message on source thread (called via listener)
+         *
+         * @param canmsg CAN message
+         */
+        @Override
+        public void receiveCANMessage(CANMessage canmsg) {
+            long time = System.nanoTime();
+            if ((canmsg.getId() & filterMask) != filterValue) {
+                filtered.incrementAndGet();
+                return;
+            }
+            if (!queue.offer(new Frame(canmsg, time))) {
+                dropped.incrementAndGet();
+                return;
+            }
+            int depth = queue.size();
+            if (depth > maxDepth) {
+                maxDepth = depth;
+            }
+        }
+
+        /**
+         * Forwarding loop
+         */
+        @Override
+        public void run() {
+            while (running) {
+                Frame frame;
+                try {
+                    frame = queue.poll(100, TimeUnit.MILLISECONDS);
+                } catch (InterruptedException e) {
+                    break;
+                }
+                if (frame == null) {
+                    continue;
+                }
+
+                CANMessage canmsg = transform(frame.canmsg);
+                try {
+                    destination.send(canmsg);
+                } catch (USBtinException e) {
+                    viewer.log(e.getMessage(), LogMessage.MessageType.ERROR);
+                    continue;
+                }
+                latency.record(System.nanoTime() - frame.time);
+                forwarded.incrementAndGet();
+                viewer.log(new LogMessage(canmsg, null, LogMessage.MessageType.OUT, viewer.getTimestamp(), destination.getIndex()));
+            }
+        }
+
+        /**
+         * Apply id rewrite and payload manipulation
+         *
+         * @param canmsg Received CAN message
+         * @return CAN message to send
+         */
+        protected CANMessage transform(CANMessage canmsg) {
+            if (rewrite == null && payloadAnd == null && payloadOr == null) {
+                return canmsg;
+            }
+            int id = canmsg.getId();
+            if (rewrite != null) {
+                Integer newId = rewrite.get(id);
+                if (newId != null) {
+                    id = newId;
+                }
+            }
+            byte[] data = canmsg.getData();
+            if (!canmsg.isRtr() && (payloadAnd != null || payloadOr != null)) {
+                data = data.clone();
+                for (int i = 0; i < data.length; i++) {
+                    if (payloadAnd != null) {
+                        data[i] &= payloadAnd[i];
+                    }
+                    if (payloadOr != null) {
+                        data[i] |= payloadOr[i];
+                    }
+                }
+            }
+            return new CANMessage(id, data, canmsg.isExtended() || id > 0x7ff, canmsg.isRtr());
+        }
+
+        /**
+         * Get statistics of this direction
+         *
+         * @return Statistics string
+         */
+        public String getReport() {
+            return "CH" + source.getIndex() + " -> CH" + destination.getIndex()
+                    + ": forwarded " + forwarded.get() + ", filtered " + filtered.get() + ", dropped " + dropped.get()
+                    + ", queue " + queue.size() + " (max " + maxDepth + ")\n"
+                    + "    latency " + latency;
+        }
+    }
+
+    /**
+     * Received message with receive time
+     */
+    protected static class Frame {
+
+        /** Received CAN message */
+        final CANMessage canmsg;
+
+        /** Receive time in nanoseconds */
+        final long time;
+
+        Frame(CANMessage canmsg, long time) {
+            this.canmsg = canmsg;
+            this.time = time;
+        }
+    }
+
+    /** Forwarding directions */
+    protected final ArrayList<Direction> directions = new ArrayList<Direction>();
+
+    /**
+     * Add forwarding direction
+     *
+     * @param direction Direction to add
+     */
+    public void addDirection(Direction direction) {
+        directions.add(direction);
+    }
+
+    /**
+     * Get forwarding directions
+     *
+     * @return Directions
+     */
+    public ArrayList<Direction> getDirections() {
+        return directions;
+    }
+
+    /**
+     * Check if given channel is source or destination of a direction
+     *
+     * @param channel Channel
+     * @return True, if channel is used by this bridge
+     */
+    public boolean uses(CANChannel channel) {
+        for (Direction direction : directions) {
+            if (direction.source == channel || direction.destination == channel) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Start all directions
+     */
+    public void start() {
+        for (Direction direction : directions) {
+            direction.start();
+        }
+    }
+
+    /**
+     * Stop all directions
+     */
+    public void stop() {
+        for (Direction direction : directions) {
+            direction.stop();
+        }
+    }
+
+    /**
+     * Get statistics of all directions
+     *
+     * @return Statistics string
+     */
+    public String getReport() {
+        StringBuilder sb = new StringBuilder();
+        for (Direction direction : directions) {
+            sb.append(direction.getReport()).append('\n');
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Parse id rewrite table given as "from=to,from=to" with hex ids
+     *
+     * @param s Rewrite string
+     * @return Rewrite table, null if string is empty
+     * @throws NumberFormatException Invalid hex value
+     */
+    public static HashMap<Integer, Integer> parseRewrite(String s) {
+        if (s.trim().length() == 0) {
+            return null;
+        }
+        HashMap<Integer, Integer> rewrite = new HashMap<Integer, Integer>();
+        for (String entry : s.split(",")) {
+            String[] pair = entry.split("=");
+            if (pair.length != 2) {
+                throw new NumberFormatException("Invalid rewrite entry: " + entry);
+            }
+            rewrite.put(Integer.parseInt(pair[0].trim(), 16), Integer.parseInt(pair[1].trim(), 16));
+        }
+        return rewrite;
+    }
+
+    /**
+     * Get rewrite table for the opposite direction
+     *
+     * @param rewrite Rewrite table, may be null
+     * @return Inverted rewrite table, null if given table is null
+     */
+    public static HashMap<Integer, Integer> invertRewrite(HashMap<Integer, Integer> rewrite) {
+        if (rewrite == null) {
+            return null;
+        }
+        HashMap<Integer, Integer> inverted = new HashMap<Integer, Integer>();
+        for (java.util.Map.Entry<Integer, Integer> entry : rewrite.entrySet()) {
+            inverted.put(entry.getValue(), entry.getKey());
+        }
+        return inverted;
+    }
+
+    /**
+     * Parse payload mask given as up to 8 hex bytes
+     *
+     * @param s Mask string, e.g. "ff00ffffffffffff"
+     * @param fill Value of bytes not given
+     * @return Mask of 8 bytes, null if string is empty
+     * @throws NumberFormatException Invalid hex value
+     */
+    public static byte[] parseMask(String s, int fill) {
+        s = s.replace(" ", "");
+        if (s.length() == 0) {
+            return null;
+        }
+        byte[] mask = new byte[8];
+        for (int i = 0; i < 8; i++) {
+            if (i * 2 + 2 <= s.length()) {
+                mask[i] = (byte) Integer.parseInt(s.substring(i * 2, i * 2 + 2), 16);
+            } else {
+                mask[i] = (byte) fill;
+            }
+        }
+        return mask;
+    }
+}
@@ -0,0 +1,225 @@
+/*
+ * Part of USBtinViewer - Simple GUI for USBtin - USB to CAN interface
+ * http://www.fischl.de/usbtin
+ *
+ * Copyright (C) 2026  Thomas Fischl
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import de.fischl.usbtin.*;
+
+/**
+ * One USBtin device opened by the viewer. Received messages are tagged with
+ * the channel index and handed to the viewer on the receive thread of the
+ * device. With a FastUSBtin the frames are taken from its allocation free
+ * parser, otherwise from USBtinLib's message listener. Either way one
+ * CANMessage and one LogMessage are created per frame, as the trace keeps
+ * them.
+ *
+ * @author Thomas Fischl
+ */
+public class CANChannel implements CANMessageListener, CANFrameListener {
+
+    /** Index of this channel, 0 is the main channel */
+    protected final int index;
+
+    /** USBtin device */
+    protected final USBtin usbtin;
+
+    /** Viewer receiving the log messages */
+    protected final USBtinViewer viewer;
+
+    /** Name of this channel (serial port) */
+    protected String name;
+
+    /** True, if CAN channel is open */
+    protected volatile boolean open = false;
+
+    /** Range of device timestamps in ms */
+    protected static final int DEVICE_TIME_RANGE = 60000;
+
+    /** Maximum lag of device time behind host time (ms) before resync */
+    protected static final long MAX_DEVICE_LAG = 500;
+
+    /** Host time of device time 0 in the current range, MIN_VALUE if not synced */
+    protected long deviceOffset = Long.MIN_VALUE;
+
+    /** Previous device timestamp */
+    protected int lastDeviceTime = 0;
+
+    /**
+     * Construct channel
+     *
+     * @param index Channel index
+     * @param usbtin USBtin device
+     * @param viewer Viewer receiving the log messages
+     */
+    public CANChannel(int index, USBtin usbtin, USBtinViewer viewer) {
+        this.index = index;
+        this.usbtin = usbtin;
+        this.viewer = viewer;
+        this.name = "CH" + index;
+    }
+
+    /**
+     * Get channel index
+     *
+     * @return Channel index
+     */
+    public int getIndex() {
+        return index;
+    }
+
+    /**
+     * Get channel name
+     *
+     * @return Name of channel
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Get USBtin device of this channel
+     *
+     * @return USBtin device
+     */
+    public USBtin getUSBtin() {
+        return usbtin;
+    }
+
+    /**
+     * Check if CAN channel is open
+     *
+     * @return True, if open
+     */
+    public boolean isOpen() {
+        return open;
+    }
+
+    /**
+     * Connect to USBtin and open CAN channel
+     *
+     * @param port Serial port
+     * @param baudrate CAN baudrate
+     * @param mode Open mode
+     * @throws USBtinException Error while connecting
+     */
+    public void open(String port, int baudrate, USBtin.OpenMode mode) throws USBtinException {
+        deviceOffset = Long.MIN_VALUE;
+        usbtin.connect(port);
+        usbtin.openCANChannel(baudrate, mode);
+        if (usbtin instanceof FastUSBtin) {
+            ((FastUSBtin) usbtin).addFrameListener(this);
+        } else {
+            usbtin.addMessageListener(this);
+        }
+        name = port;
+        open = true;
+    }
+
+    /**
+     * Close CAN channel and disconnect from USBtin
+     *
+     * @throws USBtinException Error while disconnecting
+     */
+    public void close() throws USBtinException {
+        open = false;
+        if (usbtin instanceof FastUSBtin) {
+            ((FastUSBtin) usbtin).removeFrameListener(this);
+        }
+        usbtin.removeMessageListener(this);
+        usbtin.closeCANChannel();
+        usbtin.disconnect();
+    }
+
+    /**
+     * Send CAN message on this channel. May be called from any thread.
+     *
+     * @param canmsg CAN message
+     * @throws USBtinException Error while sending
+     */
+    public void send(CANMessage canmsg) throws USBtinException {
+        synchronized (usbtin) {
+            usbtin.send(canmsg);
+        }
+    }
+
+    /**
+     * Receive can message (called via listener)
+     *
+     * @param canmsg CAN message
+     */
+    @Override
+    public void receiveCANMessage(CANMessage canmsg) {
+        LogMessage message = new LogMessage(canmsg, null, LogMessage.MessageType.IN, viewer.getTimestamp(), index);
+        message.setNanoTime(System.nanoTime());
+        viewer.log(message);
+    }
+
+    /**
+     * Receive can frame from fast parser (called via listener). Frames with
+     * device timestamp get the device time mapped to the host time base.
+     *
+     * @param frame CAN frame
+     */
+    @Override
+    public void receiveCANFrame(CANFrame frame) {
+        long nanoTime = System.nanoTime();
+        long timestamp = viewer.getTimestamp();
+        if (frame.timestamp >= 0) {
+            timestamp = toHostTime(frame.timestamp, timestamp);
+        }
+        viewer.log(createMessage(frame, timestamp, nanoTime));
+    }
+
+    /**
+     * Map device timestamp to host time. The offset follows the frame with
+     * the least transfer delay: it is moved whenever the device time would
+     * be later than the host time, and resynced if it falls behind by more
+     * than MAX_DEVICE_LAG (clock drift, idle bus longer than one range,
+     * cleared time base).
+     *
+     * @param deviceTime Device timestamp (0..59999 ms)
+     * @param hostTime Host time of reception in ms
+     * @return Time of frame in ms
+     */
+    protected long toHostTime(int deviceTime, long hostTime) {
+        if (deviceOffset != Long.MIN_VALUE && deviceTime < lastDeviceTime) {
+            deviceOffset += DEVICE_TIME_RANGE;
+        }
+        lastDeviceTime = deviceTime;
+        long time = deviceOffset + deviceTime;
+        if (deviceOffset == Long.MIN_VALUE || time > hostTime || time < hostTime - MAX_DEVICE_LAG) {
+            deviceOffset = hostTime - deviceTime;
+            time = hostTime;
+        }
+        return time;
+    }
+
+    /**
+     * Create log message of received frame
+     *
+     * @param frame CAN frame
+     * @param timestamp Timestamp in ms
+     * @param nanoTime Receive time (System.nanoTime)
+     * @return Log message
+     */
+    protected LogMessage createMessage(CANFrame frame, long timestamp, long nanoTime) {
+        LogMessage message = new LogMessage(frame.toCANMessage(), null, LogMessage.MessageType.IN, timestamp, index);
+        message.setNanoTime(nanoTime);
+        return message;
+    }
+}
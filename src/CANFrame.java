@@ -0,0 +1,112 @@
+/*
+ * Part of USBtinViewer - Simple GUI for USBtin - USB to CAN interface
+ * http://www.fischl.de/usbtin
+ *
+ * Copyright (C) 2026  Thomas Fischl
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import de.fischl.usbtin.*;
+
+/**
+ * Reusable CAN frame slot with the payload packed into a long. Data byte 0
+ * is stored in the most significant byte, unused bytes are 0.
+ *
+ * @author Thomas Fischl
+ */
+public class CANFrame {
+
+    /** CAN id */
+    public int id;
+
+    /** True, if extended id */
+    public boolean extended;
+
+    /** True, if remote transmission request */
+    public boolean rtr;
+
+    /** Data length code */
+    public int dlc;
+
+    /** Packed payload */
+    public long data;
+
+    /** Device timestamp in milliseconds (0..59999), -1 if not available */
+    public int timestamp = -1;
+
+    /**
+     * Pack given payload bytes into a long
+     *
+     * @param bytes Payload (up to 8 bytes)
+     * @return Packed payload
+     */
+    public static long pack(byte[] bytes) {
+        long data = 0;
+        for (int i = 0; i < bytes.length && i < 8; i++) {
+            data |= (bytes[i] & 0xffL) << (56 - i * 8);
+        }
+        return data;
+    }
+
+    /**
+     * Unpack given count of payload bytes
+     *
+     * @param data Packed payload
+     * @param dlc Count of bytes
+     * @return Payload bytes
+     */
+    public static byte[] unpack(long data, int dlc) {
+        byte[] bytes = new byte[dlc];
+        for (int i = 0; i < dlc; i++) {
+            bytes[i] = (byte) (data >>> (56 - i * 8));
+        }
+        return bytes;
+    }
+
+    /**
+     * Get payload byte
+     *
+     * @param data Packed payload
+     * @param index Byte index (0..7)
+     * @return Byte value (0..255)
+     */
+    public static int getByte(long data, int index) {
+        return (int) (data >>> (56 - index * 8)) & 0xff;
+    }
+
+    /**
+     * Create CAN message from this frame
+     *
+     * @return New CAN message
+     */
+    public CANMessage toCANMessage() {
+        return new CANMessage(id, unpack(data, dlc), extended, rtr);
+    }
+
+    /**
+     * Fill this frame from given CAN message
+     *
+     * @param canmsg CAN message
+     */
+    public void set(CANMessage canmsg) {
+        byte[] bytes = canmsg.getData();
+        id = canmsg.getId();
+        extended = canmsg.isExtended();
+        rtr = canmsg.isRtr();
+        dlc = bytes.length;
+        data = pack(bytes);
+        timestamp = -1;
+    }
+}
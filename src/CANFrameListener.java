@@ -0,0 +1,35 @@
+/*
+ * Part of USBtinViewer - Simple GUI for USBtin - USB to CAN interface
+ * http://www.fischl.de/usbtin
+ *
+ * Copyright (C) 2026  Thomas Fischl
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * Listener for received CAN frames
+ *
+ * @author Thomas Fischl
+ */
+public interface CANFrameListener {
+
+    /**
+     * Receive CAN frame. The frame slot is reused after this call returns,
+     * so listeners must copy the fields they want to keep.
+     *
+     * @param frame Received frame
+     */
+    public void receiveCANFrame(CANFrame frame);
+}
@@ -0,0 +1,255 @@
+/*
+ * Part of USBtinViewer - Simple GUI for USBtin - USB to CAN interface
+ * http://www.fischl.de/usbtin
+ *
+ * Copyright (C) 2026  Thomas Fischl
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Per id statistics of a capture file, computed in parallel.
+ *
+ * The file is split at record boundaries into chunks which are memory
+ * mapped and aggregated on all cores into per chunk statistics tables. The
+ * partial statistics are merged in file order afterwards.
+ *
+ * @author Thomas Fischl
+ */
+public class CaptureAnalyzer {
+
+    /** Minimum count of records per chunk */
+    protected static final long MIN_CHUNK_RECORDS = 64 * 1024;
+
+    /** Maximum count of records per chunk (mapped size below 2 GB) */
+    protected static final long MAX_CHUNK_RECORDS = 32 * 1024 * 1024;
+
+    /** Capture file */
+    protected final File file;
+
+    /** Statistics by key, in key order */
+    protected final TreeMap<Long, IdStatistics> statistics = new TreeMap<Long, IdStatistics>();
+
+    /** Count of analyzed records */
+    protected long records = 0;
+
+    /** Timestamp of first analyzed record */
+    protected long first = 0;
+
+    /** Timestamp of last analyzed record */
+    protected long last = 0;
+
+    /**
+     * Create analyzer of given capture file
+     *
+     * @param file Capture file
+     */
+    public CaptureAnalyzer(File file) {
+        this.file = file;
+    }
+
+    /**
+     * Analyze whole file on all cores
+     *
+     * @throws IOException Error while reading
+     */
+    public void analyze() throws IOException {
+        analyze(0, -1, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Analyze records of given time range on all cores
+     *
+     * @param fromTime Start time in ms
+     * @param toTime End time in ms (exclusive)
+     * @throws IOException Error while reading
+     */
+    public void analyzeTime(long fromTime, long toTime) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        long from;
+        long to;
+        try {
+            long count = CaptureFile.checkHeader(raf);
+            from = CaptureFile.findRecord(raf, count, fromTime);
+            to = CaptureFile.findRecord(raf, count, toTime);
+        } finally {
+            raf.close();
+        }
+        analyze(from, to, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Analyze given range of records
+     *
+     * @param from First record
+     * @param to Record after last record, -1 for end of file
+     * @param threads Count of threads
+     * @throws IOException Error while reading
+     */
+    public void analyze(long from, long to, int threads) throws IOException {
+        statistics.clear();
+        records = 0;
+
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, threads));
+        try {
+            long count = CaptureFile.checkHeader(raf);
+            if (to < 0 || to > count) {
+                to = count;
+            }
+            if (from >= to) {
+                return;
+            }
+
+            // about four chunks per thread for load balancing
+            long total = to - from;
+            long chunk = Math.min(MAX_CHUNK_RECORDS, Math.max(MIN_CHUNK_RECORDS, total / (threads * 4L) + 1));
+            final FileChannel channel = raf.getChannel();
+            ArrayList<Future<Partial>> futures = new ArrayList<Future<Partial>>();
+            for (long start = from; start < to; start += chunk) {
+                final long position = CaptureFile.HEADER_SIZE + start * CaptureFile.RECORD_SIZE;
+                final int n = (int) Math.min(chunk, to - start);
+                futures.add(pool.submit(new Callable<Partial>() {
+                    @Override
+                    public Partial call() throws IOException {
+                        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, (long) n * CaptureFile.RECORD_SIZE);
+                        return aggregate(buffer, n);
+                    }
+                }));
+            }
+
+            // merge partial statistics in file order
+            boolean firstChunk = true;
+            for (Future<Partial> future : futures) {
+                Partial partial = future.get();
+                if (firstChunk) {
+                    first = partial.first;
+                    firstChunk = false;
+                }
+                last = partial.last;
+                records += partial.records;
+                for (IdStatistics s : partial.values) {
+                    if (s == null) {
+                        continue;
+                    }
+                    IdStatistics merged = statistics.get(s.getKey());
+                    if (merged == null) {
+                        statistics.put(s.getKey(), s);
+                    } else {
+                        merged.merge(s);
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            throw new IOException("Analysis interrupted");
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof IOException ? (IOException) e.getCause() : new IOException(e.getCause().toString());
+        } finally {
+            pool.shutdownNow();
+            raf.close();
+        }
+    }
+
+    /**
+     * Aggregate records of one chunk
+     *
+     * @param buffer Mapped chunk
+     * @param count Count of records
+     * @return Partial statistics
+     */
+    protected static Partial aggregate(MappedByteBuffer buffer, int count) {
+        Partial partial = new Partial();
+        partial.records = count;
+        for (int i = 0; i < count; i++) {
+            int offset = i * CaptureFile.RECORD_SIZE;
+            long timestamp = buffer.getLong(offset);
+            int id = buffer.getInt(offset + 8);
+            int flags = buffer.get(offset + 12);
+            int channel = buffer.get(offset + 13) & 0xff;
+            int dlc = buffer.get(offset + 14);
+            long data = buffer.getLong(offset + 16);
+            if (i == 0) {
+                partial.first = timestamp;
+            }
+            partial.last = timestamp;
+            long key = IdStatistics.getKey(channel, id, (flags & CaptureFile.FLAG_EXTENDED) != 0, (flags & CaptureFile.FLAG_OUT) != 0);
+            partial.get(key).add(timestamp, dlc, data);
+        }
+        return partial;
+    }
+
+    /**
+     * Get statistics by key
+     *
+     * @return Statistics in key order
+     */
+    public TreeMap<Long, IdStatistics> getStatistics() {
+        return statistics;
+    }
+
+    /**
+     * Get count of analyzed records
+     *
+     * @return Count of records
+     */
+    public long getRecords() {
+        return records;
+    }
+
+    /**
+     * Get duration of analyzed records
+     *
+     * @return Duration in ms
+     */
+    public long getDuration() {
+        return records > 0 ? last - first : 0;
+    }
+
+    /**
+     * Get capture file
+     *
+     * @return File
+     */
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * Statistics of one chunk
+     */
+    protected static class Partial extends IdStatisticsTable {
+
+        /** Count of records */
+        long records = 0;
+
+        /** Timestamp of first record */
+        long first = 0;
+
+        /** Timestamp of last record */
+        long last = 0;
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * Part of USBtinViewer - Simple GUI for USBtin - USB to CAN interface
+ * http://www.fischl.de/usbtin
+ *
+ * Copyright (C) 2026  Thomas Fischl
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.util.TreeSet;
+
+/**
+ * Comparison of two captures per id: new and missing ids, period and jitter
+ * shifts, payload byte ranges and bit activity.
+ *
+ * Usage: java -cp ... CaptureDiff before.usbtincap after.usbtincap
+ *
+ * @author Thomas Fischl
+ */
+public class CaptureDiff {
+
+    /** Relative period change reported as shift */
+    protected static final double PERIOD_TOLERANCE = 0.05;
+
+    /** Absolute period change (ms) below which no shift is reported */
+    protected static final double PERIOD_MIN_CHANGE = 1.0;
+
+    /**
+     * Compare two analyzed captures
+     *
+     * @param a Capture before
+     * @param b Capture after
+     * @return Report text
+     */
+    public static String compare(CaptureAnalyzer a, CaptureAnalyzer b) {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("A: %s, %d frames, %.1f s%n", a.getFile().getName(), a.getRecords(), a.getDuration() / 1000.0));
+        sb.append(String.format("B: %s, %d frames, %.1f s%n%n", b.getFile().getName(), b.getRecords(), b.getDuration() / 1000.0));
+
+        TreeSet<Long> keys = new TreeSet<Long>(a.getStatistics().keySet());
+        keys.addAll(b.getStatistics().keySet());
+        int changed = 0;
+        for (Long key : keys) {
+            IdStatistics before = a.getStatistics().get(key);
+            IdStatistics after = b.getStatistics().get(key);
+            if (before == null) {
+                sb.append(String.format("%-18s NEW      %d frames, period %.1f ms, bytes %s%n", after.getName(), after.getCount(), after.getMeanPeriod(), after.getRanges()));
+                changed++;
+                continue;
+            }
+            if (after == null) {
+                sb.append(String.format("%-18s MISSING  %d frames, period %.1f ms, bytes %s%n", before.getName(), before.getCount(), before.getMeanPeriod(), before.getRanges()));
+                changed++;
+                continue;
+            }
+
+            StringBuilder details = new StringBuilder();
+            double pa = before.getMeanPeriod();
+            double pb = after.getMeanPeriod();
+            if (Math.abs(pb - pa) > PERIOD_MIN_CHANGE && Math.abs(pb - pa) > pa * PERIOD_TOLERANCE) {
+                details.append(String.format("  period %.1f -> %.1f ms (jitter %.1f -> %.1f ms)%n", pa, pb, before.getJitter(), after.getJitter()));
+            }
+            if (before.getMinDlc() != after.getMinDlc() || before.getMaxDlc() != after.getMaxDlc()) {
+                details.append(String.format("  dlc %d-%d -> %d-%d%n", before.getMinDlc(), before.getMaxDlc(), after.getMinDlc(), after.getMaxDlc()));
+            }
+            String ra = before.getRanges();
+            String rb = after.getRanges();
+            if (!ra.equals(rb)) {
+                details.append(String.format("  bytes  A %s%n         B %s%n", ra, rb));
+            }
+            long onlyA = before.getToggled() & ~after.getToggled();
+            long onlyB = after.getToggled() & ~before.getToggled();
+            if (onlyA != 0 || onlyB != 0) {
+                details.append(String.format("  bits toggling only in A %016x, only in B %016x%n", onlyA, onlyB));
+            }
+            if (details.length() > 0) {
+                sb.append(String.format("%-18s CHANGED  %d -> %d frames%n", before.getName(), before.getCount(), after.getCount()));
+                sb.append(details);
+                changed++;
+            }
+        }
+        sb.append(String.format("%n%d ids, %d with differences%n", keys.size(), changed));
+        return sb.toString();
+    }
+
+    /**
+     * Command line entry point
+     *
+     * @param args Capture before and capture after
+     */
+    public static void main(String[] args) {
+        if (args.length != 2) {
+            System.err.println("Usage: CaptureDiff <before" + CaptureFile.EXTENSION + "> <after" + CaptureFile.EXTENSION + ">");
+            System.exit(1);
+        }
+        try {
+            CaptureAnalyzer a = new CaptureAnalyzer(new File(args[0]));
+            CaptureAnalyzer b = new CaptureAnalyzer(new File(args[1]));
+            a.analyze();
+            b.analyze();
+            System.out.print(compare(a, b));
+        } catch (IOException e) {
+            System.err.println(e.getMessage());
+            System.exit(1);
+        }
+    }
+}
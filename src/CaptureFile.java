@@ -0,0 +1,257 @@
+/*
+ * Part of USBtinViewer - Simple GUI for USBtin - USB to CAN interface
+ * http://www.fischl.de/usbtin
+ *
+ * Copyright (C) 2026  Thomas Fischl
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import de.fischl.usbtin.*;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Capture file with fixed size records, so files can be split at any
+ * multiple of the record size and record n is found by offset.
+ *
+ * Header (16 bytes): magic "USBTINCP", version (int), record size (int).
+ * Record (24 bytes, big endian): timestamp in ms (long), id (int), flags
+ * (1 = extended, 2 = rtr, 4 = sent), channel, dlc, 0, packed payload (long).
+ *
+ * @author Thomas Fischl
+ */
+public class CaptureFile {
+
+    /** File magic */
+    public static final byte[] MAGIC = new byte[]{'U', 'S', 'B', 'T', 'I', 'N', 'C', 'P'};
+
+    /** Format version */
+    public static final int VERSION = 1;
+
+    /** Size of file header */
+    public static final int HEADER_SIZE = 16;
+
+    /** Size of one record */
+    public static final int RECORD_SIZE = 24;
+
+    /** Flag: extended id */
+    public static final int FLAG_EXTENDED = 1;
+
+    /** Flag: remote transmission request */
+    public static final int FLAG_RTR = 2;
+
+    /** Flag: message was sent */
+    public static final int FLAG_OUT = 4;
+
+    /** File name extension */
+    public static final String EXTENSION = ".usbtincap";
+
+    /**
+     * Writer appending records to a capture file
+     */
+    public static class Writer {
+
+        /** File channel */
+        protected final FileChannel channel;
+
+        /** Output buffer */
+        protected final ByteBuffer buffer = ByteBuffer.allocateDirect(64 * 1024);
+
+        /** Count of written records */
+        protected long count = 0;
+
+        /**
+         * Create capture file and write header
+         *
+         * @param file File to create
+         * @throws IOException Error while writing
+         */
+        public Writer(File file) throws IOException {
+            channel = new FileOutputStream(file).getChannel();
+            buffer.put(MAGIC);
+            buffer.putInt(VERSION);
+            buffer.putInt(RECORD_SIZE);
+        }
+
+        /**
+         * Write one record
+         *
+         * @param timestamp Timestamp in ms
+         * @param id CAN id
+         * @param flags Flags
+         * @param channelIndex Channel index
+         * @param dlc Data length code
+         * @param data Packed payload
+         * @throws IOException Error while writing
+         */
+        public void write(long timestamp, int id, int flags, int channelIndex, int dlc, long data) throws IOException {
+            if (buffer.remaining() < RECORD_SIZE) {
+                flush();
+            }
+            buffer.putLong(timestamp);
+            buffer.putInt(id);
+            buffer.put((byte) flags);
+            buffer.put((byte) channelIndex);
+            buffer.put((byte) dlc);
+            buffer.put((byte) 0);
+            buffer.putLong(data);
+            count++;
+        }
+
+        /**
+         * Write CAN message of given log message, other messages are ignored
+         *
+         * @param message Log message
+         * @throws IOException Error while writing
+         */
+        public void write(LogMessage message) throws IOException {
+            CANMessage canmsg = message.getCanmsg();
+            if (canmsg == null) {
+                return;
+            }
+            byte[] data = canmsg.getData();
+            write(message.getTimestamp(), canmsg.getId(), getFlags(message), message.getChannel(), data.length, CANFrame.pack(data));
+        }
+
+        /**
+         * Get count of written records
+         *
+         * @return Count of records
+         */
+        public long getCount() {
+            return count;
+        }
+
+        /**
+         * Write buffered records to file
+         *
+         * @throws IOException Error while writing
+         */
+        public void flush() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+
+        /**
+         * Flush and close file
+         *
+         * @throws IOException Error while writing
+         */
+        public void close() throws IOException {
+            flush();
+            channel.close();
+        }
+    }
+
+    /**
+     * Get record flags of given log message
+     *
+     * @param message Log message with CAN message
+     * @return Flags
+     */
+    public static int getFlags(LogMessage message) {
+        CANMessage canmsg = message.getCanmsg();
+        return (canmsg.isExtended() ? FLAG_EXTENDED : 0)
+                | (canmsg.isRtr() ? FLAG_RTR : 0)
+                | (message.getType() == LogMessage.MessageType.OUT ? FLAG_OUT : 0);
+    }
+
+    /**
+     * Create log message from record at given buffer position
+     *
+     * @param buffer Buffer positioned at record, position is advanced
+     * @return Log message
+     */
+    public static LogMessage readMessage(ByteBuffer buffer) {
+        long timestamp = buffer.getLong();
+        int id = buffer.getInt();
+        int flags = buffer.get();
+        int channel = buffer.get() & 0xff;
+        int dlc = buffer.get();
+        buffer.get();
+        long data = buffer.getLong();
+        return toMessage(timestamp, id, flags, channel, dlc, data);
+    }
+
+    /**
+     * Create log message from record fields
+     *
+     * @param timestamp Timestamp in ms
+     * @param id CAN id
+     * @param flags Record flags
+     * @param channel Channel index
+     * @param dlc Data length
+     * @param data Packed payload
+     * @return Log message
+     */
+    public static LogMessage toMessage(long timestamp, int id, int flags, int channel, int dlc, long data) {
+        boolean rtr = (flags & FLAG_RTR) != 0;
+        CANMessage canmsg = new CANMessage(id, CANFrame.unpack(data, dlc), (flags & FLAG_EXTENDED) != 0, rtr);
+        return new LogMessage(canmsg, null, (flags & FLAG_OUT) != 0 ? LogMessage.MessageType.OUT : LogMessage.MessageType.IN, timestamp, channel);
+    }
+
+    /**
+     * Find first record at or after given time. Records are written in
+     * time order and have a fixed size, so the record timestamps are the
+     * index of the file and a binary search needs only about log2(count)
+     * reads.
+     *
+     * @param file Random access file
+     * @param count Count of records
+     * @param time Time in ms
+     * @return Record index, count if all records are older
+     * @throws IOException Error while reading
+     */
+    public static long findRecord(RandomAccessFile file, long count, long time) throws IOException {
+        long low = 0;
+        long high = count;
+        while (low < high) {
+            long mid = (low + high) >>> 1;
+            file.seek(HEADER_SIZE + mid * RECORD_SIZE);
+            if (file.readLong() < time) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Check header of given capture file
+     *
+     * @param file Random access file
+     * @return Count of records in file
+     * @throws IOException Error while reading or not a capture file
+     */
+    public static long checkHeader(RandomAccessFile file) throws IOException {
+        byte[] magic = new byte[MAGIC.length];
+        file.seek(0);
+        file.readFully(magic);
+        int version = file.readInt();
+        int recordSize = file.readInt();
+        if (!java.util.Arrays.equals(magic, MAGIC) || version != VERSION || recordSize != RECORD_SIZE) {
+            throw new IOException("Not a USBtinViewer capture file");
+        }
+        return (file.length() - HEADER_SIZE) / RECORD_SIZE;
+    }
+}
@@ -0,0 +1,211 @@
+/*
+ * Part of USBtinViewer - Simple GUI for USBtin - USB to CAN interface
+ * http://www.fischl.de/usbtin
+ *
+ * Copyright (C) 2026  Thomas Fischl
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import de.fischl.usbtin.*;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Transmits the frames of a capture file with their recorded timing. The
+ * file is streamed in blocks, each frame is sent at its absolute deadline
+ * relative to the start (scaled by the speed factor), so delays do not add
+ * up. Frames not passing the filter are skipped, frames finding the
+ * transmit FIFO full are dropped and counted. The lateness of each sent
+ * frame against its deadline is measured.
+ *
+ * @author Thomas Fischl
+ */
+public class CapturePlayback implements Runnable {
+
+    /** Count of records read per block */
+    protected static final int BLOCK_RECORDS = 4096;
+
+    /** FIFO depth at which frames are dropped */
+    protected static final int FIFO_LIMIT = 256;
+
+    /** Viewer receiving sent frames and log entries */
+    protected final USBtinViewer viewer;
+
+    /** Capture file */
+    protected final File file;
+
+    /** Channel to send on */
+    protected final CANChannel channel;
+
+    /** Filter of played frames */
+    protected final TraceFilter filter;
+
+    /** Speed factor, 2 = twice as fast */
+    protected final double speed;
+
+    /** True, to restart at end of file */
+    protected final boolean loop;
+
+    /** Lateness of sent frames in ns */
+    protected final LatencyHistogram lateness = new LatencyHistogram();
+
+    /** True, while playing */
+    protected volatile boolean running = true;
+
+    /** Count of sent frames */
+    protected volatile long sent = 0;
+
+    /** Count of frames dropped because of full FIFO */
+    protected volatile long dropped = 0;
+
+    /** Count of frames skipped by the filter */
+    protected volatile long skipped = 0;
+
+    /** Count of completed passes */
+    protected volatile int passes = 0;
+
+    /**
+     * Create playback
+     *
+     * @param viewer Viewer receiving sent frames and log entries
+     * @param file Capture file
+     * @param channel Open channel to send on
+     * @param filter Filter of played frames
+     * @param speed Speed factor, 2 = twice as fast
+     * @param loop True, to restart at end of file
+     */
+    public CapturePlayback(USBtinViewer viewer, File file, CANChannel channel, TraceFilter filter, double speed, boolean loop) {
+        this.viewer = viewer;
+        this.file = file;
+        this.channel = channel;
+        this.filter = filter;
+        this.speed = speed;
+        this.loop = loop;
+    }
+
+    /**
+     * Play file until end or stop
+     */
+    @Override
+    public void run() {
+        try {
+            RandomAccessFile raf = new RandomAccessFile(file, "r");
+            try {
+                long count = CaptureFile.checkHeader(raf);
+                do {
+                    play(raf.getChannel(), count);
+                } while (running && loop && sent > 0);
+            } finally {
+                raf.close();
+            }
+            viewer.log("Playback " + (running ? "finished: " : "stopped: ") + getReport(), LogMessage.MessageType.INFO);
+        } catch (IOException e) {
+            viewer.log("Playback: " + e.getMessage(), LogMessage.MessageType.ERROR);
+        } catch (USBtinException e) {
+            viewer.log("Playback: " + e.getMessage(), LogMessage.MessageType.ERROR);
+        }
+        running = false;
+    }
+
+    /**
+     * Play all records once
+     *
+     * @param file Channel of capture file
+     * @param count Count of records
+     * @throws IOException Error while reading
+     * @throws USBtinException Error while sending
+     */
+    protected void play(FileChannel file, long count) throws IOException, USBtinException {
+        USBtin usbtin = channel.getUSBtin();
+        FifoUSBtin fifo = usbtin instanceof FifoUSBtin ? (FifoUSBtin) usbtin : null;
+        ByteBuffer buffer = ByteBuffer.allocateDirect(BLOCK_RECORDS * CaptureFile.RECORD_SIZE);
+        long start = System.nanoTime();
+        long first = 0;
+        for (long record = 0; record < count && running; ) {
+            buffer.clear();
+            buffer.limit((int) Math.min(BLOCK_RECORDS, count - record) * CaptureFile.RECORD_SIZE);
+            long position = CaptureFile.HEADER_SIZE + record * CaptureFile.RECORD_SIZE;
+            while (buffer.hasRemaining()) {
+                if (file.read(buffer, position + buffer.position()) < 0) {
+                    throw new IOException("Unexpected end of file");
+                }
+            }
+            buffer.flip();
+
+            while (buffer.hasRemaining() && running) {
+                LogMessage message = CaptureFile.readMessage(buffer);
+                if (record++ == 0) {
+                    first = message.getTimestamp();
+                }
+                if (!filter.accept(message)) {
+                    skipped++;
+                    continue;
+                }
+
+                // wait for absolute deadline of this frame
+                long deadline = start + (long) ((message.getTimestamp() - first) * 1000000 / speed);
+                long now = System.nanoTime();
+                while (now < deadline && running) {
+                    LockSupport.parkNanos(deadline - now);
+                    now = System.nanoTime();
+                }
+                if (fifo != null && fifo.getTXFifoSize() >= FIFO_LIMIT) {
+                    dropped++;
+                    continue;
+                }
+                CANMessage canmsg = message.getCanmsg();
+                channel.send(canmsg);
+                lateness.record(System.nanoTime() - deadline);
+                sent++;
+                LogMessage out = new LogMessage(canmsg, null, LogMessage.MessageType.OUT, viewer.getTimestamp(), channel.getIndex());
+                out.setNanoTime(System.nanoTime());
+                viewer.log(out);
+            }
+        }
+        if (running) {
+            passes++;
+        }
+    }
+
+    /**
+     * Stop playback
+     */
+    public void stop() {
+        running = false;
+    }
+
+    /**
+     * Check if playback is running
+     *
+     * @return True, while playing
+     */
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * Get statistics text
+     *
+     * @return Sent, dropped and skipped frames, passes and timing error
+     */
+    public String getReport() {
+        return String.format("%s, %d sent, %d dropped (FIFO full), %d filtered, %d passes%n  timing error %s",
+                file.getName(), sent, dropped, skipped, passes, lateness);
+    }
+}
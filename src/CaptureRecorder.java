@@ -0,0 +1,148 @@
+/*
+ * Part of USBtinViewer - Simple GUI for USBtin - USB to CAN interface
+ * http://www.fischl.de/usbtin
+ *
+ * Copyright (C) 2026  Thomas Fischl
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Records all CAN messages of the merged stream to a capture file. Writing
+ * is done on an own thread, messages not fitting into the queue are counted
+ * as dropped.
+ *
+ * @author Thomas Fischl
+ */
+public class CaptureRecorder implements MessageSink, Runnable {
+
+    /** Capacity of the write queue */
+    protected static final int QUEUE_SIZE = 65536;
+
+    /** Viewer used for logging */
+    protected final USBtinViewer viewer;
+
+    /** Capture file */
+    protected final File file;
+
+    /** Capture writer */
+    protected final CaptureFile.Writer writer;
+
+    /** Messages waiting to be written */
+    protected final ArrayBlockingQueue<LogMessage> queue = new ArrayBlockingQueue<LogMessage>(QUEUE_SIZE);
+
+    /** Count of messages dropped because the queue was full */
+    protected final AtomicLong dropped = new AtomicLong();
+
+    /** Writer thread */
+    protected Thread thread;
+
+    /** True, while recording */
+    protected volatile boolean running = false;
+
+    /**
+     * Create capture file
+     *
+     * @param viewer Viewer used for logging
+     * @param file File to create
+     * @throws IOException Error creating file
+     */
+    public CaptureRecorder(USBtinViewer viewer, File file) throws IOException {
+        this.viewer = viewer;
+        this.file = file;
+        this.writer = new CaptureFile.Writer(file);
+    }
+
+    /**
+     * Start writer thread
+     */
+    public void start() {
+        running = true;
+        thread = new Thread(this, "Recorder");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Stop recording after all queued messages are written
+     */
+    public void stop() {
+        running = false;
+    }
+
+    /**
+     * Get count of written records
+     *
+     * @return Count of records
+     */
+    public long getCount() {
+        return writer.getCount();
+    }
+
+    /**
+     * Get count of dropped messages
+     *
+     * @return Count of messages
+     */
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    /**
+     * Queue message for writing
+     *
+     * @param message Log message
+     */
+    @Override
+    public void receive(LogMessage message) {
+        if (message.getCanmsg() != null && !queue.offer(message)) {
+            dropped.incrementAndGet();
+        }
+    }
+
+    /**
+     * Nothing to do per flush
+     */
+    @Override
+    public void tick() {
+    }
+
+    /**
+     * Writer loop
+     */
+    @Override
+    public void run() {
+        try {
+            while (running || !queue.isEmpty()) {
+                LogMessage message = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (message != null) {
+                    writer.write(message);
+                }
+            }
+            writer.close();
+            viewer.log("Recorded " + writer.getCount() + " messages to " + file.getName()
+                    + (dropped.get() > 0 ? " (" + dropped.get() + " dropped)" : ""), LogMessage.MessageType.INFO);
+        } catch (IOException e) {
+            viewer.log("Recording: " + e.getMessage(), LogMessage.MessageType.ERROR);
+        } catch (InterruptedException e) {
+            viewer.log("Recording interrupted", LogMessage.MessageType.ERROR);
+        }
+    }
+}
@@ -0,0 +1,194 @@
+/*
+ * Part of USBtinViewer - Simple GUI for USBtin - USB to CAN interface
+ * http://www.fischl.de/usbtin
+ *
+ * Copyright (C) 2026  Thomas Fischl
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import javax.swing.table.AbstractTableModel;
+
+/**
+ * Monitor like summary of a capture file: per id count, rate, period,
+ * jitter, dlc, byte ranges and toggling bits.
+ *
+ * Usage: java -cp ... CaptureSummary capture.usbtincap [from_ms to_ms]
+ *
+ * @author Thomas Fischl
+ */
+public class CaptureSummary extends AbstractTableModel {
+
+    /** Column titles */
+    protected static final String[] TITLES = new String[]{"Ch", "Id", "Dir", "Count", "Rate (/s)", "Period (ms)", "Min", "Max", "Jitter", "DLC", "Bytes", "Toggled bits"};
+
+    /** Column classes */
+    protected static final Class[] CLASSES = new Class[]{Integer.class, String.class, String.class, Long.class, Double.class, Double.class, Long.class, Long.class, Double.class, String.class, String.class, String.class};
+
+    /** Analyzed capture */
+    protected final CaptureAnalyzer analyzer;
+
+    /** Rows */
+    protected final ArrayList<IdStatistics> rows;
+
+    /**
+     * Create summary of analyzed capture
+     *
+     * @param analyzer Analyzer after analysis
+     */
+    public CaptureSummary(CaptureAnalyzer analyzer) {
+        this.analyzer = analyzer;
+        this.rows = new ArrayList<IdStatistics>(analyzer.getStatistics().values());
+    }
+
+    /**
+     * Get description of analyzed range
+     *
+     * @return Description
+     */
+    public String getDescription() {
+        return String.format("%s: %d frames, %d ids, %.1f s", analyzer.getFile().getName(), analyzer.getRecords(), rows.size(), analyzer.getDuration() / 1000.0);
+    }
+
+    /**
+     * Get count of rows
+     *
+     * @return Count of ids
+     */
+    @Override
+    public int getRowCount() {
+        return rows.size();
+    }
+
+    /**
+     * Get count of columns
+     *
+     * @return Count of columns
+     */
+    @Override
+    public int getColumnCount() {
+        return TITLES.length;
+    }
+
+    /**
+     * Get name of given column
+     *
+     * @param column Column id
+     * @return Name of given column
+     */
+    @Override
+    public String getColumnName(int column) {
+        return TITLES[column];
+    }
+
+    /**
+     * Get class of given column
+     *
+     * @param column Column id
+     * @return Class of given column
+     */
+    @Override
+    public Class<?> getColumnClass(int column) {
+        return CLASSES[column];
+    }
+
+    /**
+     * Get value of given table cell
+     *
+     * @param row Row id
+     * @param col Column id
+     * @return Value of given cell
+     */
+    @Override
+    public Object getValueAt(int row, int col) {
+        IdStatistics s = rows.get(row);
+        switch (col) {
+            case 0:
+                return s.getChannel();
+            case 1:
+                return s.isExtended() ? String.format("%08xh", s.getId()) : String.format("%03xh", s.getId());
+            case 2:
+                return s.isOut() ? "out" : "in";
+            case 3:
+                return s.getCount();
+            case 4:
+                long duration = analyzer.getDuration();
+                return duration > 0 ? Math.round(s.getCount() * 10000.0 / duration) / 10.0 : 0.0;
+            case 5:
+                return Math.round(s.getMeanPeriod() * 10) / 10.0;
+            case 6:
+                return s.getMinPeriod();
+            case 7:
+                return s.getMaxPeriod();
+            case 8:
+                return Math.round(s.getJitter() * 10) / 10.0;
+            case 9:
+                return s.getMinDlc() == s.getMaxDlc() ? "" + s.getMaxDlc() : s.getMinDlc() + "-" + s.getMaxDlc();
+            case 10:
+                return s.getRanges();
+            case 11:
+                return String.format("%016x", s.getToggled());
+        }
+        return "";
+    }
+
+    /**
+     * Format summary as text table
+     *
+     * @return Text
+     */
+    public String toText() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(getDescription()).append(String.format("%n"));
+        sb.append(String.format("%-3s %-9s %-3s %10s %9s %11s %7s %7s %7s %-3s %-23s %s%n", (Object[]) TITLES));
+        for (int row = 0; row < rows.size(); row++) {
+            Object[] values = new Object[TITLES.length];
+            for (int col = 0; col < values.length; col++) {
+                values[col] = getValueAt(row, col);
+            }
+            sb.append(String.format("%-3s %-9s %-3s %10s %9s %11s %7s %7s %7s %-3s %-23s %s%n", values));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Command line entry point
+     *
+     * @param args Capture file, optional start and end time in ms
+     */
+    public static void main(String[] args) {
+        if (args.length != 1 && args.length != 3) {
+            System.err.println("Usage: CaptureSummary <capture" + CaptureFile.EXTENSION + "> [from_ms to_ms]");
+            System.exit(1);
+        }
+        try {
+            CaptureAnalyzer analyzer = new CaptureAnalyzer(new File(args[0]));
+            if (args.length == 3) {
+                analyzer.analyzeTime(Long.parseLong(args[1]), Long.parseLong(args[2]));
+            } else {
+                analyzer.analyze();
+            }
+            System.out.print(new CaptureSummary(analyzer).toText());
+        } catch (IOException e) {
+            System.err.println(e.getMessage());
+            System.exit(1);
+        } catch (NumberFormatException e) {
+            System.err.println("Invalid time: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+}
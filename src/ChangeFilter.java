@@ -0,0 +1,196 @@
+/*
+ * Part of USBtinViewer - Simple GUI for USBtin - USB to CAN interface
+ * http://www.fischl.de/usbtin
+ *
+ * Copyright (C) 2026  Thomas Fischl
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import de.fischl.usbtin.*;
+import java.util.Arrays;
+
+/**
+ * Decides which frames of the change-only trace are stored. A frame is
+ * stored if its payload or length differs from the last frame of the same
+ * channel, id and direction, if its interval deviates from the smoothed
+ * period by more than the tolerance or if it follows a gap longer than the
+ * timeout. Otherwise it is a repeat and counted on the stored row.
+ *
+ * The state per id lives in primitive arrays of an open addressing table,
+ * so the check costs one hash probe and no allocation.
+ *
+ * @author Thomas Fischl
+ */
+public class ChangeFilter {
+
+    /** Allowed deviation (ms) from the smoothed period, 0 = off */
+    protected final long deviation;
+
+    /** Gap (ms) after which a frame is always stored, 0 = off */
+    protected final long timeout;
+
+    /** Keys (channel, id, extended, direction) */
+    protected long[] keys = new long[256];
+
+    /** True, if slot is used */
+    protected boolean[] used = new boolean[256];
+
+    /** Last payload */
+    protected long[] payloads = new long[256];
+
+    /** Last data length, -1 for remote frames */
+    protected int[] lengths = new int[256];
+
+    /** Timestamp of last frame */
+    protected long[] lastTimes = new long[256];
+
+    /** Smoothed period in ms * 8, 0 = unknown */
+    protected long[] periods = new long[256];
+
+    /** Row of last stored frame */
+    protected int[] rows = new int[256];
+
+    /** Count of used slots */
+    protected int size = 0;
+
+    /**
+     * Create filter
+     *
+     * @param deviation Allowed deviation (ms) from the period, 0 = off
+     * @param timeout Gap (ms) after which a frame is stored, 0 = off
+     */
+    public ChangeFilter(long deviation, long timeout) {
+        this.deviation = deviation;
+        this.timeout = timeout;
+    }
+
+    /**
+     * Check given message
+     *
+     * @param msg Log message
+     * @param row Row the message gets if it is stored
+     * @return -1 if the message has to be stored, otherwise the row of the
+     * stored frame this repeat belongs to
+     */
+    public int check(LogMessage msg, int row) {
+        CANMessage canmsg = msg.getCanmsg();
+        if (canmsg == null) {
+            return -1;
+        }
+        long key = ((long) canmsg.getId() << 16) | (msg.getChannel() << 2)
+                | (canmsg.isExtended() ? 2 : 0) | (msg.getType() == LogMessage.MessageType.OUT ? 1 : 0);
+        byte[] data = canmsg.getData();
+        long payload = CANFrame.pack(data);
+        int length = canmsg.isRtr() ? -1 : data.length;
+        long timestamp = msg.getTimestamp();
+
+        int mask = keys.length - 1;
+        int i = slot(key, mask);
+        while (used[i] && keys[i] != key) {
+            i = (i + 1) & mask;
+        }
+        if (!used[i]) {
+            if ((size + 1) * 2 > keys.length) {
+                grow();
+                return check(msg, row);
+            }
+            size++;
+            used[i] = true;
+            keys[i] = key;
+            payloads[i] = payload;
+            lengths[i] = length;
+            lastTimes[i] = timestamp;
+            periods[i] = 0;
+            rows[i] = row;
+            return -1;
+        }
+
+        // a gap or deviation restarts learning the period with the next interval
+        long interval = timestamp - lastTimes[i];
+        boolean late = (timeout > 0 && interval > timeout)
+                || (deviation > 0 && periods[i] > 0 && Math.abs(interval * 8 - periods[i]) > deviation * 8);
+        boolean store = late || payloads[i] != payload || lengths[i] != length;
+        if (late) {
+            periods[i] = 0;
+        } else {
+            periods[i] = periods[i] == 0 ? interval * 8 : periods[i] + interval - periods[i] / 8;
+        }
+        lastTimes[i] = timestamp;
+        if (store) {
+            payloads[i] = payload;
+            lengths[i] = length;
+            rows[i] = row;
+            return -1;
+        }
+        return rows[i];
+    }
+
+    /**
+     * Forget all ids
+     */
+    public void clear() {
+        Arrays.fill(used, false);
+        size = 0;
+    }
+
+    /**
+     * Double table size
+     */
+    protected void grow() {
+        long[] oldKeys = keys;
+        boolean[] oldUsed = used;
+        long[] oldPayloads = payloads;
+        int[] oldLengths = lengths;
+        long[] oldLastTimes = lastTimes;
+        long[] oldPeriods = periods;
+        int[] oldRows = rows;
+        int n = oldKeys.length * 2;
+        keys = new long[n];
+        used = new boolean[n];
+        payloads = new long[n];
+        lengths = new int[n];
+        lastTimes = new long[n];
+        periods = new long[n];
+        rows = new int[n];
+        int mask = n - 1;
+        for (int j = 0; j < oldKeys.length; j++) {
+            if (oldUsed[j]) {
+                int i = slot(oldKeys[j], mask);
+                while (used[i]) {
+                    i = (i + 1) & mask;
+                }
+                used[i] = true;
+                keys[i] = oldKeys[j];
+                payloads[i] = oldPayloads[j];
+                lengths[i] = oldLengths[j];
+                lastTimes[i] = oldLastTimes[j];
+                periods[i] = oldPeriods[j];
+                rows[i] = oldRows[j];
+            }
+        }
+    }
+
+    /**
+     * Get home slot of given key
+     *
+     * @param key Key
+     * @param mask Table size - 1
+     * @return Slot index
+     */
+    protected static int slot(long key, int mask) {
+        long h = key * 0x9e3779b97f4a7c15L;
+        return (int) (h ^ (h >>> 32)) & mask;
+    }
+}
@@ -0,0 +1,667 @@
+/*
+ * Part of USBtinViewer - Simple GUI for USBtin - USB to CAN interface
+ * http://www.fischl.de/usbtin
+ *
+ * Copyright (C) 2026  Thomas Fischl
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import de.fischl.usbtin.*;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * List of log messages stored in compressed segments.
+ *
+ * Messages are appended to an open segment. A full segment is sealed on a
+ * background thread into a byte array: timestamps as zigzag varint deltas,
+ * ids as varints and payloads XORed against the previous payload of the same
+ * id in the segment (unchanged payloads cost one flag bit). Each segment is
+ * decoded on its own, so only the segments the table scrolls into are
+ * decompressed, into a small LRU cache. Payload searches scan the segments
+ * in parallel without creating message objects.
+ *
+ * Not thread safe, used on the Swing event thread.
+ *
+ * @author Thomas Fischl
+ */
+public class CompressedTrace {
+
+    /** Bits of row index addressing the message within a segment */
+    protected static final int SEGMENT_BITS = 12;
+
+    /** Count of messages per segment */
+    protected static final int SEGMENT_SIZE = 1 << SEGMENT_BITS;
+
+    /** Count of decompressed segments kept */
+    protected static final int CACHE_SIZE = 8;
+
+    /** Header bit: extended id */
+    private static final int H_EXTENDED = 0x04;
+
+    /** Header bit: remote transmission request */
+    private static final int H_RTR = 0x08;
+
+    /** Header bit: payload equal to previous payload of this id */
+    private static final int H_SAME = 0x10;
+
+    /** Header bit: channel index follows */
+    private static final int H_CHANNEL = 0x20;
+
+    /** Header bit: dlc differs from previous dlc of this id, dlc follows */
+    private static final int H_DLC = 0x40;
+
+    /** Header bit: text message instead of CAN message */
+    private static final int H_TEXT = 0x80;
+
+    /** Charset of info and error texts */
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    /** Message types by ordinal */
+    private static final LogMessage.MessageType[] TYPES = LogMessage.MessageType.values();
+
+    /**
+     * Segment of messages, raw until sealed
+     */
+    protected static class Segment {
+
+        /** Messages, null after sealing */
+        volatile LogMessage[] raw;
+
+        /** Compressed messages, null until sealed */
+        volatile byte[] packed;
+
+        /** Count of messages */
+        int size;
+    }
+
+    /** Shared background thread sealing full segments */
+    private static final ExecutorService sealer = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "Trace compressor");
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        }
+    });
+
+    /** Encoder state of the sealing thread */
+    private static final Codec encoder = new Codec();
+
+    /** All segments, the last one is open */
+    private final ArrayList<Segment> segments = new ArrayList<Segment>();
+
+    /** Decompressed segments, least recently used first */
+    private final LinkedHashMap<Segment, LogMessage[]> cache = new LinkedHashMap<Segment, LogMessage[]>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Segment, LogMessage[]> eldest) {
+            return size() > CACHE_SIZE;
+        }
+    };
+
+    /** Decoder state */
+    private final Codec decoder = new Codec();
+
+    /** Count of messages */
+    private int size = 0;
+
+    /** Segment of last access */
+    private Segment lastSegment;
+
+    /** Messages of last accessed segment */
+    private LogMessage[] lastMessages;
+
+    /**
+     * Append message
+     *
+     * @param message Log message
+     */
+    public void add(LogMessage message) {
+        int offset = size & (SEGMENT_SIZE - 1);
+        Segment segment;
+        if (offset == 0) {
+            segment = new Segment();
+            segment.raw = new LogMessage[SEGMENT_SIZE];
+            segments.add(segment);
+        } else {
+            segment = segments.get(segments.size() - 1);
+        }
+        segment.raw[offset] = message;
+        segment.size = offset + 1;
+        size++;
+        if (segment.size == SEGMENT_SIZE) {
+            seal(segment);
+        }
+    }
+
+    /**
+     * Get message at given index
+     *
+     * @param index Index
+     * @return Log message
+     */
+    public LogMessage get(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+        Segment segment = segments.get(index >>> SEGMENT_BITS);
+        int offset = index & (SEGMENT_SIZE - 1);
+        if (segment == lastSegment) {
+            return lastMessages[offset];
+        }
+        LogMessage[] raw = segment.raw;
+        if (raw != null) {
+            return raw[offset];
+        }
+        LogMessage[] messages = cache.get(segment);
+        if (messages == null) {
+            messages = decoder.decode(segment.packed, segment.size);
+            cache.put(segment, messages);
+        }
+        lastSegment = segment;
+        lastMessages = messages;
+        return messages[offset];
+    }
+
+    /**
+     * Get count of messages
+     *
+     * @return Count of messages
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Remove all messages
+     */
+    public void clear() {
+        segments.clear();
+        cache.clear();
+        lastSegment = null;
+        lastMessages = null;
+        size = 0;
+    }
+
+    /**
+     * Get count of bytes used by sealed segments
+     *
+     * @return Bytes
+     */
+    public long getCompressedBytes() {
+        long bytes = 0;
+        for (Segment segment : segments) {
+            byte[] packed = segment.packed;
+            if (packed != null) {
+                bytes += packed.length;
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * Prepare search for CAN messages with matching payload. The stored
+     * segments are taken now, so this must be called on the thread adding
+     * messages. The returned task may run on any thread and scans the
+     * segments in parallel chunks on all cores.
+     *
+     * @param pattern Payload pattern
+     * @param id CAN id, -1 for any id
+     * @param limit Maximum count of hits
+     * @return Task returning the ascending indexes of matching messages
+     */
+    public Callable<int[]> search(final PayloadPattern pattern, final int id, final int limit) {
+        final Segment[] snapshot = segments.toArray(new Segment[segments.size()]);
+        final int[] sizes = new int[snapshot.length];
+        for (int i = 0; i < snapshot.length; i++) {
+            sizes[i] = snapshot[i].size;
+        }
+        return new Callable<int[]>() {
+            @Override
+            public int[] call() throws InterruptedException, ExecutionException {
+                int threads = Runtime.getRuntime().availableProcessors();
+                int chunk = Math.max(1, snapshot.length / (threads * 4) + 1);
+                ExecutorService pool = Executors.newFixedThreadPool(threads);
+                try {
+                    ArrayList<Future<Hits>> futures = new ArrayList<Future<Hits>>();
+                    for (int start = 0; start < snapshot.length; start += chunk) {
+                        final int first = start;
+                        final int last = Math.min(snapshot.length, start + chunk);
+                        futures.add(pool.submit(new Callable<Hits>() {
+                            @Override
+                            public Hits call() {
+                                Hits hits = new Hits(limit);
+                                Codec scanner = new Codec();
+                                for (int i = first; i < last && !hits.isFull(); i++) {
+                                    scan(snapshot[i], sizes[i], i << SEGMENT_BITS, pattern, id, scanner, hits);
+                                }
+                                return hits;
+                            }
+                        }));
+                    }
+                    Hits all = new Hits(limit);
+                    for (Future<Hits> future : futures) {
+                        Hits hits = future.get();
+                        for (int i = 0; i < hits.size && !all.isFull(); i++) {
+                            all.add(hits.indexes[i]);
+                        }
+                    }
+                    return Arrays.copyOf(all.indexes, all.size);
+                } finally {
+                    pool.shutdownNow();
+                }
+            }
+        };
+    }
+
+    /**
+     * Scan one segment for matching CAN messages
+     *
+     * @param segment Segment
+     * @param count Count of messages to scan
+     * @param base Index of first message
+     * @param pattern Payload pattern
+     * @param id CAN id, -1 for any id
+     * @param scanner Decoder state of this thread
+     * @param hits Hit list
+     */
+    private static void scan(Segment segment, int count, int base, PayloadPattern pattern, int id, Codec scanner, Hits hits) {
+        LogMessage[] raw = segment.raw;
+        if (raw == null) {
+            scanner.scan(segment.packed, count, base, pattern, id, hits);
+            return;
+        }
+        for (int n = 0; n < count && !hits.isFull(); n++) {
+            CANMessage canmsg = raw[n].getCanmsg();
+            if (canmsg != null && !canmsg.isRtr() && (id < 0 || canmsg.getId() == id)
+                    && pattern.matches(canmsg.getData().length, CANFrame.pack(canmsg.getData()))) {
+                hits.add(base + n);
+            }
+        }
+    }
+
+    /**
+     * Bounded list of message indexes
+     */
+    protected static class Hits {
+
+        /** Indexes */
+        int[] indexes = new int[256];
+
+        /** Count of indexes */
+        int size = 0;
+
+        /** Maximum count of indexes */
+        final int limit;
+
+        /**
+         * Create list
+         *
+         * @param limit Maximum count of indexes
+         */
+        Hits(int limit) {
+            this.limit = limit;
+        }
+
+        /**
+         * Check if limit is reached
+         *
+         * @return True, if full
+         */
+        boolean isFull() {
+            return size >= limit;
+        }
+
+        /**
+         * Append index
+         *
+         * @param index Message index
+         */
+        void add(int index) {
+            if (size == indexes.length) {
+                indexes = Arrays.copyOf(indexes, size * 2);
+            }
+            indexes[size++] = index;
+        }
+    }
+
+    /**
+     * Compress given full segment on the background thread
+     *
+     * @param segment Segment
+     */
+    protected void seal(final Segment segment) {
+        sealer.execute(new Runnable() {
+            @Override
+            public void run() {
+                segment.packed = encoder.encode(segment.raw, segment.size);
+                segment.raw = null;
+            }
+        });
+    }
+
+    /**
+     * Segment encoder and decoder with per id payload dictionary
+     */
+    protected static class Codec {
+
+        /** Dictionary keys (id << 1 | extended), valid if used */
+        private int[] keys = new int[2 * SEGMENT_SIZE];
+
+        /** Dictionary: previous payload of key */
+        private long[] payloads = new long[2 * SEGMENT_SIZE];
+
+        /** Dictionary: previous dlc of key */
+        private byte[] dlcs = new byte[2 * SEGMENT_SIZE];
+
+        /** Dictionary: slot in use */
+        private boolean[] used = new boolean[2 * SEGMENT_SIZE];
+
+        /** Output buffer */
+        private byte[] out = new byte[16 * SEGMENT_SIZE];
+
+        /** Output position */
+        private int pos;
+
+        /** Input buffer */
+        private byte[] in;
+
+        /**
+         * Find dictionary slot of given key
+         *
+         * @param key Key
+         * @return Slot, marked used
+         */
+        private int slot(int key) {
+            int mask = keys.length - 1;
+            int h = key * 0x9e3779b9;
+            int i = (h ^ (h >>> 16)) & mask;
+            while (used[i] && keys[i] != key) {
+                i = (i + 1) & mask;
+            }
+            if (!used[i]) {
+                used[i] = true;
+                keys[i] = key;
+                payloads[i] = 0;
+                dlcs[i] = 0;
+            }
+            return i;
+        }
+
+        /**
+         * Compress messages
+         *
+         * @param messages Messages
+         * @param count Count of messages
+         * @return Compressed segment
+         */
+        byte[] encode(LogMessage[] messages, int count) {
+            Arrays.fill(used, false);
+            pos = 0;
+            long last = 0;
+            for (int n = 0; n < count; n++) {
+                LogMessage message = messages[n];
+                CANMessage canmsg = message.getCanmsg();
+                int header = message.getType().ordinal();
+                if (message.getChannel() != 0) {
+                    header |= H_CHANNEL;
+                }
+                if (canmsg == null) {
+                    writeByte(header | H_TEXT);
+                    writeVarLong(zigzag(message.getTimestamp() - last));
+                    if (message.getChannel() != 0) {
+                        writeVarLong(message.getChannel());
+                    }
+                    byte[] text = (message.getMessage() != null ? message.getMessage() : "").getBytes(UTF8);
+                    writeVarLong(text.length);
+                    ensure(text.length);
+                    System.arraycopy(text, 0, out, pos, text.length);
+                    pos += text.length;
+                } else {
+                    byte[] data = canmsg.getData();
+                    long payload = CANFrame.pack(data);
+                    int slot = slot(canmsg.getId() << 1 | (canmsg.isExtended() ? 1 : 0));
+                    if (canmsg.isExtended()) {
+                        header |= H_EXTENDED;
+                    }
+                    if (canmsg.isRtr()) {
+                        header |= H_RTR;
+                    }
+                    if (payload == payloads[slot]) {
+                        header |= H_SAME;
+                    }
+                    if (data.length != dlcs[slot]) {
+                        header |= H_DLC;
+                    }
+                    writeByte(header);
+                    writeVarLong(zigzag(message.getTimestamp() - last));
+                    if (message.getChannel() != 0) {
+                        writeVarLong(message.getChannel());
+                    }
+                    writeVarLong(canmsg.getId() & 0xffffffffL);
+                    if ((header & H_DLC) != 0) {
+                        writeByte(data.length);
+                    }
+                    if ((header & H_SAME) == 0) {
+                        // mask of changed bytes, then the XOR of these bytes
+                        long diff = payload ^ payloads[slot];
+                        int mask = 0;
+                        for (int i = 0; i < 8; i++) {
+                            if (CANFrame.getByte(diff, i) != 0) {
+                                mask |= 1 << i;
+                            }
+                        }
+                        writeByte(mask);
+                        for (int i = 0; i < 8; i++) {
+                            if ((mask & (1 << i)) != 0) {
+                                writeByte(CANFrame.getByte(diff, i));
+                            }
+                        }
+                    }
+                    payloads[slot] = payload;
+                    dlcs[slot] = (byte) data.length;
+                }
+                last = message.getTimestamp();
+            }
+            return Arrays.copyOf(out, pos);
+        }
+
+        /**
+         * Decompress messages
+         *
+         * @param packed Compressed segment
+         * @param count Count of messages
+         * @return Messages
+         */
+        LogMessage[] decode(byte[] packed, int count) {
+            Arrays.fill(used, false);
+            in = packed;
+            pos = 0;
+            LogMessage[] messages = new LogMessage[count];
+            long timestamp = 0;
+            for (int n = 0; n < count; n++) {
+                int header = in[pos++] & 0xff;
+                LogMessage.MessageType type = TYPES[header & 0x03];
+                timestamp += unzigzag(readVarLong());
+                int channel = (header & H_CHANNEL) != 0 ? (int) readVarLong() : 0;
+                if ((header & H_TEXT) != 0) {
+                    int length = (int) readVarLong();
+                    String text = new String(in, pos, length, UTF8);
+                    pos += length;
+                    messages[n] = new LogMessage(null, text, type, timestamp, channel);
+                } else {
+                    int id = (int) readVarLong();
+                    boolean extended = (header & H_EXTENDED) != 0;
+                    int slot = slot(id << 1 | (extended ? 1 : 0));
+                    if ((header & H_DLC) != 0) {
+                        dlcs[slot] = in[pos++];
+                    }
+                    if ((header & H_SAME) == 0) {
+                        int mask = in[pos++] & 0xff;
+                        long diff = 0;
+                        for (int i = 0; i < 8; i++) {
+                            if ((mask & (1 << i)) != 0) {
+                                diff |= (in[pos++] & 0xffL) << (56 - 8 * i);
+                            }
+                        }
+                        payloads[slot] ^= diff;
+                    }
+                    CANMessage canmsg = new CANMessage(id, CANFrame.unpack(payloads[slot], dlcs[slot]), extended, (header & H_RTR) != 0);
+                    messages[n] = new LogMessage(canmsg, null, type, timestamp, channel);
+                }
+            }
+            in = null;
+            return messages;
+        }
+
+        /**
+         * Scan compressed messages for matching CAN messages without
+         * creating message objects
+         *
+         * @param packed Compressed segment
+         * @param count Count of messages
+         * @param base Index of first message
+         * @param pattern Payload pattern
+         * @param id CAN id, -1 for any id
+         * @param hits Hit list
+         */
+        void scan(byte[] packed, int count, int base, PayloadPattern pattern, int id, Hits hits) {
+            Arrays.fill(used, false);
+            in = packed;
+            pos = 0;
+            for (int n = 0; n < count && !hits.isFull(); n++) {
+                int header = in[pos++] & 0xff;
+                skipVarLong();
+                if ((header & H_CHANNEL) != 0) {
+                    skipVarLong();
+                }
+                if ((header & H_TEXT) != 0) {
+                    int length = (int) readVarLong();
+                    pos += length;
+                } else {
+                    int frameId = (int) readVarLong();
+                    int slot = slot(frameId << 1 | ((header & H_EXTENDED) != 0 ? 1 : 0));
+                    if ((header & H_DLC) != 0) {
+                        dlcs[slot] = in[pos++];
+                    }
+                    if ((header & H_SAME) == 0) {
+                        int mask = in[pos++] & 0xff;
+                        long diff = 0;
+                        while (mask != 0) {
+                            diff |= (in[pos++] & 0xffL) << (56 - 8 * Integer.numberOfTrailingZeros(mask));
+                            mask &= mask - 1;
+                        }
+                        payloads[slot] ^= diff;
+                    }
+                    if ((header & H_RTR) == 0 && (id < 0 || frameId == id) && pattern.matches(dlcs[slot], payloads[slot])) {
+                        hits.add(base + n);
+                    }
+                }
+            }
+            in = null;
+        }
+
+        /**
+         * Make room for given count of bytes in output buffer
+         *
+         * @param count Count of bytes
+         */
+        private void ensure(int count) {
+            if (pos + count > out.length) {
+                out = Arrays.copyOf(out, Math.max(out.length * 2, pos + count));
+            }
+        }
+
+        /**
+         * Write one byte
+         *
+         * @param b Byte
+         */
+        private void writeByte(int b) {
+            ensure(1);
+            out[pos++] = (byte) b;
+        }
+
+        /**
+         * Write unsigned value as varint (7 bits per byte)
+         *
+         * @param value Value
+         */
+        private void writeVarLong(long value) {
+            ensure(10);
+            while ((value & ~0x7fL) != 0) {
+                out[pos++] = (byte) ((value & 0x7f) | 0x80);
+                value >>>= 7;
+            }
+            out[pos++] = (byte) value;
+        }
+
+        /**
+         * Read varint
+         *
+         * @return Value
+         */
+        private long readVarLong() {
+            long value = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = in[pos++];
+                value |= (long) (b & 0x7f) << shift;
+                shift += 7;
+            } while (b < 0);
+            return value;
+        }
+
+        /**
+         * Skip varint
+         */
+        private void skipVarLong() {
+            while (in[pos++] < 0) {
+                // continuation byte
+            }
+        }
+
+        /**
+         * Map signed to unsigned value, small magnitudes stay small
+         *
+         * @param value Signed value
+         * @return Unsigned value
+         */
+        private static long zigzag(long value) {
+            return (value << 1) ^ (value >> 63);
+        }
+
+        /**
+         * Reverse zigzag mapping
+         *
+         * @param value Unsigned value
+         * @return Signed value
+         */
+        private static long unzigzag(long value) {
+            return (value >>> 1) ^ -(value & 1);
+        }
+    }
+}
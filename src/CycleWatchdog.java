@@ -0,0 +1,517 @@
+/*
+ * Part of USBtinViewer - Simple GUI for USBtin - USB to CAN interface
+ * http://www.fischl.de/usbtin
+ *
+ * Copyright (C) 2026  Thomas Fischl
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import de.fischl.usbtin.*;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Watchdog of periodic frames. Each channel, id and direction gets a
+ * deadline of its last frame plus period and tolerance. A passed deadline is
+ * logged as error "late", ten periods without frame as error "missing", the
+ * next frame is logged as info "back". Errors show up as markers of the
+ * trace minimap.
+ *
+ * Periods are configured per id or learned from the first intervals, ids
+ * with irregular intervals while learning are not watched. Deadlines are
+ * kept in a hashed timer wheel of 1 ms slots, the state per id in primitive
+ * arrays, so a frame costs one hash probe and one list relink, independent
+ * of the count of watched ids.
+ *
+ * Frames are fed by the viewer on the receive threads, before they are
+ * queued for the event thread. A watchdog thread advances the wheel with the
+ * host clock every millisecond, so a deadline is reported about 1 ms after
+ * it passed, independent of display refresh and event thread lag. The
+ * tolerance has to cover the USB transfer jitter.
+ *
+ * @author Thomas Fischl
+ */
+public class CycleWatchdog implements Runnable {
+
+    /** Interval of the watchdog thread in ns */
+    protected static final long CHECK_INTERVAL = 1000000;
+
+    /** Count of wheel slots (1 ms each) */
+    protected static final int WHEEL_SIZE = 4096;
+
+    /** Count of intervals to learn a period */
+    protected static final int LEARN_INTERVALS = 8;
+
+    /** Periods after which a late frame is reported missing */
+    protected static final int MISSING_PERIODS = 10;
+
+    /** Minimum tolerance in ms */
+    protected static final long MIN_TOLERANCE = 5;
+
+    /** Longest watched period in ms */
+    protected static final long MAX_PERIOD = 60000;
+
+    /** Entry state: learning the period */
+    protected static final byte LEARNING = 0;
+
+    /** Entry state: not watched */
+    protected static final byte IGNORED = 1;
+
+    /** Entry state: waiting for next frame */
+    protected static final byte ARMED = 2;
+
+    /** Entry state: late, waiting for missing deadline */
+    protected static final byte LATE = 3;
+
+    /** Entry state: missing */
+    protected static final byte MISSING = 4;
+
+    /** Viewer receiving log entries */
+    protected final USBtinViewer viewer;
+
+    /** Configured periods in ms by id */
+    protected final HashMap<Integer, Long> configured;
+
+    /** True, to learn periods of ids not configured */
+    protected final boolean learn;
+
+    /** Tolerance in percent of the period */
+    protected final int tolerance;
+
+    /** Hash table: entry index + 1 by slot, 0 = free */
+    protected int[] table = new int[256];
+
+    /** Key (channel, id, extended, direction) by entry */
+    protected long[] keys = new long[128];
+
+    /** State by entry */
+    protected byte[] states = new byte[128];
+
+    /** Period in ms by entry, sum of intervals while learning */
+    protected long[] periods = new long[128];
+
+    /** Longest interval while learning by entry */
+    protected long[] maxIntervals = new long[128];
+
+    /** Count of learned intervals by entry */
+    protected int[] learned = new int[128];
+
+    /** Timestamp of last frame by entry */
+    protected long[] lastTimes = new long[128];
+
+    /** Current deadline by entry */
+    protected long[] deadlines = new long[128];
+
+    /** Count of late events by entry */
+    protected int[] lateCounts = new int[128];
+
+    /** Longest gap in ms by entry */
+    protected long[] maxGaps = new long[128];
+
+    /** Next entry in wheel slot, -1 = end */
+    protected int[] next = new int[128];
+
+    /** Previous entry in wheel slot, -1 = head, -2 = not scheduled */
+    protected int[] prev = new int[128];
+
+    /** First entry per wheel slot, -1 = empty */
+    protected final int[] wheel = new int[WHEEL_SIZE];
+
+    /** Time up to which the wheel is processed */
+    protected long current = -1;
+
+    /** Count of entries */
+    protected int size = 0;
+
+    /** Count of late events */
+    protected long lateEvents = 0;
+
+    /** Count of missing events */
+    protected long missingEvents = 0;
+
+    /** Watchdog thread */
+    protected Thread thread;
+
+    /** True, while the watchdog thread runs */
+    protected volatile boolean running = false;
+
+    /**
+     * Create watchdog
+     *
+     * @param viewer Viewer receiving log entries
+     * @param periods Configured periods, e.g. "100=10,7e8=1000" (id hex =
+     * period ms), may be empty
+     * @param learn True, to learn periods of other ids
+     * @param tolerance Tolerance in percent of the period
+     * @throws NumberFormatException Invalid periods
+     */
+    public CycleWatchdog(USBtinViewer viewer, String periods, boolean learn, int tolerance) {
+        this.viewer = viewer;
+        this.configured = parsePeriods(periods);
+        this.learn = learn;
+        this.tolerance = tolerance;
+        Arrays.fill(wheel, -1);
+
+        // configured ids of channel 0 are watched from start
+        long now = viewer.getTimestamp();
+        current = now;
+        for (Integer id : configured.keySet()) {
+            int e = getEntry(IdStatistics.getKey(0, id, id > 0x7ff, false));
+            lastTimes[e] = now;
+            this.periods[e] = configured.get(id);
+            states[e] = ARMED;
+            schedule(e, now + configured.get(id) + getTolerance(configured.get(id)));
+        }
+    }
+
+    /**
+     * Parse period list
+     *
+     * @param s Periods, e.g. "100=10,7e8=1000"
+     * @return Periods in ms by id
+     * @throws NumberFormatException Invalid periods
+     */
+    protected static HashMap<Integer, Long> parsePeriods(String s) {
+        HashMap<Integer, Long> result = new HashMap<Integer, Long>();
+        for (String item : s.split(",")) {
+            item = item.trim();
+            if (item.length() == 0) {
+                continue;
+            }
+            String[] parts = item.split("=");
+            if (parts.length != 2) {
+                throw new NumberFormatException("Invalid period: " + item);
+            }
+            long period = Long.parseLong(parts[1].trim());
+            if (period <= 0 || period > MAX_PERIOD) {
+                throw new NumberFormatException("Period out of range: " + item);
+            }
+            result.put(Integer.parseInt(parts[0].trim(), 16), period);
+        }
+        return result;
+    }
+
+    /**
+     * Get tolerance of given period
+     *
+     * @param period Period in ms
+     * @return Tolerance in ms
+     */
+    protected long getTolerance(long period) {
+        return Math.max(MIN_TOLERANCE, period * tolerance / 100);
+    }
+
+    /**
+     * Start watchdog thread
+     */
+    public void start() {
+        running = true;
+        thread = new Thread(this, "Cycle watchdog");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Stop watchdog thread
+     */
+    public void stop() {
+        running = false;
+    }
+
+    /**
+     * Check deadlines with the host clock until stopped
+     */
+    @Override
+    public void run() {
+        while (running) {
+            LockSupport.parkNanos(CHECK_INTERVAL);
+            synchronized (this) {
+                advance(viewer.getTimestamp());
+            }
+        }
+    }
+
+    /**
+     * Handle received or sent message. Called on the receive threads.
+     *
+     * @param message Log message
+     */
+    public synchronized void receive(LogMessage message) {
+        CANMessage canmsg = message.getCanmsg();
+        if (canmsg == null) {
+            return;
+        }
+        long timestamp = message.getTimestamp();
+        advance(timestamp);
+        int e = getEntry(IdStatistics.getKey(message.getChannel(), canmsg.getId(), canmsg.isExtended(), message.getType() == LogMessage.MessageType.OUT));
+        long interval = timestamp - lastTimes[e];
+        lastTimes[e] = timestamp;
+
+        switch (states[e]) {
+            case IGNORED:
+                return;
+            case LEARNING:
+                if (learned[e] < 0) {
+                    // first frame
+                    Long period = configured.get(canmsg.getId());
+                    if (period != null) {
+                        periods[e] = period;
+                        states[e] = ARMED;
+                        break;
+                    }
+                    learned[e] = 0;
+                    return;
+                }
+                periods[e] += interval;
+                maxIntervals[e] = Math.max(maxIntervals[e], interval);
+                if (++learned[e] < LEARN_INTERVALS) {
+                    return;
+                }
+                long period = periods[e] / LEARN_INTERVALS;
+                if (period > MAX_PERIOD || maxIntervals[e] > period + getTolerance(period)) {
+                    states[e] = IGNORED;
+                    return;
+                }
+                periods[e] = Math.max(1, period);
+                states[e] = ARMED;
+                break;
+            case LATE:
+            case MISSING:
+                viewer.log(String.format("Watchdog: %s back after %d ms (period %d ms)", getName(e), interval, periods[e]), LogMessage.MessageType.INFO);
+                states[e] = ARMED;
+                maxGaps[e] = Math.max(maxGaps[e], interval);
+                break;
+            default:
+                maxGaps[e] = Math.max(maxGaps[e], interval);
+        }
+        schedule(e, timestamp + periods[e] + getTolerance(periods[e]));
+    }
+
+    /**
+     * Advance wheel and report passed deadlines
+     *
+     * @param now Current time in ms
+     */
+    protected void advance(long now) {
+        if (now < current - 1000) {
+            restart(now);
+            return;
+        }
+        if (now <= current) {
+            return;
+        }
+        // a long step visits every slot once
+        long end = Math.min(now, current + WHEEL_SIZE);
+        for (long t = current; t < end; t++) {
+            int e = wheel[(int) (t & (WHEEL_SIZE - 1))];
+            while (e >= 0) {
+                int following = next[e];
+                if (deadlines[e] < now) {
+                    expire(e, now);
+                }
+                e = following;
+            }
+        }
+        current = now;
+    }
+
+    /**
+     * Handle passed deadline
+     *
+     * @param e Entry
+     * @param now Current time in ms
+     */
+    protected void expire(int e, long now) {
+        unlink(e);
+        long gap = now - lastTimes[e];
+        if (states[e] == ARMED) {
+            states[e] = LATE;
+            lateCounts[e]++;
+            lateEvents++;
+            viewer.log(String.format("Watchdog: %s late, no frame for %d ms (period %d ms)", getName(e), gap, periods[e]), LogMessage.MessageType.ERROR);
+            long deadline = lastTimes[e] + MISSING_PERIODS * periods[e];
+            if (deadline >= now) {
+                schedule(e, deadline);
+                return;
+            }
+        }
+        if (states[e] == LATE) {
+            states[e] = MISSING;
+            missingEvents++;
+            viewer.log(String.format("Watchdog: %s missing, no frame for %d ms (period %d ms)", getName(e), gap, periods[e]), LogMessage.MessageType.ERROR);
+        }
+    }
+
+    /**
+     * Restart watching after the time base was reset
+     *
+     * @param now Current time in ms
+     */
+    protected void restart(long now) {
+        Arrays.fill(wheel, -1);
+        current = now;
+        for (int e = 0; e < size; e++) {
+            prev[e] = -2;
+            lastTimes[e] = now;
+            if (states[e] == LEARNING) {
+                learned[e] = -1;
+                periods[e] = 0;
+                maxIntervals[e] = 0;
+            } else if (states[e] != IGNORED) {
+                states[e] = ARMED;
+                schedule(e, now + periods[e] + getTolerance(periods[e]));
+            }
+        }
+    }
+
+    /**
+     * Put entry into the wheel slot of given deadline
+     *
+     * @param e Entry
+     * @param deadline Deadline in ms
+     */
+    protected void schedule(int e, long deadline) {
+        unlink(e);
+        deadlines[e] = Math.max(deadline, current);
+        int slot = (int) (deadlines[e] & (WHEEL_SIZE - 1));
+        next[e] = wheel[slot];
+        prev[e] = -1;
+        if (wheel[slot] >= 0) {
+            prev[wheel[slot]] = e;
+        }
+        wheel[slot] = e;
+    }
+
+    /**
+     * Remove entry from its wheel slot
+     *
+     * @param e Entry
+     */
+    protected void unlink(int e) {
+        if (prev[e] == -2) {
+            return;
+        }
+        if (prev[e] == -1) {
+            wheel[(int) (deadlines[e] & (WHEEL_SIZE - 1))] = next[e];
+        } else {
+            next[prev[e]] = next[e];
+        }
+        if (next[e] >= 0) {
+            prev[next[e]] = prev[e];
+        }
+        prev[e] = -2;
+    }
+
+    /**
+     * Get or create entry of given key
+     *
+     * @param key Key
+     * @return Entry index
+     */
+    protected int getEntry(long key) {
+        int mask = table.length - 1;
+        int i = slot(key, mask);
+        while (table[i] != 0) {
+            if (keys[table[i] - 1] == key) {
+                return table[i] - 1;
+            }
+            i = (i + 1) & mask;
+        }
+        if ((size + 1) * 2 > table.length) {
+            grow();
+            return getEntry(key);
+        }
+        int e = size++;
+        table[i] = e + 1;
+        keys[e] = key;
+        states[e] = learn || configured.containsKey((int) ((key >>> 2) & 0x3fffffff)) ? LEARNING : IGNORED;
+        learned[e] = -1;
+        prev[e] = -2;
+        return e;
+    }
+
+    /**
+     * Double hash table and entry arrays
+     */
+    protected void grow() {
+        int n = keys.length * 2;
+        keys = Arrays.copyOf(keys, n);
+        states = Arrays.copyOf(states, n);
+        periods = Arrays.copyOf(periods, n);
+        maxIntervals = Arrays.copyOf(maxIntervals, n);
+        learned = Arrays.copyOf(learned, n);
+        lastTimes = Arrays.copyOf(lastTimes, n);
+        deadlines = Arrays.copyOf(deadlines, n);
+        lateCounts = Arrays.copyOf(lateCounts, n);
+        maxGaps = Arrays.copyOf(maxGaps, n);
+        next = Arrays.copyOf(next, n);
+        prev = Arrays.copyOf(prev, n);
+        table = new int[n * 2];
+        int mask = table.length - 1;
+        for (int e = 0; e < size; e++) {
+            int i = slot(keys[e], mask);
+            while (table[i] != 0) {
+                i = (i + 1) & mask;
+            }
+            table[i] = e + 1;
+        }
+    }
+
+    /**
+     * Get home slot of given key
+     *
+     * @param key Key
+     * @param mask Table size - 1
+     * @return Slot index
+     */
+    protected static int slot(long key, int mask) {
+        long h = key * 0x9e3779b97f4a7c15L;
+        return (int) (h ^ (h >>> 32)) & mask;
+    }
+
+    /**
+     * Get display name of given entry
+     *
+     * @param e Entry
+     * @return Name
+     */
+    protected String getName(int e) {
+        return new IdStatistics(keys[e]).getName();
+    }
+
+    /**
+     * Get statistics text
+     *
+     * @return Watched ids, late and missing events and currently late ids
+     */
+    public synchronized String getReport() {
+        int watched = 0;
+        int learning = 0;
+        StringBuilder ids = new StringBuilder();
+        for (int e = 0; e < size; e++) {
+            if (states[e] == LEARNING) {
+                learning++;
+            } else if (states[e] != IGNORED) {
+                watched++;
+            }
+            if (lateCounts[e] > 0) {
+                ids.append(String.format("%n  %-18s period %5d ms, late %d times, max gap %d ms%s", getName(e), periods[e], lateCounts[e], maxGaps[e],
+                        states[e] == LATE ? ", late" : (states[e] == MISSING ? ", missing" : "")));
+            }
+        }
+        return watched + " ids watched, " + learning + " learning, " + lateEvents + " late, " + missingEvents + " missing" + ids;
+    }
+}
@@ -0,0 +1,171 @@
+/*
+ * Part of USBtinViewer - Simple GUI for USBtin - USB to CAN interface
+ * http://www.fischl.de/usbtin
+ *
+ * Copyright (C) 2026  Thomas Fischl
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import de.fischl.usbtin.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+import jssc.SerialPortEvent;
+import jssc.SerialPortException;
+import jssc.SerialPortTimeoutException;
+
+/**
+ * USBtin with an allocation free receive parser.
+ *
+ * The serial buffer is parsed byte by byte with SlcanParser into one reused
+ * frame slot which is handed to CANFrameListeners, without the line
+ * strings of USBtin. FastUSBtin itself only creates CANMessage objects if
+ * classic CANMessageListeners are registered; what a frame listener keeps
+ * is up to the listener. Transmit acknowledges and errors are handled like
+ * in USBtin.
+ *
+ * @author Thomas Fischl
+ */
+public class FastUSBtin extends FifoUSBtin {
+
+    /** Parser for incoming bytes */
+    protected final SlcanParser parser = new SlcanParser();
+
+    /** Frame listeners */
+    protected final CopyOnWriteArrayList<CANFrameListener> frameListeners = new CopyOnWriteArrayList<CANFrameListener>();
+
+    /** True, if device timestamps should be enabled on open */
+    protected boolean timestamping = false;
+
+    /**
+     * Enable or disable device timestamps (must be set before opening)
+     *
+     * @param timestamping True, to let USBtin append timestamps
+     */
+    public void setTimestamping(boolean timestamping) {
+        this.timestamping = timestamping;
+    }
+
+    /**
+     * Add frame listener
+     *
+     * @param listener Listener to add
+     */
+    public void addFrameListener(CANFrameListener listener) {
+        frameListeners.add(listener);
+    }
+
+    /**
+     * Remove frame listener
+     *
+     * @param listener Listener to remove
+     */
+    public void removeFrameListener(CANFrameListener listener) {
+        frameListeners.remove(listener);
+    }
+
+    /**
+     * Open CAN channel, enables or disables device timestamps
+     *
+     * @param baudrate Baudrate in bits/second
+     * @param mode CAN bus accessing mode
+     * @throws USBtinException Error while opening CAN channel
+     */
+    @Override
+    public void openCANChannel(int baudrate, OpenMode mode) throws USBtinException {
+        parser.reset();
+        try {
+            // the device keeps the setting until power cycle, so set it always
+            transmit(timestamping ? "Z1" : "Z0");
+        } catch (SerialPortException e) {
+            throw new USBtinException(e);
+        } catch (SerialPortTimeoutException e) {
+            throw new USBtinException("Timeout! USBtin doesn't answer. Right port?");
+        }
+        super.openCANChannel(baudrate, mode);
+    }
+
+    /**
+     * Handle serial port event
+     *
+     * @param event Serial port event
+     */
+    @Override
+    public void serialEvent(SerialPortEvent event) {
+        if (!event.isRXCHAR() || event.getEventValue() <= 0) {
+            return;
+        }
+        byte[] buffer;
+        try {
+            buffer = serialPort.readBytes();
+        } catch (SerialPortException e) {
+            System.err.println(e);
+            return;
+        }
+        if (buffer == null) {
+            return;
+        }
+
+        CANFrame frame = parser.getFrame();
+        for (int i = 0; i < buffer.length; i++) {
+            switch (parser.feed(buffer[i])) {
+                case SlcanParser.FRAME:
+                    for (CANFrameListener listener : frameListeners) {
+                        listener.receiveCANFrame(frame);
+                    }
+                    if (!listeners.isEmpty()) {
+                        CANMessage canmsg = frame.toCANMessage();
+                        for (CANMessageListener listener : listeners) {
+                            listener.receiveCANMessage(canmsg);
+                        }
+                    }
+                    break;
+                case SlcanParser.ACK:
+                    synchronized (this) {
+                        if (!fifoTX.isEmpty()) {
+                            fifoTX.removeFirst();
+                        }
+                        try {
+                            sendFirstTXFifoMessage();
+                        } catch (USBtinException e) {
+                            System.err.println(e);
+                        }
+                    }
+                    break;
+                case SlcanParser.BELL:
+                    synchronized (this) {
+                        try {
+                            sendFirstTXFifoMessage();
+                        } catch (USBtinException e) {
+                            System.err.println(e);
+                        }
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+    }
+
+    /**
+     * Send given can message. Synchronized with the transmit acknowledge
+     * handling on the receive thread.
+     *
+     * @param canmsg Can message to send
+     * @throws USBtinException On serial port errors
+     */
+    @Override
+    public synchronized void send(CANMessage canmsg) throws USBtinException {
+        super.send(canmsg);
+    }
+}
@@ -0,0 +1,61 @@
+/*
+ * Part of USBtinViewer - Simple GUI for USBtin - USB to CAN interface
+ * http://www.fischl.de/usbtin
+ *
+ * Copyright (C) 2026  Thomas Fischl
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * Plugin processing the live message stream (alive counters, CRC checks,
+ * signal plausibility, ...).
+ *
+ * Processors are loaded from jar files in folder plugins/ or via menu
+ * Plugins. A jar lists its processor classes in
+ * META-INF/services/FrameProcessor. Each processor runs on its own thread
+ * behind a bounded queue, so a slow processor only loses messages (counted
+ * as dropped) and never delays reception or the display.
+ *
+ * @author Thomas Fischl
+ */
+public interface FrameProcessor {
+
+    /**
+     * Get name shown in statistics and log entries
+     *
+     * @return Name
+     */
+    public String getName();
+
+    /**
+     * Called once on the processor thread before the first message
+     *
+     * @param context Context to report results to the viewer
+     */
+    public void init(PluginContext context);
+
+    /**
+     * Process next message of the merged stream (CAN messages, info and
+     * errors). Called on the processor thread.
+     *
+     * @param message Log message, must not be modified
+     */
+    public void process(LogMessage message);
+
+    /**
+     * Called on the processor thread when the processor is unloaded
+     */
+    public void close();
+}
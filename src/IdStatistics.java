@@ -0,0 +1,411 @@
+/*
+ * Part of USBtinViewer - Simple GUI for USBtin - USB to CAN interface
+ * http://www.fischl.de/usbtin
+ *
+ * Copyright (C) 2026  Thomas Fischl
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * Statistics of all frames with the same channel, id, extended flag and
+ * direction: count, period, jitter, dlc, per byte value ranges and count of
+ * distinct values and per bit toggle counts. Each frame is counted in
+ * constant time from the packed payload, the frames are not kept.
+ *
+ * Statistics of consecutive parts of a capture can be merged, the period
+ * between the parts is then counted like any other period.
+ *
+ * @author Thomas Fischl
+ */
+public class IdStatistics {
+
+    /** Key (see getKey) */
+    protected final long key;
+
+    /** Count of frames */
+    protected long count = 0;
+
+    /** Timestamp of first frame */
+    protected long first = 0;
+
+    /** Timestamp of last frame */
+    protected long last = 0;
+
+    /** Payload of first frame */
+    protected long firstPayload = 0;
+
+    /** Payload of last frame */
+    protected long lastPayload = 0;
+
+    /** Periods between consecutive frames */
+    protected final PeriodStatistics periods = new PeriodStatistics();
+
+    /** Minimum data length */
+    protected int minDlc = 8;
+
+    /** Maximum data length */
+    protected int maxDlc = 0;
+
+    /** Per byte minimum, packed like the payload */
+    protected long minBytes = -1;
+
+    /** Per byte maximum, packed like the payload */
+    protected long maxBytes = 0;
+
+    /** Bits which toggled between consecutive frames */
+    protected long toggled = 0;
+
+    /** Toggle count per payload bit, index 0 is the least significant bit */
+    protected final long[] toggles = new long[64];
+
+    /** Seen values per byte, 256 bits (4 longs) per byte */
+    protected final long[] values = new long[32];
+
+    /**
+     * Create empty statistics of given key
+     *
+     * @param key Key
+     */
+    public IdStatistics(long key) {
+        this.key = key;
+    }
+
+    /**
+     * Build key of given frame
+     *
+     * @param channel Channel index
+     * @param id CAN id
+     * @param extended True, if extended id
+     * @param out True, if frame was sent
+     * @return Key
+     */
+    public static long getKey(int channel, int id, boolean extended, boolean out) {
+        return ((long) channel << 32) | ((id & 0x3fffffffL) << 2) | (extended ? 1 : 0) | (out ? 2 : 0);
+    }
+
+    /**
+     * Count one frame
+     *
+     * @param timestamp Timestamp in ms
+     * @param dlc Data length
+     * @param payload Packed payload
+     */
+    public void add(long timestamp, int dlc, long payload) {
+        if (count == 0) {
+            first = timestamp;
+            firstPayload = payload;
+        } else {
+            periods.add(timestamp - last);
+            addToggles(payload ^ lastPayload);
+        }
+        count++;
+        last = timestamp;
+        lastPayload = payload;
+        if (dlc < minDlc) {
+            minDlc = dlc;
+        }
+        if (dlc > maxDlc) {
+            maxDlc = dlc;
+        }
+        for (int i = 0; i < dlc; i++) {
+            int shift = 56 - 8 * i;
+            long value = (payload >>> shift) & 0xff;
+            if (value < ((minBytes >>> shift) & 0xff)) {
+                minBytes = (minBytes & ~(0xffL << shift)) | (value << shift);
+            }
+            if (value > ((maxBytes >>> shift) & 0xff)) {
+                maxBytes = (maxBytes & ~(0xffL << shift)) | (value << shift);
+            }
+            values[i * 4 + (int) (value >>> 6)] |= 1L << value;
+        }
+    }
+
+    /**
+     * Count toggled bits
+     *
+     * @param diff XOR of consecutive payloads
+     */
+    protected void addToggles(long diff) {
+        toggled |= diff;
+        while (diff != 0) {
+            toggles[Long.numberOfTrailingZeros(diff)]++;
+            diff &= diff - 1;
+        }
+    }
+
+    /**
+     * Merge statistics of the following part of the capture
+     *
+     * @param next Statistics of same key from the following part
+     */
+    public void merge(IdStatistics next) {
+        if (next.count == 0) {
+            return;
+        }
+        if (count == 0) {
+            first = next.first;
+            firstPayload = next.firstPayload;
+        } else {
+            periods.add(next.first - last);
+            addToggles(next.firstPayload ^ lastPayload);
+        }
+        count += next.count;
+        last = next.last;
+        lastPayload = next.lastPayload;
+        periods.merge(next.periods);
+        minDlc = Math.min(minDlc, next.minDlc);
+        maxDlc = Math.max(maxDlc, next.maxDlc);
+        for (int i = 0; i < 8; i++) {
+            int shift = 56 - 8 * i;
+            long a = (minBytes >>> shift) & 0xff;
+            long b = (next.minBytes >>> shift) & 0xff;
+            if (b < a) {
+                minBytes = (minBytes & ~(0xffL << shift)) | (b << shift);
+            }
+            a = (maxBytes >>> shift) & 0xff;
+            b = (next.maxBytes >>> shift) & 0xff;
+            if (b > a) {
+                maxBytes = (maxBytes & ~(0xffL << shift)) | (b << shift);
+            }
+        }
+        toggled |= next.toggled;
+        for (int i = 0; i < 64; i++) {
+            toggles[i] += next.toggles[i];
+        }
+        for (int i = 0; i < 32; i++) {
+            values[i] |= next.values[i];
+        }
+    }
+
+    /**
+     * Get key
+     *
+     * @return Key
+     */
+    public long getKey() {
+        return key;
+    }
+
+    /**
+     * Get channel index
+     *
+     * @return Channel index
+     */
+    public int getChannel() {
+        return (int) (key >>> 32);
+    }
+
+    /**
+     * Get CAN id
+     *
+     * @return CAN id
+     */
+    public int getId() {
+        return (int) ((key >>> 2) & 0x3fffffff);
+    }
+
+    /**
+     * Check for extended id
+     *
+     * @return True, if extended id
+     */
+    public boolean isExtended() {
+        return (key & 1) != 0;
+    }
+
+    /**
+     * Check direction
+     *
+     * @return True, if frames were sent
+     */
+    public boolean isOut() {
+        return (key & 2) != 0;
+    }
+
+    /**
+     * Get count of frames
+     *
+     * @return Count of frames
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * Get timestamp of first frame
+     *
+     * @return Timestamp in ms
+     */
+    public long getFirst() {
+        return first;
+    }
+
+    /**
+     * Get timestamp of last frame
+     *
+     * @return Timestamp in ms
+     */
+    public long getLast() {
+        return last;
+    }
+
+    /**
+     * Get payload of last frame
+     *
+     * @return Packed payload
+     */
+    public long getLastPayload() {
+        return lastPayload;
+    }
+
+    /**
+     * Get minimum data length
+     *
+     * @return Data length
+     */
+    public int getMinDlc() {
+        return minDlc;
+    }
+
+    /**
+     * Get maximum data length
+     *
+     * @return Data length
+     */
+    public int getMaxDlc() {
+        return maxDlc;
+    }
+
+    /**
+     * Get minimum of given byte
+     *
+     * @param index Byte index
+     * @return Minimum value, 0 if the byte was never present
+     */
+    public int getMinByte(int index) {
+        return index < maxDlc ? CANFrame.getByte(minBytes, index) & 0xff : 0;
+    }
+
+    /**
+     * Get maximum of given byte
+     *
+     * @param index Byte index
+     * @return Maximum value
+     */
+    public int getMaxByte(int index) {
+        return CANFrame.getByte(maxBytes, index) & 0xff;
+    }
+
+    /**
+     * Get bits which toggled between consecutive frames
+     *
+     * @return Bit mask, packed like the payload
+     */
+    public long getToggled() {
+        return toggled;
+    }
+
+    /**
+     * Get count of toggles of given bit between consecutive frames
+     *
+     * @param index Byte index
+     * @param bit Bit in byte, 0 is the least significant bit
+     * @return Count of toggles
+     */
+    public long getToggleCount(int index, int bit) {
+        return toggles[56 - 8 * index + bit];
+    }
+
+    /**
+     * Get count of distinct values of given byte
+     *
+     * @param index Byte index
+     * @return Count of distinct values (0..256)
+     */
+    public int getDistinct(int index) {
+        int distinct = 0;
+        for (int i = 0; i < 4; i++) {
+            distinct += Long.bitCount(values[index * 4 + i]);
+        }
+        return distinct;
+    }
+
+    /**
+     * Get minimum period
+     *
+     * @return Period in ms, 0 if less than two frames
+     */
+    public long getMinPeriod() {
+        return periods.getMin();
+    }
+
+    /**
+     * Get maximum period
+     *
+     * @return Period in ms
+     */
+    public long getMaxPeriod() {
+        return periods.getMax();
+    }
+
+    /**
+     * Get mean period
+     *
+     * @return Period in ms, 0 if less than two frames
+     */
+    public double getMeanPeriod() {
+        return periods.getMean();
+    }
+
+    /**
+     * Get jitter as standard deviation of the period
+     *
+     * @return Jitter in ms
+     */
+    public double getJitter() {
+        return periods.getJitter();
+    }
+
+    /**
+     * Get id as shown in the monitor, with channel and direction if set
+     *
+     * @return Id string
+     */
+    public String getName() {
+        String name = isExtended() ? String.format("%08xh", getId()) : String.format("%03xh", getId());
+        if (getChannel() != 0) {
+            name = "CH" + getChannel() + " " + name;
+        }
+        return isOut() ? name + " out" : name;
+    }
+
+    /**
+     * Get value ranges of all bytes ("00-ff 12 ...")
+     *
+     * @return Ranges string
+     */
+    public String getRanges() {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < maxDlc; i++) {
+            if (i > 0) {
+                sb.append(' ');
+            }
+            int min = getMinByte(i);
+            int max = getMaxByte(i);
+            sb.append(min == max ? String.format("%02x", min) : String.format("%02x-%02x", min, max));
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,137 @@
+/*
+ * Part of USBtinViewer - Simple GUI for USBtin - USB to CAN interface
+ * http://www.fischl.de/usbtin
+ *
+ * Copyright (C) 2026  Thomas Fischl
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+
+/**
+ * Per id statistics in an open addressing table by key.
+ *
+ * @author Thomas Fischl
+ */
+public class IdStatisticsTable {
+
+    /** Keys */
+    protected long[] keys = new long[256];
+
+    /** Statistics, null = free slot */
+    protected IdStatistics[] values = new IdStatistics[256];
+
+    /** Count of used slots */
+    protected int size = 0;
+
+    /**
+     * Get or create statistics of given key
+     *
+     * @param key Key
+     * @return Statistics
+     */
+    public IdStatistics get(long key) {
+        int mask = keys.length - 1;
+        int i = slot(key, mask);
+        while (values[i] != null) {
+            if (keys[i] == key) {
+                return values[i];
+            }
+            i = (i + 1) & mask;
+        }
+        if ((size + 1) * 2 > keys.length) {
+            grow();
+            return get(key);
+        }
+        size++;
+        keys[i] = key;
+        values[i] = new IdStatistics(key);
+        return values[i];
+    }
+
+    /**
+     * Get count of ids
+     *
+     * @return Count of statistics
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Get all statistics
+     *
+     * @return Statistics in key order
+     */
+    public ArrayList<IdStatistics> getSorted() {
+        ArrayList<IdStatistics> list = new ArrayList<IdStatistics>(size);
+        for (IdStatistics s : values) {
+            if (s != null) {
+                list.add(s);
+            }
+        }
+        Collections.sort(list, new Comparator<IdStatistics>() {
+            @Override
+            public int compare(IdStatistics a, IdStatistics b) {
+                return a.getKey() < b.getKey() ? -1 : (a.getKey() > b.getKey() ? 1 : 0);
+            }
+        });
+        return list;
+    }
+
+    /**
+     * Remove all statistics
+     */
+    public void clear() {
+        keys = new long[256];
+        values = new IdStatistics[256];
+        size = 0;
+    }
+
+    /**
+     * Double table size
+     */
+    protected void grow() {
+        long[] oldKeys = keys;
+        IdStatistics[] oldValues = values;
+        keys = new long[oldKeys.length * 2];
+        values = new IdStatistics[oldValues.length * 2];
+        int mask = keys.length - 1;
+        for (int j = 0; j < oldKeys.length; j++) {
+            if (oldValues[j] != null) {
+                int i = slot(oldKeys[j], mask);
+                while (values[i] != null) {
+                    i = (i + 1) & mask;
+                }
+                keys[i] = oldKeys[j];
+                values[i] = oldValues[j];
+            }
+        }
+    }
+
+    /**
+     * Get home slot of given key
+     *
+     * @param key Key
+     * @param mask Table size - 1
+     * @return Slot index
+     */
+    protected static int slot(long key, int mask) {
+        long h = key * 0x9e3779b97f4a7c15L;
+        return (int) (h ^ (h >>> 32)) & mask;
+    }
+}
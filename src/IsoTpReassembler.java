@@ -0,0 +1,487 @@
+/*
+ * Part of USBtinViewer - Simple GUI for USBtin - USB to CAN interface
+ * http://www.fischl.de/usbtin
+ *
+ * Copyright (C) 2026  Thomas Fischl
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import de.fischl.usbtin.*;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import javax.swing.table.AbstractTableModel;
+
+/**
+ * Reassembles ISO-TP (ISO 15765-2, normal addressing) PDUs of configured
+ * request/response id pairs and pairs requests with their responses.
+ *
+ * Memory is bounded: one session per sending id, each session buffer holds
+ * at most MAX_STORED bytes (longer PDUs are counted but truncated), sessions
+ * without consecutive frame for N_CR ms are aborted and the table keeps the
+ * last MAX_ROWS PDUs with the first ROW_DATA bytes each. Per frame only the
+ * session lookup and a copy of up to 7 bytes are done.
+ *
+ * @author Thomas Fischl
+ */
+public class IsoTpReassembler extends AbstractTableModel implements MessageSink {
+
+    /** Timeout (ms) waiting for the next consecutive frame */
+    protected static final long N_CR = 1000;
+
+    /** Maximum stored bytes of one PDU */
+    protected static final int MAX_STORED = 4095;
+
+    /** Count of PDUs kept in the table */
+    protected static final int MAX_ROWS = 10000;
+
+    /** Bytes kept per table row */
+    protected static final int ROW_DATA = 256;
+
+    /** Column titles */
+    protected static final String[] TITLES = new String[]{"#", "Time (ms)", "Ch", "Id", "Type", "Length", "Service", "Pair", "Data"};
+
+    /**
+     * Reassembly state of one sending id
+     */
+    protected static class Session {
+
+        /** Buffer of received bytes */
+        byte[] data;
+
+        /** Announced PDU length */
+        long length;
+
+        /** Count of received bytes */
+        long received;
+
+        /** Expected sequence number */
+        int sequence;
+
+        /** Timestamp of first frame */
+        long start;
+
+        /** Timestamp of last frame */
+        long last;
+    }
+
+    /**
+     * Reassembled PDU (table row)
+     */
+    protected static class Pdu {
+
+        /** Row number */
+        long number;
+
+        /** Timestamp of last frame */
+        long timestamp;
+
+        /** Channel index */
+        int channel;
+
+        /** CAN id */
+        int id;
+
+        /** True, if extended id */
+        boolean extended;
+
+        /** True, if request */
+        boolean request;
+
+        /** PDU length */
+        long length;
+
+        /** First bytes of PDU */
+        byte[] data;
+
+        /** Pairing text */
+        String pair = "";
+    }
+
+    /** Viewer used for timestamps and logging */
+    protected final USBtinViewer viewer;
+
+    /** Response id by request id */
+    protected final HashMap<Integer, Integer> pairs;
+
+    /** Request id by response id */
+    protected final HashMap<Integer, Integer> responses = new HashMap<Integer, Integer>();
+
+    /** Open sessions by key (channel, id, extended) */
+    protected final HashMap<Long, Session> sessions = new HashMap<Long, Session>();
+
+    /** Pending requests by key of the expected response */
+    protected final HashMap<Long, Pdu> pending = new HashMap<Long, Pdu>();
+
+    /** Rows, ring buffer */
+    protected final Pdu[] rows = new Pdu[MAX_ROWS];
+
+    /** Index of oldest row */
+    protected int first = 0;
+
+    /** Count of rows */
+    protected int size = 0;
+
+    /** Count of PDUs */
+    protected long count = 0;
+
+    /** Count of aborted sessions */
+    protected long aborted = 0;
+
+    /** Count of rows added since last tick */
+    protected int added = 0;
+
+    /** Count of oldest rows removed since last tick */
+    protected int removed = 0;
+
+    /**
+     * Create reassembler of given id pairs
+     *
+     * @param viewer Viewer used for timestamps and logging
+     * @param pairs Response id by request id
+     */
+    public IsoTpReassembler(USBtinViewer viewer, HashMap<Integer, Integer> pairs) {
+        this.viewer = viewer;
+        this.pairs = pairs;
+        for (Map.Entry<Integer, Integer> pair : pairs.entrySet()) {
+            responses.put(pair.getValue(), pair.getKey());
+        }
+    }
+
+    /**
+     * Handle next message of merged stream
+     *
+     * @param message Log message
+     */
+    @Override
+    public void receive(LogMessage message) {
+        CANMessage canmsg = message.getCanmsg();
+        if (canmsg == null || canmsg.isRtr()) {
+            return;
+        }
+        int id = canmsg.getId();
+        boolean request = pairs.containsKey(id);
+        if (!request && !responses.containsKey(id)) {
+            return;
+        }
+        byte[] data = canmsg.getData();
+        if (data.length == 0) {
+            return;
+        }
+
+        long key = key(message.getChannel(), id, canmsg.isExtended());
+        long timestamp = message.getTimestamp();
+        int pci = data[0] & 0xff;
+        switch (pci >> 4) {
+            case 0: {
+                // single frame
+                int length = pci & 0x0f;
+                int offset = 1;
+                if (length == 0 && data.length > 8) {
+                    length = data[1] & 0xff;
+                    offset = 2;
+                }
+                length = Math.min(length, data.length - offset);
+                byte[] pdu = new byte[length];
+                System.arraycopy(data, offset, pdu, 0, length);
+                sessions.remove(key);
+                complete(message, request, length, pdu);
+                break;
+            }
+            case 1: {
+                // first frame
+                if (data.length < 2) {
+                    return;
+                }
+                long length = ((pci & 0x0f) << 8) | (data[1] & 0xff);
+                int offset = 2;
+                if (length == 0 && data.length >= 6) {
+                    length = ((data[2] & 0xffL) << 24) | ((data[3] & 0xff) << 16) | ((data[4] & 0xff) << 8) | (data[5] & 0xff);
+                    offset = 6;
+                }
+                if (sessions.containsKey(key)) {
+                    aborted++;
+                }
+                Session session = new Session();
+                session.length = length;
+                session.data = new byte[(int) Math.min(length, MAX_STORED)];
+                session.sequence = 1;
+                session.start = timestamp;
+                session.last = timestamp;
+                sessions.put(key, session);
+                append(session, data, offset);
+                break;
+            }
+            case 2: {
+                // consecutive frame
+                Session session = sessions.get(key);
+                if (session == null) {
+                    return;
+                }
+                if ((pci & 0x0f) != session.sequence) {
+                    sessions.remove(key);
+                    aborted++;
+                    viewer.log(String.format("ISO-TP %03xh: sequence error (expected %d, got %d)", id, session.sequence, pci & 0x0f), LogMessage.MessageType.ERROR);
+                    return;
+                }
+                session.sequence = (session.sequence + 1) & 0x0f;
+                session.last = timestamp;
+                append(session, data, 1);
+                if (session.received >= session.length) {
+                    sessions.remove(key);
+                    complete(message, request, session.length, session.data);
+                }
+                break;
+            }
+            default:
+                // flow control frames are not part of the PDU
+                break;
+        }
+    }
+
+    /**
+     * Append payload bytes to session, bytes beyond the buffer are counted only
+     *
+     * @param session Session
+     * @param data Frame payload
+     * @param offset Offset of PDU bytes in payload
+     */
+    protected void append(Session session, byte[] data, int offset) {
+        int n = (int) Math.min(data.length - offset, session.length - session.received);
+        int stored = (int) Math.max(0, Math.min(n, session.data.length - session.received));
+        if (stored > 0) {
+            System.arraycopy(data, offset, session.data, (int) session.received, stored);
+        }
+        session.received += n;
+    }
+
+    /**
+     * Add completed PDU and pair it
+     *
+     * @param message Last frame of PDU
+     * @param request True, if sent by request id
+     * @param length PDU length
+     * @param data PDU bytes (may be truncated)
+     */
+    protected void complete(LogMessage message, boolean request, long length, byte[] data) {
+        CANMessage canmsg = message.getCanmsg();
+        Pdu pdu = new Pdu();
+        pdu.number = ++count;
+        pdu.timestamp = message.getTimestamp();
+        pdu.channel = message.getChannel();
+        pdu.id = canmsg.getId();
+        pdu.extended = canmsg.isExtended();
+        pdu.request = request;
+        pdu.length = length;
+        pdu.data = data.length > ROW_DATA ? java.util.Arrays.copyOf(data, ROW_DATA) : data;
+
+        if (request) {
+            pending.put(key(pdu.channel, pairs.get(pdu.id), pdu.extended), pdu);
+        } else {
+            long key = key(pdu.channel, pdu.id, pdu.extended);
+            Pdu req = pending.get(key);
+            if (req != null) {
+                pdu.pair = "#" + req.number + " +" + (pdu.timestamp - req.timestamp) + " ms";
+                // keep waiting after "response pending" (7f xx 78)
+                boolean responsePending = data.length >= 3 && (data[0] & 0xff) == 0x7f && (data[2] & 0xff) == 0x78;
+                if (!responsePending) {
+                    pending.remove(key);
+                    req.pair = "#" + pdu.number;
+                }
+            }
+        }
+
+        if (size == MAX_ROWS) {
+            first = (first + 1) % MAX_ROWS;
+            size--;
+            removed++;
+        }
+        rows[(first + size) % MAX_ROWS] = pdu;
+        size++;
+        added++;
+    }
+
+    /**
+     * Abort timed out sessions, publish new rows
+     */
+    @Override
+    public void tick() {
+        if (!sessions.isEmpty()) {
+            long now = viewer.getTimestamp();
+            Iterator<Map.Entry<Long, Session>> it = sessions.entrySet().iterator();
+            while (it.hasNext()) {
+                Map.Entry<Long, Session> entry = it.next();
+                if (now - entry.getValue().last > N_CR) {
+                    it.remove();
+                    aborted++;
+                    viewer.log(String.format("ISO-TP %03xh: timeout after %d of %d bytes", (entry.getKey() >>> 1) & 0x1fffffff,
+                            entry.getValue().received, entry.getValue().length), LogMessage.MessageType.ERROR);
+                }
+            }
+        }
+        if (added > 0) {
+            int published = size - added + removed;
+            if (removed >= published) {
+                fireTableDataChanged();
+            } else {
+                if (removed > 0) {
+                    fireTableRowsDeleted(0, removed - 1);
+                }
+                fireTableRowsInserted(size - added, size - 1);
+            }
+            added = 0;
+            removed = 0;
+        }
+    }
+
+    /**
+     * Build session key
+     *
+     * @param channel Channel index
+     * @param id CAN id
+     * @param extended True, if extended id
+     * @return Key
+     */
+    protected static long key(int channel, int id, boolean extended) {
+        return ((long) channel << 32) | ((long) id << 1) | (extended ? 1 : 0);
+    }
+
+    /**
+     * Get name of UDS service of given PDU
+     *
+     * @param data PDU bytes
+     * @return Service name, empty if unknown
+     */
+    protected static String getService(byte[] data) {
+        if (data.length == 0) {
+            return "";
+        }
+        int sid = data[0] & 0xff;
+        if (sid == 0x7f) {
+            return data.length >= 3 ? String.format("Negative response %02x, NRC %02x", data[1] & 0xff, data[2] & 0xff) : "Negative response";
+        }
+        String suffix = "";
+        if (sid >= 0x40 && sid < 0x80 || sid >= 0xc0) {
+            sid -= 0x40;
+            suffix = " (positive)";
+        }
+        String name;
+        switch (sid) {
+            case 0x10: name = "DiagnosticSessionControl"; break;
+            case 0x11: name = "ECUReset"; break;
+            case 0x14: name = "ClearDiagnosticInformation"; break;
+            case 0x19: name = "ReadDTCInformation"; break;
+            case 0x22: name = "ReadDataByIdentifier"; break;
+            case 0x23: name = "ReadMemoryByAddress"; break;
+            case 0x27: name = "SecurityAccess"; break;
+            case 0x28: name = "CommunicationControl"; break;
+            case 0x2e: name = "WriteDataByIdentifier"; break;
+            case 0x2f: name = "InputOutputControlByIdentifier"; break;
+            case 0x31: name = "RoutineControl"; break;
+            case 0x34: name = "RequestDownload"; break;
+            case 0x35: name = "RequestUpload"; break;
+            case 0x36: name = "TransferData"; break;
+            case 0x37: name = "RequestTransferExit"; break;
+            case 0x3d: name = "WriteMemoryByAddress"; break;
+            case 0x3e: name = "TesterPresent"; break;
+            case 0x85: name = "ControlDTCSetting"; break;
+            default: return String.format("%02xh", data[0] & 0xff);
+        }
+        return name + suffix;
+    }
+
+    /**
+     * Get statistics line
+     *
+     * @return Statistics
+     */
+    public String getReport() {
+        return count + " PDUs, " + sessions.size() + " open sessions, " + aborted + " aborted";
+    }
+
+    /**
+     * Get count of rows
+     *
+     * @return Count of PDUs in table
+     */
+    @Override
+    public int getRowCount() {
+        return size;
+    }
+
+    /**
+     * Get count of columns
+     *
+     * @return Count of columns
+     */
+    @Override
+    public int getColumnCount() {
+        return TITLES.length;
+    }
+
+    /**
+     * Get name of given column
+     *
+     * @param column Column id
+     * @return Name of given column
+     */
+    @Override
+    public String getColumnName(int column) {
+        return TITLES[column];
+    }
+
+    /**
+     * Get value of given table cell
+     *
+     * @param row Row id
+     * @param col Column id
+     * @return Value of given cell
+     */
+    @Override
+    public Object getValueAt(int row, int col) {
+        Pdu pdu = rows[(first + row) % MAX_ROWS];
+        switch (col) {
+            case 0:
+                return pdu.number;
+            case 1:
+                return pdu.timestamp;
+            case 2:
+                return pdu.channel;
+            case 3:
+                return pdu.extended ? String.format("%08xh", pdu.id) : String.format("%03xh", pdu.id);
+            case 4:
+                return pdu.request ? "Request" : "Response";
+            case 5:
+                return pdu.length;
+            case 6:
+                return getService(pdu.data);
+            case 7:
+                return pdu.pair;
+            case 8:
+                StringBuilder sb = new StringBuilder();
+                for (int i = 0; i < pdu.data.length; i++) {
+                    if (i > 0) {
+                        sb.append(' ');
+                    }
+                    sb.append(String.format("%02x", pdu.data[i]));
+                }
+                if (pdu.length > pdu.data.length) {
+                    sb.append(" ...");
+                }
+                return sb.toString();
+        }
+        return "";
+    }
+}
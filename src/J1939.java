@@ -0,0 +1,90 @@
+/*
+ * Part of USBtinViewer - Simple GUI for USBtin - USB to CAN interface
+ * http://www.fischl.de/usbtin
+ *
+ * Copyright (C) 2026  Thomas Fischl
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * Decoding of J1939 29 bit identifiers: priority (3 bits), parameter group
+ * number (data page, PDU format, PDU specific) and source address. PDU
+ * formats below 240 (PDU1) carry the destination address in the PDU
+ * specific byte, which is then not part of the PGN.
+ *
+ * @author Thomas Fischl
+ */
+public class J1939 {
+
+    /** PGN of transport protocol connection management (TP.CM) */
+    public static final int PGN_TP_CM = 0xec00;
+
+    /** PGN of transport protocol data transfer (TP.DT) */
+    public static final int PGN_TP_DT = 0xeb00;
+
+    /** Global destination address */
+    public static final int GLOBAL = 0xff;
+
+    /**
+     * Get priority
+     *
+     * @param id Extended CAN id
+     * @return Priority (0 = highest)
+     */
+    public static int getPriority(int id) {
+        return (id >>> 26) & 7;
+    }
+
+    /**
+     * Get parameter group number
+     *
+     * @param id Extended CAN id
+     * @return PGN (18 bits)
+     */
+    public static int getPgn(int id) {
+        int pgn = (id >>> 8) & 0x3ffff;
+        return (pgn & 0xff00) < 0xf000 ? pgn & 0x3ff00 : pgn;
+    }
+
+    /**
+     * Get destination address
+     *
+     * @param id Extended CAN id
+     * @return Destination address, GLOBAL for PDU2 formats
+     */
+    public static int getDestination(int id) {
+        return ((id >>> 8) & 0xff00) < 0xf000 ? (id >>> 8) & 0xff : GLOBAL;
+    }
+
+    /**
+     * Get source address
+     *
+     * @param id Extended CAN id
+     * @return Source address
+     */
+    public static int getSourceAddress(int id) {
+        return id & 0xff;
+    }
+
+    /**
+     * Format id as PGN, source address and priority
+     *
+     * @param id Extended CAN id
+     * @return Text, e.g. "0fef1h sa00 p6"
+     */
+    public static String format(int id) {
+        return String.format("%05xh sa%02x p%d", getPgn(id), getSourceAddress(id), getPriority(id));
+    }
+}
@@ -0,0 +1,436 @@
+/*
+ * Part of USBtinViewer - Simple GUI for USBtin - USB to CAN interface
+ * http://www.fischl.de/usbtin
+ *
+ * Copyright (C) 2026  Thomas Fischl
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import de.fischl.usbtin.*;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import javax.swing.table.AbstractTableModel;
+
+/**
+ * Reassembles J1939 transport protocol transfers (TP.CM/TP.DT), broadcast
+ * (BAM) and connection mode (RTS/CTS).
+ *
+ * Memory is bounded: one session per channel, source and destination
+ * address with a buffer of the announced size (at most 255 packets of 7
+ * bytes), at most MAX_SESSIONS open sessions, sessions without data for
+ * TIMEOUT ms are aborted and the table keeps the last MAX_ROWS transfers
+ * with the first ROW_DATA bytes each. Packets are placed by their sequence
+ * number, so repeated packets of connection mode transfers are tolerated.
+ * Frames of other PGNs cost only the PDU format check.
+ *
+ * @author Thomas Fischl
+ */
+public class J1939Transport extends AbstractTableModel implements MessageSink {
+
+    /** Timeout (ms) waiting for the next data packet */
+    protected static final long TIMEOUT = 1250;
+
+    /** Maximum count of open sessions */
+    protected static final int MAX_SESSIONS = 256;
+
+    /** Count of transfers kept in the table */
+    protected static final int MAX_ROWS = 10000;
+
+    /** Bytes kept per table row */
+    protected static final int ROW_DATA = 256;
+
+    /** Control byte: request to send */
+    protected static final int CM_RTS = 16;
+
+    /** Control byte: broadcast announce message */
+    protected static final int CM_BAM = 32;
+
+    /** Control byte: connection abort */
+    protected static final int CM_ABORT = 255;
+
+    /** Column titles */
+    protected static final String[] TITLES = new String[]{"#", "Time (ms)", "Ch", "Type", "PGN", "SA", "DA", "Size", "Packets", "Duration (ms)", "Data"};
+
+    /**
+     * Reassembly state of one source and destination
+     */
+    protected static class Session {
+
+        /** True, if broadcast */
+        boolean bam;
+
+        /** Transferred PGN */
+        int pgn;
+
+        /** Announced size */
+        int size;
+
+        /** Announced count of packets */
+        int packets;
+
+        /** Buffer of received bytes */
+        byte[] data;
+
+        /** Received packets, one bit per sequence number */
+        long[] received = new long[4];
+
+        /** Count of distinct received packets */
+        int count;
+
+        /** Timestamp of announce */
+        long start;
+
+        /** Timestamp of last frame */
+        long last;
+    }
+
+    /**
+     * Reassembled transfer (table row)
+     */
+    protected static class Transfer {
+
+        /** Row number */
+        long number;
+
+        /** Timestamp of last packet */
+        long timestamp;
+
+        /** Channel index */
+        int channel;
+
+        /** True, if broadcast */
+        boolean bam;
+
+        /** Transferred PGN */
+        int pgn;
+
+        /** Source address */
+        int source;
+
+        /** Destination address */
+        int destination;
+
+        /** Size */
+        int size;
+
+        /** Count of packets */
+        int packets;
+
+        /** Duration in ms */
+        long duration;
+
+        /** First bytes of transfer */
+        byte[] data;
+    }
+
+    /** Viewer used for timestamps and logging */
+    protected final USBtinViewer viewer;
+
+    /** Open sessions by key (channel, source, destination) */
+    protected final HashMap<Long, Session> sessions = new HashMap<Long, Session>();
+
+    /** Rows, ring buffer */
+    protected final Transfer[] rows = new Transfer[MAX_ROWS];
+
+    /** Index of oldest row */
+    protected int first = 0;
+
+    /** Count of rows */
+    protected int size = 0;
+
+    /** Count of transfers */
+    protected long count = 0;
+
+    /** Count of aborted sessions */
+    protected long aborted = 0;
+
+    /** Count of announces ignored because of too many open sessions */
+    protected long ignored = 0;
+
+    /** Count of rows added since last tick */
+    protected int added = 0;
+
+    /** Count of oldest rows removed since last tick */
+    protected int removed = 0;
+
+    /**
+     * Create reassembler
+     *
+     * @param viewer Viewer used for timestamps and logging
+     */
+    public J1939Transport(USBtinViewer viewer) {
+        this.viewer = viewer;
+    }
+
+    /**
+     * Handle next message of merged stream
+     *
+     * @param message Log message
+     */
+    @Override
+    public void receive(LogMessage message) {
+        CANMessage canmsg = message.getCanmsg();
+        if (canmsg == null || !canmsg.isExtended() || canmsg.isRtr()) {
+            return;
+        }
+        int id = canmsg.getId();
+        int format = (id >>> 16) & 0x3ff;
+        if (format != J1939.PGN_TP_CM >> 8 && format != J1939.PGN_TP_DT >> 8) {
+            return;
+        }
+        byte[] data = canmsg.getData();
+        if (data.length < 8) {
+            return;
+        }
+        int source = J1939.getSourceAddress(id);
+        int destination = J1939.getDestination(id);
+        long key = key(message.getChannel(), source, destination);
+        long timestamp = message.getTimestamp();
+
+        if (format == J1939.PGN_TP_DT >> 8) {
+            Session session = sessions.get(key);
+            int sequence = data[0] & 0xff;
+            if (session == null || sequence == 0 || sequence > session.packets) {
+                return;
+            }
+            session.last = timestamp;
+            int word = (sequence - 1) >>> 6;
+            long bit = 1L << (sequence - 1);
+            if ((session.received[word] & bit) == 0) {
+                session.received[word] |= bit;
+                session.count++;
+            }
+            int offset = (sequence - 1) * 7;
+            System.arraycopy(data, 1, session.data, offset, Math.min(7, session.data.length - offset));
+            if (session.count == session.packets) {
+                sessions.remove(key);
+                complete(message, session, source, destination);
+            }
+            return;
+        }
+
+        // connection management
+        int control = data[0] & 0xff;
+        int pgn = (data[5] & 0xff) | ((data[6] & 0xff) << 8) | ((data[7] & 0x03) << 16);
+        switch (control) {
+            case CM_BAM:
+            case CM_RTS: {
+                int announced = (data[1] & 0xff) | ((data[2] & 0xff) << 8);
+                int packets = data[3] & 0xff;
+                if (packets == 0 || packets != (announced + 6) / 7) {
+                    return;
+                }
+                if (sessions.remove(key) != null) {
+                    aborted++;
+                    viewer.log(String.format("J1939 TP %02x->%02x: new transfer of %05xh before end of last one", source, destination, pgn), LogMessage.MessageType.ERROR);
+                } else if (sessions.size() >= MAX_SESSIONS) {
+                    ignored++;
+                    return;
+                }
+                Session session = new Session();
+                session.bam = control == CM_BAM;
+                session.pgn = pgn;
+                session.size = announced;
+                session.packets = packets;
+                session.data = new byte[announced];
+                session.start = timestamp;
+                session.last = timestamp;
+                sessions.put(key, session);
+                break;
+            }
+            case CM_ABORT: {
+                // abort is sent by either side of the connection
+                Session session = sessions.remove(key);
+                if (session == null) {
+                    session = sessions.remove(key(message.getChannel(), destination, source));
+                }
+                if (session != null) {
+                    aborted++;
+                    viewer.log(String.format("J1939 TP %05xh: aborted by %02x, reason %d", session.pgn, source, data[1] & 0xff), LogMessage.MessageType.ERROR);
+                }
+                break;
+            }
+            default:
+                // CTS and end of message acknowledge only steer the sender
+                break;
+        }
+    }
+
+    /**
+     * Add completed transfer
+     *
+     * @param message Last packet
+     * @param session Completed session
+     * @param source Source address
+     * @param destination Destination address
+     */
+    protected void complete(LogMessage message, Session session, int source, int destination) {
+        Transfer transfer = new Transfer();
+        transfer.number = ++count;
+        transfer.timestamp = message.getTimestamp();
+        transfer.channel = message.getChannel();
+        transfer.bam = session.bam;
+        transfer.pgn = session.pgn;
+        transfer.source = source;
+        transfer.destination = destination;
+        transfer.size = session.size;
+        transfer.packets = session.packets;
+        transfer.duration = transfer.timestamp - session.start;
+        transfer.data = session.data.length > ROW_DATA ? java.util.Arrays.copyOf(session.data, ROW_DATA) : session.data;
+
+        if (size == MAX_ROWS) {
+            first = (first + 1) % MAX_ROWS;
+            size--;
+            removed++;
+        }
+        rows[(first + size) % MAX_ROWS] = transfer;
+        size++;
+        added++;
+    }
+
+    /**
+     * Abort timed out sessions, publish new rows
+     */
+    @Override
+    public void tick() {
+        if (!sessions.isEmpty()) {
+            long now = viewer.getTimestamp();
+            Iterator<Map.Entry<Long, Session>> it = sessions.entrySet().iterator();
+            while (it.hasNext()) {
+                Session session = it.next().getValue();
+                if (now - session.last > TIMEOUT) {
+                    it.remove();
+                    aborted++;
+                    viewer.log(String.format("J1939 TP %05xh: timeout after %d of %d packets", session.pgn, session.count, session.packets),
+                            LogMessage.MessageType.ERROR);
+                }
+            }
+        }
+        if (added > 0) {
+            int published = size - added + removed;
+            if (removed >= published) {
+                fireTableDataChanged();
+            } else {
+                if (removed > 0) {
+                    fireTableRowsDeleted(0, removed - 1);
+                }
+                fireTableRowsInserted(size - added, size - 1);
+            }
+            added = 0;
+            removed = 0;
+        }
+    }
+
+    /**
+     * Build session key
+     *
+     * @param channel Channel index
+     * @param source Source address
+     * @param destination Destination address
+     * @return Key
+     */
+    protected static long key(int channel, int source, int destination) {
+        return ((long) channel << 16) | (source << 8) | destination;
+    }
+
+    /**
+     * Get statistics line
+     *
+     * @return Statistics
+     */
+    public String getReport() {
+        return count + " transfers, " + sessions.size() + " open sessions, " + aborted + " aborted"
+                + (ignored > 0 ? ", " + ignored + " ignored (too many sessions)" : "");
+    }
+
+    /**
+     * Get count of rows
+     *
+     * @return Count of transfers in table
+     */
+    @Override
+    public int getRowCount() {
+        return size;
+    }
+
+    /**
+     * Get count of columns
+     *
+     * @return Count of columns
+     */
+    @Override
+    public int getColumnCount() {
+        return TITLES.length;
+    }
+
+    /**
+     * Get name of given column
+     *
+     * @param column Column id
+     * @return Name of given column
+     */
+    @Override
+    public String getColumnName(int column) {
+        return TITLES[column];
+    }
+
+    /**
+     * Get value of given table cell
+     *
+     * @param row Row id
+     * @param col Column id
+     * @return Value of given cell
+     */
+    @Override
+    public Object getValueAt(int row, int col) {
+        Transfer transfer = rows[(first + row) % MAX_ROWS];
+        switch (col) {
+            case 0:
+                return transfer.number;
+            case 1:
+                return transfer.timestamp;
+            case 2:
+                return transfer.channel;
+            case 3:
+                return transfer.bam ? "BAM" : "RTS/CTS";
+            case 4:
+                return String.format("%05xh", transfer.pgn);
+            case 5:
+                return String.format("%02x", transfer.source);
+            case 6:
+                return String.format("%02x", transfer.destination);
+            case 7:
+                return transfer.size;
+            case 8:
+                return transfer.packets;
+            case 9:
+                return transfer.duration;
+            case 10:
+                StringBuilder sb = new StringBuilder();
+                for (int i = 0; i < transfer.data.length; i++) {
+                    if (i > 0) {
+                        sb.append(' ');
+                    }
+                    sb.append(String.format("%02x", transfer.data[i]));
+                }
+                if (transfer.size > transfer.data.length) {
+                    sb.append(" ...");
+                }
+                return sb.toString();
+        }
+        return "";
+    }
+}
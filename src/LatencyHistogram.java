@@ -0,0 +1,176 @@
+/*
+ * Part of USBtinViewer - Simple GUI for USBtin - USB to CAN interface
+ * http://www.fischl.de/usbtin
+ *
+ * Copyright (C) 2026  Thomas Fischl
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Histogram of latencies in nanoseconds with log-linear buckets (16 buckets
+ * per power of two, about 6% resolution). Recording is allocation free and
+ * may be done by one thread while others read percentiles.
+ *
+ * @author Thomas Fischl
+ */
+public class LatencyHistogram {
+
+    /** Bits of linear sub buckets per power of two */
+    protected static final int SUB_BITS = 4;
+
+    /** Count of linear sub buckets per power of two */
+    protected static final int SUB_COUNT = 1 << SUB_BITS;
+
+    /** Count of buckets covering all positive long values */
+    protected static final int BUCKET_COUNT = (64 - SUB_BITS) * SUB_COUNT;
+
+    /** Bucket counters */
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+
+    /** Count of recorded values */
+    private volatile long count = 0;
+
+    /** Sum of recorded values */
+    private volatile long sum = 0;
+
+    /** Maximum recorded value */
+    private volatile long max = 0;
+
+    /**
+     * Get bucket index of given value
+     *
+     * @param value Value, negative values are counted as 0
+     * @return Bucket index
+     */
+    protected static int index(long value) {
+        if (value < SUB_COUNT) {
+            return value < 0 ? 0 : (int) value;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BITS;
+        return ((shift + 1) << SUB_BITS) + (int) ((value >>> shift) & (SUB_COUNT - 1));
+    }
+
+    /**
+     * Get highest value counted in given bucket
+     *
+     * @param index Bucket index
+     * @return Upper bound of bucket
+     */
+    protected static long upperBound(int index) {
+        if (index < SUB_COUNT) {
+            return index;
+        }
+        int shift = (index >> SUB_BITS) - 1;
+        long sub = SUB_COUNT + (index & (SUB_COUNT - 1));
+        return ((sub + 1) << shift) - 1;
+    }
+
+    /**
+     * Record a value. Must only be called by one thread at a time.
+     *
+     * @param value Latency in nanoseconds
+     */
+    public void record(long value) {
+        int i = index(value);
+        counts.lazySet(i, counts.get(i) + 1);
+        sum += value;
+        if (value > max) {
+            max = value;
+        }
+        count++;
+    }
+
+    /**
+     * Reset all counters
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            counts.set(i, 0);
+        }
+        count = 0;
+        sum = 0;
+        max = 0;
+    }
+
+    /**
+     * Get count of recorded values
+     *
+     * @return Count
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * Get maximum recorded value
+     *
+     * @return Maximum in nanoseconds
+     */
+    public long getMax() {
+        return max;
+    }
+
+    /**
+     * Get mean of recorded values
+     *
+     * @return Mean in nanoseconds
+     */
+    public long getMean() {
+        long n = count;
+        return n == 0 ? 0 : sum / n;
+    }
+
+    /**
+     * Get value at given percentile
+     *
+     * @param percentile Percentile (0..100)
+     * @return Upper bound of the bucket containing the percentile in nanoseconds
+     */
+    public long getPercentile(double percentile) {
+        long total = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            total += counts.get(i);
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(total * percentile / 100.0);
+        if (rank < 1) {
+            rank = 1;
+        }
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += counts.get(i);
+            if (seen >= rank) {
+                return Math.min(upperBound(i), max);
+            }
+        }
+        return max;
+    }
+
+    /**
+     * Get summary of recorded values
+     *
+     * @return Summary string with values in microseconds
+     */
+    @Override
+    public String toString() {
+        return String.format("n=%d mean=%.1f p50=%.1f p90=%.1f p99=%.1f p99.9=%.1f max=%.1f us",
+                getCount(), getMean() / 1000.0, getPercentile(50) / 1000.0, getPercentile(90) / 1000.0,
+                getPercentile(99) / 1000.0, getPercentile(99.9) / 1000.0, getMax() / 1000.0);
+    }
+}
@@ -49,6 +49,12 @@ public class LogMessage {
     /** Timestamp of this log message */
     protected long timestamp;
 
+    /** Index of CAN channel this message belongs to */
+    protected int channel;
+
+    /** Host time (System.nanoTime) of reception or sending, 0 if unknown */
+    protected long nanoTime;
+
     /**
      * Get type of log message
      * 
@@ -84,6 +90,35 @@ public class LogMessage {
     public long getTimestamp() {
         return timestamp;
     }    
+
+    /**
+     * Get index of CAN channel this message belongs to
+     * 
+     * @return Channel index
+     */
+    public int getChannel() {
+        return channel;
+    }
+
+    /**
+     * Get host time of reception or sending, more precise than the timestamp
+     * but only comparable to other nano times of this process
+     * 
+     * @return System.nanoTime() value, 0 if unknown
+     */
+    public long getNanoTime() {
+        return nanoTime;
+    }
+
+    /**
+     * Set host time of reception or sending. Must be set before the message
+     * is handed to the viewer.
+     * 
+     * @param nanoTime System.nanoTime() value
+     */
+    public void setNanoTime(long nanoTime) {
+        this.nanoTime = nanoTime;
+    }
     
     /**
      * Construct log message
@@ -94,9 +129,23 @@ public class LogMessage {
      * @param timestamp Timestamp
      */
     public LogMessage (CANMessage canmsg, String message, MessageType type, long timestamp) {
+        this(canmsg, message, type, timestamp, 0);
+    }
+
+    /**
+     * Construct log message of given channel
+     * 
+     * @param canmsg CAN message to log
+     * @param message Message string
+     * @param type Type of message
+     * @param timestamp Timestamp
+     * @param channel Channel index
+     */
+    public LogMessage (CANMessage canmsg, String message, MessageType type, long timestamp, int channel) {
         this.canmsg = canmsg;
         this.message = message;
         this.type = type;
         this.timestamp = timestamp;
+        this.channel = channel;
     }
 }
@@ -25,23 +25,27 @@
 
 import de.fischl.usbtin.*;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import javax.swing.ImageIcon;
 import javax.swing.event.TableModelEvent;
 import javax.swing.event.TableModelListener;
 import javax.swing.table.TableModel;
 
 /**
- * Table model for log messages
+ * Table model for log messages. A view over a trace store: either all rows
+ * of the store or, with a filter, the rows listed in a filter index. Any
+ * count of views can share one store.
  * 
  * @author Thomas Fischl
  */
-public class LogMessageTableModel implements TableModel {
+public class LogMessageTableModel implements TableModel, TraceStore.Listener {
 
     /** Column titles */
-    protected final String[] titles = new String[]{"Time (ms)", "Type", "Id", "DLC", "Data"};
+    protected final String[] titles = new String[]{"Time (ms)", "Type", "Ch", "Id", "DLC", "Data"};
     
     /** Column classes */
-    protected final Class[] classes = new Class[]{String.class, ImageIcon.class, String.class, String.class, String.class};
+    protected final Class[] classes = new Class[]{String.class, ImageIcon.class, String.class, String.class, String.class, String.class};
     
     /** Type icons */
     protected ImageIcon[] icons;
@@ -49,56 +53,303 @@ public class LogMessageTableModel implements TableModel {
     /** List containing active listeners */
     private final ArrayList<TableModelListener> listeners = new ArrayList<TableModelListener>();
     
-    /** List of log messages to view */
-    private final ArrayList<LogMessage> messages = new ArrayList<LogMessage>();
+    /** Shared store of log messages */
+    private final TraceStore store;
+
+    /** Filter of this view, null if all rows are shown */
+    private final TraceFilter filter;
+
+    /** Store rows shown by a filtered view, ascending */
+    private int[] index;
+
+    /** Count of rows of this view, published or not */
+    private int size = 0;
+
+    /** Count of rows published to the listeners */
+    private int rowCount = 0;
+
+    /** True, if new rows are stored but not published */
+    private boolean hold = false;
 
     /**
-     * Standard constructor
+     * Standard constructor, creates view over a new store
      */
     public LogMessageTableModel() {
+        this(new TraceStore(), null);
+    }
+
+    /**
+     * Create view over given store. A filtered view indexes the rows stored
+     * so far and then the appended rows.
+     * 
+     * @param store Trace store
+     * @param filter Filter, null to show all rows
+     */
+    public LogMessageTableModel(TraceStore store, TraceFilter filter) {
         icons = new ImageIcon[]{
             new ImageIcon(getClass().getResource("/res/icons/info.png")),
             new ImageIcon(getClass().getResource("/res/icons/error.png")),
             new ImageIcon(getClass().getResource("/res/icons/receive.png")),
             new ImageIcon(getClass().getResource("/res/icons/send.png"))
         };
+        this.store = store;
+        this.filter = filter;
+        if (filter != null) {
+            index = new int[1024];
+        }
+        if (store.size() > 0) {
+            rowsAppended(0, store.size() - 1);
+        }
+        rowCount = size;
+        store.addListener(this);
+    }
+
+    /**
+     * Get store of this view
+     * 
+     * @return Trace store
+     */
+    public TraceStore getStore() {
+        return store;
     }
 
     /**
-     * Add given message to message list
+     * Get filter of this view
+     * 
+     * @return Filter, null if all rows are shown
+     */
+    public TraceFilter getFilter() {
+        return filter;
+    }
+
+    /**
+     * Detach this view from its store
+     */
+    public void dispose() {
+        store.removeListener(this);
+    }
+
+    /**
+     * Add given message to the store
      * 
      * @param msg Message list to add
      */
     public void addMessage(LogMessage msg) {
-        int index = messages.size();
-        messages.add(msg);
+        store.addMessage(msg);
+    }
+
+    /**
+     * Add given messages to the store
+     * 
+     * @param msgs Messages to add
+     */
+    public void addMessages(List<LogMessage> msgs) {
+        store.addMessages(msgs);
+    }
+
+    /**
+     * Take rows appended to the store
+     * 
+     * @param first First new store row
+     * @param last Last new store row
+     */
+    @Override
+    public void rowsAppended(int first, int last) {
+        if (filter == null) {
+            size = last + 1;
+        } else {
+            for (int row = first; row <= last; row++) {
+                if (filter.accept(store.get(row))) {
+                    if (size == index.length) {
+                        index = Arrays.copyOf(index, size * 2);
+                    }
+                    index[size++] = row;
+                }
+            }
+        }
+        if (!hold) {
+            publish();
+        }
+    }
 
-        TableModelEvent e = new TableModelEvent(this, index, index, TableModelEvent.ALL_COLUMNS, TableModelEvent.INSERT);
+    /**
+     * Report changed repeat counts of published rows
+     * 
+     * @param first First changed store row
+     * @param last Last changed store row
+     */
+    @Override
+    public void rowsRepeated(int first, int last) {
+        if (filter != null) {
+            first = lowerBound(first);
+            last = lowerBound(last + 1) - 1;
+        }
+        last = Math.min(last, rowCount - 1);
+        if (first > last) {
+            return;
+        }
+        TableModelEvent e = new TableModelEvent(this, first, last, 5, TableModelEvent.UPDATE);
         for (int i = 0, n = listeners.size(); i < n; i++) {
             listeners.get(i).tableChanged(e);
         }
     }
 
-    public LogMessage getMessage(int index) {
-        return messages.get(index);
+    /**
+     * Remove all rows after the store was cleared
+     */
+    @Override
+    public void storeCleared() {
+        size = 0;
+        if (filter != null) {
+            index = new int[1024];
+        }
+
+        if (rowCount == 0) return;
+        int lastRow = rowCount - 1;
+        rowCount = 0;
+
+        TableModelEvent e = new TableModelEvent(this, 0, lastRow, TableModelEvent.ALL_COLUMNS, TableModelEvent.DELETE);
+        for (int i = 0, n = listeners.size(); i < n; i++) {
+            listeners.get(i).tableChanged(e);
+        }
     }
 
     /**
-     * Clear the message list
+     * Find first row of this view showing given store row or a later one
+     * 
+     * @param storeRow Store row
+     * @return Row id of this view
      */
-    public void clear() {
-        
-        if (messages.size() == 0) return;
-        int lastRow = messages.size() - 1;
+    private int lowerBound(int storeRow) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (index[mid] < storeRow) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Get store row of given row
+     * 
+     * @param row Row id
+     * @return Store row
+     */
+    public int getStoreRow(int row) {
+        return filter == null ? row : index[row];
+    }
 
-        messages.clear();
+    /**
+     * Get row showing given store row
+     * 
+     * @param storeRow Store row
+     * @return Row id, -1 if not shown by this view
+     */
+    public int getRow(int storeRow) {
+        if (filter == null) {
+            return storeRow < rowCount ? storeRow : -1;
+        }
+        int row = lowerBound(storeRow);
+        return row < rowCount && index[row] == storeRow ? row : -1;
+    }
 
-        TableModelEvent e = new TableModelEvent(this, 0, lastRow, TableModelEvent.ALL_COLUMNS, TableModelEvent.DELETE);
+    /**
+     * Get indexed timestamp of given row
+     * 
+     * @param row Row id
+     * @return Timestamp in milliseconds
+     */
+    public long getTimestamp(int row) {
+        return store.getTimestamp(getStoreRow(row));
+    }
+
+    /**
+     * Find first published row at or after given time (binary search)
+     * 
+     * @param time Time in milliseconds
+     * @return Row id, last row if time is after the last row, -1 if empty
+     */
+    public int findRow(long time) {
+        int low = 0;
+        int high = rowCount;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (getTimestamp(mid) < time) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return Math.min(low, rowCount - 1);
+    }
+
+    /**
+     * Hold back or release new rows. Held rows are stored but not reported
+     * to the listeners until released.
+     * 
+     * @param hold True, to hold back new rows
+     */
+    public void setHold(boolean hold) {
+        this.hold = hold;
+        if (!hold) {
+            publish();
+        }
+    }
+
+    /**
+     * Get count of stored messages not yet published
+     * 
+     * @return Count of hidden messages
+     */
+    public int getHiddenCount() {
+        return size - rowCount;
+    }
+
+    /**
+     * Report all stored but unpublished rows to the listeners
+     */
+    protected void publish() {
+        if (size == rowCount) return;
+
+        TableModelEvent e = new TableModelEvent(this, rowCount, size - 1, TableModelEvent.ALL_COLUMNS, TableModelEvent.INSERT);
+        rowCount = size;
         for (int i = 0, n = listeners.size(); i < n; i++) {
             listeners.get(i).tableChanged(e);
         }
     }
 
+    /**
+     * Get message of given row
+     * 
+     * @param row Row id
+     * @return Log message
+     */
+    public LogMessage getMessage(int row) {
+        return store.get(getStoreRow(row));
+    }
+
+    /**
+     * Get count of unchanged repeats suppressed after given row
+     * 
+     * @param row Row id
+     * @return Count of repeats
+     */
+    public int getRepeats(int row) {
+        return store.getRepeats(getStoreRow(row));
+    }
+
+    /**
+     * Clear the store and so all views
+     */
+    public void clear() {
+        store.clear();
+    }
+
     /**
      * Get count of rows
      * 
@@ -106,7 +357,7 @@ public class LogMessageTableModel implements TableModel {
      */
     @Override
     public int getRowCount() {
-        return messages.size();
+        return rowCount;
     }
 
     /**
@@ -163,45 +414,53 @@ public class LogMessageTableModel implements TableModel {
     @Override
     public Object getValueAt(int row, int col) {
 
-        CANMessage canmsg = messages.get(row).getCanmsg();
+        LogMessage message = getMessage(row);
+        CANMessage canmsg = message.getCanmsg();
         if (canmsg == null) {
             switch (col) {
                 case 1:
-                    return icons[messages.get(row).getType().ordinal()];
-                case 4:
-                    return messages.get(row).getMessage();
+                    return icons[message.getType().ordinal()];
+                case 5:
+                    return message.getMessage();
             }
             return "";
         } else {
             switch (col) {
                 case 0:
-                    return messages.get(row).getTimestamp();
+                    return message.getTimestamp();
                 case 1:
-                    return icons[messages.get(row).getType().ordinal()];
+                    return icons[message.getType().ordinal()];
 
                 case 2:
+                    return message.getChannel();
+
+                case 3:
                     if (canmsg.isExtended()) {
                         return String.format("%08xh", canmsg.getId());
                     } else {
                         return String.format("%03xh", canmsg.getId());
                     }
 
-                case 3:
-                    return canmsg.getData().length;
-
                 case 4:
+                    return canmsg.getData().length;
 
-                    if (canmsg.isRtr()) {
-                        return "Remote Transmission Request";
-                    }
+                case 5:
 
                     String s = "";
-                    byte[] data = canmsg.getData();
-                    for (int i = 0; i < data.length; i++) {
-                        if (i > 0) {
-                            s = s.concat(" ");
+                    if (canmsg.isRtr()) {
+                        s = "Remote Transmission Request";
+                    } else {
+                        byte[] data = canmsg.getData();
+                        for (int i = 0; i < data.length; i++) {
+                            if (i > 0) {
+                                s = s.concat(" ");
+                            }
+                            s = s.concat(String.format("%02x", data[i]));
                         }
-                        s = s.concat(String.format("%02x", data[i]));
+                    }
+                    int repeats = getRepeats(row);
+                    if (repeats > 0) {
+                        s = s.concat("   x" + repeats + " unchanged");
                     }
 
                     return s;
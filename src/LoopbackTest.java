@@ -0,0 +1,304 @@
+/*
+ * Part of USBtinViewer - Simple GUI for USBtin - USB to CAN interface
+ * http://www.fischl.de/usbtin
+ *
+ * Copyright (C) 2026  Thomas Fischl
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import de.fischl.usbtin.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Self-test of the host to adapter path. The device is opened in loopback
+ * mode, frames are sent with a ramp of rates and payload sizes and the
+ * echoes are matched by a sequence number carried in the extended id.
+ * Per step the round trip latency, the echoed frames per second, the loss
+ * and the depth of the transmit FIFO are reported. The highest echo rate
+ * without loss is the maximum sustained rate of the setup.
+ *
+ * Usage: java -cp ... LoopbackTest port [baudrate [step_ms]]
+ *
+ * @author Thomas Fischl
+ */
+public class LoopbackTest implements CANFrameListener {
+
+    /** Target rates in frames/s, 0 = as fast as possible */
+    protected static final int[] RATES = new int[]{100, 500, 1000, 2000, 4000, 8000, 0};
+
+    /** Payload sizes */
+    protected static final int[] SIZES = new int[]{0, 8};
+
+    /** FIFO depth at which paced frames are skipped */
+    protected static final int FIFO_LIMIT = 256;
+
+    /** Time (ms) waiting for outstanding echoes after each step */
+    protected static final long DRAIN_TIME = 500;
+
+    /** Size of send time ring (power of two) */
+    protected static final int RING_SIZE = 65536;
+
+    /** Serial port */
+    protected final String port;
+
+    /** CAN baudrate */
+    protected final int baudrate;
+
+    /** Duration of one step in ms */
+    protected final long stepTime;
+
+    /** Viewer receiving progress, null to print to stderr */
+    protected final USBtinViewer viewer;
+
+    /** Send times by sequence number */
+    protected final AtomicLongArray sendTimes = new AtomicLongArray(RING_SIZE);
+
+    /** Count of echoes of the current step */
+    protected final AtomicLong echoes = new AtomicLong();
+
+    /** Round trip times of the current step */
+    protected volatile LatencyHistogram latency = new LatencyHistogram();
+
+    /** First sequence number of the current step */
+    protected volatile int stepFirst = 0;
+
+    /** Count of frames sent in the current step */
+    protected volatile int stepSent = 0;
+
+    /**
+     * Create test of given port
+     *
+     * @param port Serial port
+     * @param baudrate CAN baudrate
+     * @param stepTime Duration of one step in ms
+     * @param viewer Viewer receiving progress, null to print to stderr
+     */
+    public LoopbackTest(String port, int baudrate, long stepTime, USBtinViewer viewer) {
+        this.port = port;
+        this.baudrate = baudrate;
+        this.stepTime = stepTime;
+        this.viewer = viewer;
+    }
+
+    /**
+     * Run all steps
+     *
+     * @return Report text
+     * @throws USBtinException Error while opening or sending
+     */
+    public String run() throws USBtinException {
+        FastUSBtin usbtin = new FastUSBtin();
+        usbtin.connect(port);
+        StringBuilder sb = new StringBuilder();
+        try {
+            usbtin.openCANChannel(baudrate, USBtin.OpenMode.LOOPBACK);
+            usbtin.addFrameListener(this);
+            sb.append(String.format("Loopback test %s, %d baud, firmware %s%n", port, baudrate, usbtin.getFirmwareVersion()));
+            sb.append(String.format("%4s %7s %8s %6s %8s %6s %8s %5s %8s %8s %8s %8s%n",
+                    "Size", "Target", "Sent", "Skip", "Echoed", "Loss%", "Rate/s", "FIFO", "p50(us)", "p90(us)", "p99(us)", "Max(us)"));
+            double maxRate = 0;
+            int sequence = 0;
+            for (int size : SIZES) {
+                for (int rate : RATES) {
+                    Step step = runStep(usbtin, sequence, size, rate);
+                    sequence += step.sent;
+                    String line = step.toString();
+                    sb.append(line).append(String.format("%n"));
+                    progress(line);
+                    if (step.sent > 0 && step.echoed == step.sent && step.skipped == 0) {
+                        maxRate = Math.max(maxRate, step.rate);
+                    }
+                }
+            }
+            sb.append(String.format("%nMaximum sustained rate without loss: %.0f frames/s%n", maxRate));
+            usbtin.removeFrameListener(this);
+            usbtin.closeCANChannel();
+        } finally {
+            usbtin.disconnect();
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Result of one step
+     */
+    protected static class Step {
+
+        /** Payload size */
+        int size;
+
+        /** Target rate, 0 = unlimited */
+        int target;
+
+        /** Count of sent frames */
+        int sent;
+
+        /** Count of paced frames skipped because of full FIFO */
+        int skipped;
+
+        /** Count of echoed frames */
+        long echoed;
+
+        /** Echoed frames per second */
+        double rate;
+
+        /** Maximum FIFO depth */
+        int fifo;
+
+        /** Round trip times */
+        LatencyHistogram latency;
+
+        /**
+         * Format step as report line
+         *
+         * @return Report line
+         */
+        @Override
+        public String toString() {
+            return String.format("%4d %7s %8d %6d %8d %6.2f %8.0f %5d %8.1f %8.1f %8.1f %8.1f", size, target == 0 ? "max" : "" + target,
+                    sent, skipped, echoed, sent > 0 ? 100.0 * (sent - echoed) / sent : 0.0, rate, fifo,
+                    latency.getPercentile(50) / 1000.0, latency.getPercentile(90) / 1000.0,
+                    latency.getPercentile(99) / 1000.0, latency.getMax() / 1000.0);
+        }
+    }
+
+    /**
+     * Send frames of given size at given rate for one step duration
+     *
+     * @param usbtin Device opened in loopback mode
+     * @param first First sequence number
+     * @param size Payload size
+     * @param rate Target rate in frames/s, 0 = as fast as possible
+     * @return Step result
+     * @throws USBtinException Error while sending
+     */
+    protected Step runStep(FastUSBtin usbtin, int first, int size, int rate) throws USBtinException {
+        Step step = new Step();
+        step.size = size;
+        step.target = rate;
+        step.latency = new LatencyHistogram();
+        latency = step.latency;
+        echoes.set(0);
+        stepFirst = first;
+        stepSent = 0;
+
+        byte[] data = new byte[size];
+        for (int i = 0; i < size; i++) {
+            data[i] = (byte) (0x55 + i);
+        }
+        long period = rate > 0 ? 1000000000L / rate : 0;
+        long start = System.nanoTime();
+        long end = start + stepTime * 1000000L;
+        long deadline = start;
+        int sequence = first;
+        while (true) {
+            long now = System.nanoTime();
+            if (now >= end) {
+                break;
+            }
+            if (period > 0 && now < deadline) {
+                LockSupport.parkNanos(deadline - now);
+                continue;
+            }
+            int depth = usbtin.getTXFifoSize();
+            step.fifo = Math.max(step.fifo, depth);
+            if (depth >= FIFO_LIMIT) {
+                if (period > 0) {
+                    step.skipped++;
+                    deadline += period;
+                } else {
+                    LockSupport.parkNanos(100000);
+                }
+                continue;
+            }
+            sendTimes.set(sequence & (RING_SIZE - 1), System.nanoTime());
+            stepSent++;
+            CANMessage canmsg = new CANMessage(sequence & 0x1fffffff, data, true, false);
+            synchronized (usbtin) {
+                usbtin.send(canmsg);
+            }
+            sequence++;
+            deadline += period;
+        }
+        step.sent = sequence - first;
+        long sendEnd = System.nanoTime();
+
+        // wait for outstanding echoes
+        long drainEnd = sendEnd + DRAIN_TIME * 1000000L;
+        while (echoes.get() < step.sent && System.nanoTime() < drainEnd) {
+            LockSupport.parkNanos(1000000);
+        }
+        step.echoed = echoes.get();
+        step.rate = step.echoed * 1e9 / Math.max(1, sendEnd - start);
+        return step;
+    }
+
+    /**
+     * Match echoed frame (called on the receive thread)
+     *
+     * @param frame CAN frame
+     */
+    @Override
+    public void receiveCANFrame(CANFrame frame) {
+        long now = System.nanoTime();
+        if (!frame.extended) {
+            return;
+        }
+        int offset = (frame.id - stepFirst) & 0x1fffffff;
+        if (offset >= stepSent) {
+            return;
+        }
+        latency.record(now - sendTimes.get(frame.id & (RING_SIZE - 1)));
+        echoes.incrementAndGet();
+    }
+
+    /**
+     * Report progress line
+     *
+     * @param line Progress text
+     */
+    protected void progress(String line) {
+        if (viewer != null) {
+            viewer.log("Loopback test: " + line, LogMessage.MessageType.INFO);
+        } else {
+            System.err.println(line);
+        }
+    }
+
+    /**
+     * Command line entry point
+     *
+     * @param args Serial port, optional baudrate and step duration in ms
+     */
+    public static void main(String[] args) {
+        if (args.length < 1 || args.length > 3) {
+            System.err.println("Usage: LoopbackTest <port> [baudrate [step_ms]]");
+            System.exit(1);
+        }
+        try {
+            int baudrate = args.length > 1 ? Integer.parseInt(args[1]) : 1000000;
+            long stepTime = args.length > 2 ? Long.parseLong(args[2]) : 2000;
+            System.out.print(new LoopbackTest(args[0], baudrate, stepTime, null).run());
+        } catch (USBtinException e) {
+            System.err.println(e.getMessage());
+            System.exit(1);
+        } catch (NumberFormatException e) {
+            System.err.println("Invalid number: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,431 @@
+/*
+ * Part of USBtinViewer - Simple GUI for USBtin - USB to CAN interface
+ * http://www.fischl.de/usbtin
+ *
+ * Copyright (C) 2026  Thomas Fischl
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import javax.swing.Timer;
+import javax.swing.event.ChangeEvent;
+import javax.swing.event.ChangeListener;
+
+/**
+ * Hands log messages over from the receive threads to the Swing event thread.
+ *
+ * Messages are queued by any thread and flushed in batches by a Swing timer.
+ * Each channel has its own lock-free queue, so receive threads of different
+ * devices never contend. On flush the channel queues are merged by timestamp
+ * into one trace. Every message is stored in the trace model and counted in
+ * the monitor model of its channel. In statistics only mode CAN messages are
+ * not retained in the trace, only counted and handed to the sinks. Only the
+ * publishing of new trace rows to the table is degraded when the event
+ * thread falls behind: the publish rate is halved per overload level and the
+ * display is paused at the highest level until load drops.
+ *
+ * @author Thomas Fischl
+ */
+public class MessageDispatcher implements ActionListener {
+
+    /** Refresh interval of the display in milliseconds */
+    protected static final int REFRESH_INTERVAL = 50;
+
+    /** UI lag (ms) above which the display is degraded by one level */
+    protected static final long LAG_HIGH = 150;
+
+    /** UI lag (ms) below which the display may recover by one level */
+    protected static final long LAG_LOW = 30;
+
+    /** Count of consecutive calm ticks needed to recover one level */
+    protected static final int RECOVER_TICKS = 10;
+
+    /** Highest overload level, the trace display is paused at this level */
+    protected static final int MAX_LEVEL = 5;
+
+    /** Messages younger than this (ms) are held back for merging */
+    protected static final long MERGE_DELAY = 50;
+
+    /** Per channel queues of messages waiting for the event thread */
+    private final CopyOnWriteArrayList<ConcurrentLinkedQueue<LogMessage>> queues = new CopyOnWriteArrayList<ConcurrentLinkedQueue<LogMessage>>();
+
+    /** Per channel messages taken from the queues but not merged yet */
+    private final ArrayList<ArrayDeque<LogMessage>> pending = new ArrayList<ArrayDeque<LogMessage>>();
+
+    /** Per channel monitor models, null entries use the main monitor model */
+    private final ArrayList<MonitorMessageTableModel> monitorModels = new ArrayList<MonitorMessageTableModel>();
+
+    /** Sinks receiving the merged message stream */
+    private final CopyOnWriteArrayList<MessageSink> sinks = new CopyOnWriteArrayList<MessageSink>();
+
+    /** Listeners notified after new trace rows were published */
+    private final ArrayList<ChangeListener> listeners = new ArrayList<ChangeListener>();
+
+    /** Trace model receiving all messages */
+    protected LogMessageTableModel traceModel;
+
+    /** Further views on the trace store, published like the trace model */
+    private final ArrayList<LogMessageTableModel> views = new ArrayList<LogMessageTableModel>();
+
+    /** Main monitor model */
+    protected MonitorMessageTableModel monitorModel;
+
+    /** Timer driving the flushes */
+    protected Timer timer;
+
+    /** Smoothed UI lag in milliseconds */
+    protected long lag = 0;
+
+    /** Current overload level, 0 is normal operation */
+    protected int level = 0;
+
+    /** Count of calm ticks since the last level change */
+    protected int calmTicks = 0;
+
+    /** True, if CAN messages are stored in the trace model */
+    protected boolean retainTrace = true;
+
+    /** Count of ticks since start */
+    protected long ticks = 0;
+
+    /** Time of last tick in nanoseconds */
+    protected long lastTick = 0;
+
+    /**
+     * Construct dispatcher
+     *
+     * @param traceModel Trace model
+     * @param monitorModel Monitor model
+     */
+    public MessageDispatcher(LogMessageTableModel traceModel, MonitorMessageTableModel monitorModel) {
+        this.traceModel = traceModel;
+        this.monitorModel = monitorModel;
+        timer = new Timer(REFRESH_INTERVAL, this);
+        timer.setCoalesce(true);
+        setChannelCount(1);
+    }
+
+    /**
+     * Make sure queues for the given count of channels exist
+     *
+     * @param count Count of channels
+     */
+    public void setChannelCount(int count) {
+        while (queues.size() < count) {
+            queues.add(new ConcurrentLinkedQueue<LogMessage>());
+            pending.add(new ArrayDeque<LogMessage>());
+            monitorModels.add(null);
+        }
+    }
+
+    /**
+     * Set monitor model of given channel
+     *
+     * @param channel Channel index
+     * @param model Monitor model, null to use the main monitor model
+     */
+    public void setMonitorModel(int channel, MonitorMessageTableModel model) {
+        setChannelCount(channel + 1);
+        monitorModels.set(channel, model);
+    }
+
+    /**
+     * Start periodic flushing
+     */
+    public void start() {
+        lastTick = System.nanoTime();
+        timer.start();
+    }
+
+    /**
+     * Stop periodic flushing
+     */
+    public void stop() {
+        timer.stop();
+    }
+
+    /**
+     * Queue given message to the queue of its channel. May be called from
+     * any thread.
+     *
+     * @param message Message to queue
+     */
+    public void post(LogMessage message) {
+        queues.get(message.getChannel()).add(message);
+    }
+
+    /**
+     * Drop all queued messages and return to normal operation
+     */
+    public void clear() {
+        for (int i = 0; i < queues.size(); i++) {
+            queues.get(i).clear();
+            pending.get(i).clear();
+        }
+        level = 0;
+        calmTicks = 0;
+        lag = 0;
+    }
+
+    /**
+     * Get smoothed UI lag
+     *
+     * @return Lag in milliseconds
+     */
+    public long getLag() {
+        return lag;
+    }
+
+    /**
+     * Get current overload level
+     *
+     * @return Level, 0 is normal operation
+     */
+    public int getLevel() {
+        return level;
+    }
+
+    /**
+     * Check if the trace display is paused
+     *
+     * @return True, if new trace rows are hidden until load drops
+     */
+    public boolean isPaused() {
+        return level >= MAX_LEVEL;
+    }
+
+    /**
+     * Enable or disable storing of CAN messages in the trace. Info and error
+     * messages are always stored.
+     *
+     * @param retainTrace False, for statistics only mode
+     */
+    public void setRetainTrace(boolean retainTrace) {
+        this.retainTrace = retainTrace;
+    }
+
+    /**
+     * Check if CAN messages are stored in the trace
+     *
+     * @return False, in statistics only mode
+     */
+    public boolean isRetainTrace() {
+        return retainTrace;
+    }
+
+    /**
+     * Add sink receiving the merged message stream
+     *
+     * @param sink Sink to add
+     */
+    public void addSink(MessageSink sink) {
+        sinks.add(sink);
+    }
+
+    /**
+     * Remove sink
+     *
+     * @param sink Sink to remove
+     */
+    public void removeSink(MessageSink sink) {
+        sinks.remove(sink);
+    }
+
+    /**
+     * Add listener notified after new trace rows were published
+     *
+     * @param listener Listener to add
+     */
+    public void addChangeListener(ChangeListener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Remove listener
+     *
+     * @param listener Listener to remove
+     */
+    public void removeChangeListener(ChangeListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Hold back or release new rows of the trace model and all views
+     *
+     * @param hold True, to hold back new rows
+     */
+    protected void setHold(boolean hold) {
+        traceModel.setHold(hold);
+        for (int i = 0, n = views.size(); i < n; i++) {
+            views.get(i).setHold(hold);
+        }
+    }
+
+    /**
+     * Add view on the trace store. Its new rows are then published with the
+     * trace model, so the overload degradation applies to it as well.
+     *
+     * @param view View to add
+     */
+    public void addView(LogMessageTableModel view) {
+        view.setHold(true);
+        views.add(view);
+    }
+
+    /**
+     * Remove view on the trace store
+     *
+     * @param view View to remove
+     */
+    public void removeView(LogMessageTableModel view) {
+        views.remove(view);
+    }
+
+    /**
+     * Flush queued messages (called by timer on event thread)
+     *
+     * @param ae Action event
+     */
+    @Override
+    public void actionPerformed(ActionEvent ae) {
+        long start = System.nanoTime();
+
+        // lateness of this tick shows how busy the event thread is
+        long late = (start - lastTick) / 1000000 - REFRESH_INTERVAL;
+        lastTick = start;
+        ticks++;
+
+        setHold(true);
+        flush();
+
+        // processing time of this tick adds to the lag
+        long busy = (System.nanoTime() - start) / 1000000;
+        lag = (lag * 3 + Math.max(0, late) + busy) / 4;
+        updateLevel();
+
+        // publish every 2^level ticks, hold back rows while paused
+        if (level < MAX_LEVEL && (ticks & ((1 << level) - 1)) == 0) {
+            setHold(false);
+        }
+
+        ChangeEvent e = new ChangeEvent(this);
+        for (int i = 0, n = listeners.size(); i < n; i++) {
+            listeners.get(i).stateChanged(e);
+        }
+    }
+
+    /**
+     * Move queued messages to the models. The channel queues are merged by
+     * timestamp (k-way merge). While new messages arrive, the youngest ones
+     * are held back for the next flush, so late messages of other channels
+     * can still be sorted in front of them.
+     */
+    protected void flush() {
+        int channels = queues.size();
+        long newest = Long.MIN_VALUE;
+        boolean received = false;
+
+        // take over queued messages, each channel is ordered by time
+        for (int i = 0; i < channels; i++) {
+            ConcurrentLinkedQueue<LogMessage> queue = queues.get(i);
+            ArrayDeque<LogMessage> deque = pending.get(i);
+            LogMessage message;
+            while ((message = queue.poll()) != null) {
+                deque.add(message);
+                received = true;
+            }
+            if (!deque.isEmpty()) {
+                newest = Math.max(newest, deque.peekLast().getTimestamp());
+            }
+        }
+        long limit = received ? newest - MERGE_DELAY : Long.MAX_VALUE;
+
+        PriorityQueue<ArrayDeque<LogMessage>> heads = new PriorityQueue<ArrayDeque<LogMessage>>(Math.max(1, channels), new Comparator<ArrayDeque<LogMessage>>() {
+            @Override
+            public int compare(ArrayDeque<LogMessage> a, ArrayDeque<LogMessage> b) {
+                long ta = a.peekFirst().getTimestamp();
+                long tb = b.peekFirst().getTimestamp();
+                return ta < tb ? -1 : (ta == tb ? 0 : 1);
+            }
+        });
+        for (int i = 0; i < channels; i++) {
+            if (!pending.get(i).isEmpty()) {
+                heads.add(pending.get(i));
+            }
+        }
+
+        ArrayList<LogMessage> batch = new ArrayList<LogMessage>();
+        while (!heads.isEmpty()) {
+            ArrayDeque<LogMessage> deque = heads.poll();
+            if (deque.peekFirst().getTimestamp() > limit) {
+                continue;
+            }
+            LogMessage message = deque.pollFirst();
+            if ((message.getType() == LogMessage.MessageType.IN)
+                    || (message.getType() == LogMessage.MessageType.OUT)) {
+                MonitorMessageTableModel model = monitorModels.get(message.getChannel());
+                (model != null ? model : monitorModel).add(message);
+                if (retainTrace) {
+                    batch.add(message);
+                }
+            } else {
+                batch.add(message);
+            }
+            for (MessageSink sink : sinks) {
+                sink.receive(message);
+            }
+            if (!deque.isEmpty()) {
+                heads.add(deque);
+            }
+        }
+        traceModel.addMessages(batch);
+        monitorModel.publish();
+        for (MonitorMessageTableModel model : monitorModels) {
+            if (model != null) {
+                model.publish();
+            }
+        }
+        for (MessageSink sink : sinks) {
+            sink.tick();
+        }
+    }
+
+    /**
+     * Adapt overload level to measured lag
+     */
+    protected void updateLevel() {
+        if (lag > LAG_HIGH) {
+            if (level < MAX_LEVEL) {
+                level++;
+            }
+            calmTicks = 0;
+        } else if (lag < LAG_LOW && level > 0) {
+            calmTicks++;
+            if (calmTicks >= RECOVER_TICKS) {
+                level--;
+                calmTicks = 0;
+            }
+        } else {
+            calmTicks = 0;
+        }
+    }
+}
@@ -0,0 +1,41 @@
+/*
+ * Part of USBtinViewer - Simple GUI for USBtin - USB to CAN interface
+ * http://www.fischl.de/usbtin
+ *
+ * Copyright (C) 2026  Thomas Fischl
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * Consumer of the merged, time ordered message stream of the dispatcher.
+ * Called on the Swing event thread, so implementations must be quick and
+ * hand any blocking work to their own thread.
+ *
+ * @author Thomas Fischl
+ */
+public interface MessageSink {
+
+    /**
+     * Receive next message of the merged stream
+     *
+     * @param message Log message
+     */
+    public void receive(LogMessage message);
+
+    /**
+     * Called once per dispatcher flush after all messages were delivered
+     */
+    public void tick();
+}
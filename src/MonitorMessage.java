@@ -21,47 +21,90 @@
 import de.fischl.usbtin.*;
 
 /**
- * Represents a log message
+ * Aggregate of all messages with the same id, extended flag and direction.
+ * Only primitives are kept (last payload packed into a long, running period
+ * statistics), so memory does not depend on the count of received messages.
  * 
  * @author Thomas Fischl
  */
 public class MonitorMessage {
 
-   
-    /** Last corresponding log message */
-    protected LogMessage lastLogMessage;
+    /** Key of this message in the monitor (id, extended and direction) */
+    protected final int key;
+
+    /** CAN id of last message */
+    protected int id;
+
+    /** True, if extended id */
+    protected final boolean extended;
+
+    /** Type of messages (IN or OUT) */
+    protected final LogMessage.MessageType type;
+
+    /** True, if last message was a remote transmission request */
+    protected boolean rtr;
+
+    /** Data length of last message */
+    protected int dlc;
+
+    /** Packed payload of last message */
+    protected long data;
+
+    /** Timestamp of last message */
+    protected long timestamp;
        
-    /** Timestamp of this log message */
+    /** Period between last two messages (in milliseconds) */
     protected long period;
     
     /** Count of messages */
     protected long count;        
-     
-    /**
-     * Get last corresponding log message
-     * 
-     * @return Log message
-     */
-    public LogMessage getLastLogMessage() {
-        return lastLogMessage;
-    }
-    
+
+    /** Statistics of all periods */
+    protected final PeriodStatistics periods = new PeriodStatistics();
+
+    /** Current row of this message in the sorted monitor */
+    protected int row;
+
+    /** Frame rate history */
+    protected final RateHistory history = new RateHistory();
+
     /**
-     * Set last log message
+     * Construct monitor message
      * 
-     * @param msg Log message to set
+     * @param msg First log message
+     * @param key Key in the monitor
      */
-    public void setLastLogMessage(LogMessage msg) {
-        lastLogMessage = msg;
+    public MonitorMessage(LogMessage msg, int key) {
+        CANMessage canmsg = msg.getCanmsg();
+        this.key = key;
+        this.id = canmsg.getId();
+        this.extended = canmsg.isExtended();
+        this.type = msg.getType();
+        this.count = 0;
+        this.period = 0;
+        update(msg);
+        this.period = 0;
     }
-    
+
     /**
-     * Set period (in milliseconds)
+     * Take over given message: count it, measure period, store payload
      * 
-     * @param period Period
+     * @param msg Log message with same key
      */
-    public void setPeriod(long period) {
-        this.period = period;
+    public final void update(LogMessage msg) {
+        CANMessage canmsg = msg.getCanmsg();
+        byte[] bytes = canmsg.getData();
+        period = msg.getTimestamp() - timestamp;
+        if (count > 0) {
+            periods.add(period);
+        }
+        timestamp = msg.getTimestamp();
+        id = canmsg.getId();
+        rtr = canmsg.isRtr();
+        dlc = bytes.length;
+        data = CANFrame.pack(bytes);
+        count++;
+        history.add(timestamp);
     }
     
     /**
@@ -74,12 +117,14 @@ public class MonitorMessage {
     }
     
     /**
-     * Increase counter
+     * Get statistics of all periods (min, max, mean, jitter)
+     * 
+     * @return Period statistics
      */
-    public void increaseCount() {
-        count++;
+    public PeriodStatistics getPeriods() {
+        return periods;
     }
-    
+
     /**
      * Get count of messages
      * 
@@ -88,15 +133,85 @@ public class MonitorMessage {
     public long getCount() {
         return count;
     }
-    
+
     /**
-     * Construct monitor message
+     * Get key of this message in the monitor
      * 
-     * @param msg Last log message
+     * @return Key
      */
-    public MonitorMessage(LogMessage msg) {
-        this.lastLogMessage = msg;
-        this.count = 1;
-        this.period = 0;
+    public int getKey() {
+        return key;
+    }
+
+    /**
+     * Get CAN id of last message
+     * 
+     * @return CAN id
+     */
+    public int getId() {
+        return id;
+    }
+
+    /**
+     * Check for extended id
+     * 
+     * @return True, if extended id
+     */
+    public boolean isExtended() {
+        return extended;
+    }
+
+    /**
+     * Get type of messages
+     * 
+     * @return IN or OUT
+     */
+    public LogMessage.MessageType getType() {
+        return type;
+    }
+
+    /**
+     * Check if last message was a remote transmission request
+     * 
+     * @return True, if rtr
+     */
+    public boolean isRtr() {
+        return rtr;
+    }
+
+    /**
+     * Get data length of last message
+     * 
+     * @return Data length
+     */
+    public int getDlc() {
+        return dlc;
+    }
+
+    /**
+     * Get payload of last message
+     * 
+     * @return Packed payload
+     */
+    public long getData() {
+        return data;
+    }
+
+    /**
+     * Get frame rate history
+     * 
+     * @return Rate history
+     */
+    public RateHistory getHistory() {
+        return history;
+    }
+
+    /**
+     * Get timestamp of last message
+     * 
+     * @return Timestamp in milliseconds
+     */
+    public long getTimestamp() {
+        return timestamp;
     }
 }
@@ -20,7 +20,9 @@
 
 import de.fischl.usbtin.*;
 import java.util.ArrayList;
-import java.util.TreeMap;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
 import javax.swing.ImageIcon;
 import javax.swing.event.TableModelEvent;
 import javax.swing.event.TableModelListener;
@@ -34,10 +36,31 @@ import javax.swing.table.TableModel;
 public class MonitorMessageTableModel implements TableModel {
 
     /** Column titles */
-    protected final String[] titles = new String[]{"Period", "Count", "Type", "Id", "DLC", "Data"};
+    protected final String[] titles = new String[]{"Period", "Count", "Type", "Id", "DLC", "Data", "Last (ms)", "Rate", "Min", "Mean", "Max", "Jitter"};
     
     /** Column classes */
-    protected final Class[] classes = new Class[]{String.class, String.class, ImageIcon.class, String.class, String.class, String.class};
+    protected final Class[] classes = new Class[]{String.class, String.class, ImageIcon.class, String.class, String.class, String.class, String.class, RateHistory.class, String.class, String.class, String.class, String.class};
+
+    /** Sortable column: period */
+    public static final int SORT_PERIOD = 0;
+
+    /** Sortable column: count */
+    public static final int SORT_COUNT = 1;
+
+    /** Sortable column: id */
+    public static final int SORT_ID = 3;
+
+    /** Sortable column: last seen */
+    public static final int SORT_LAST = 6;
+
+    /** Column of rate history */
+    public static final int RATE_COLUMN = 7;
+
+    /** Clean rows between two dirty runs up to which the runs are merged */
+    private static final int MERGE_GAP = 4;
+
+    /** Maximum count of update events per publish, more runs are reported as one range */
+    private static final int MAX_EVENTS = 32;
     
     /** Type icons */
     protected ImageIcon[] icons;
@@ -45,8 +68,69 @@ public class MonitorMessageTableModel implements TableModel {
     /** List containing active listeners */
     private final ArrayList<TableModelListener> listeners = new ArrayList<TableModelListener>();
     
-    /** List of log messages to view */
-    private final TreeMap<Integer, MonitorMessage> messages = new TreeMap<Integer, MonitorMessage>();
+    /** Monitor messages by key, open addressing hash table (null = free slot) */
+    private MonitorMessage[] table = new MonitorMessage[256];
+
+    /** Monitor messages in sort order */
+    private final ArrayList<MonitorMessage> rows = new ArrayList<MonitorMessage>();
+
+    /** Column the rows are sorted by */
+    private int sortColumn = SORT_ID;
+
+    /** True, if sorted descending */
+    private boolean descending = false;
+
+    /** Resolution of shown rate history */
+    private int rateLevel = 0;
+
+    /** Current time of shown rate history */
+    private long time = 0;
+
+    /** True, if extended ids are aggregated by J1939 PGN and source address */
+    private boolean j1939 = false;
+
+    /** Rows changed since last publish, one bit per row */
+    private long[] dirty = new long[4];
+
+    /** True, if any row is marked in dirty */
+    private boolean anyDirty = false;
+
+    /** Start rows of the dirty runs of a publish */
+    private int[] runFirst = new int[MAX_EVENTS + 1];
+
+    /** End rows of the dirty runs of a publish */
+    private int[] runLast = new int[MAX_EVENTS + 1];
+
+    /** Order of rows, ties are ordered by key */
+    private final Comparator<MonitorMessage> order = new Comparator<MonitorMessage>() {
+        @Override
+        public int compare(MonitorMessage a, MonitorMessage b) {
+            long va;
+            long vb;
+            switch (sortColumn) {
+                case SORT_PERIOD:
+                    va = a.getPeriod();
+                    vb = b.getPeriod();
+                    break;
+                case SORT_COUNT:
+                    va = a.getCount();
+                    vb = b.getCount();
+                    break;
+                case SORT_LAST:
+                    va = a.getTimestamp();
+                    vb = b.getTimestamp();
+                    break;
+                default:
+                    va = 0;
+                    vb = 0;
+            }
+            int c = va < vb ? -1 : (va == vb ? 0 : 1);
+            if (c == 0) {
+                c = a.getKey() < b.getKey() ? -1 : (a.getKey() == b.getKey() ? 0 : 1);
+            }
+            return descending ? -c : c;
+        }
+    };
 
     /**
      * Standard constructor
@@ -61,55 +145,343 @@ public class MonitorMessageTableModel implements TableModel {
     }
 
     /**
-     * Add given message to message map
+     * Add given message to message map. Only the changed entry is moved to
+     * its new sort position; updates are reported with the next publish.
      * 
      * @param logmessage Message to add
      */
     public void add(LogMessage logmessage) {
         
-        TableModelEvent tableEvent;
-        
-        // prepare key for this message
-        int key = logmessage.getCanmsg().getId() << 2;                        
+        // prepare key for this message, J1939 ignores priority and destination
+        int id = logmessage.getCanmsg().getId();
+        int key = id << 2;
         if (logmessage.getCanmsg().isExtended()) {
+            if (j1939) {
+                key = ((J1939.getPgn(id) << 8) | J1939.getSourceAddress(id)) << 2;
+            }
             key |= 1;
         }
         if (logmessage.getType() == LogMessage.MessageType.OUT) {
             key |= 2;
         }
                 
-        // check if message already in tree, add/update it and generate event
-        if (messages.containsKey(key)) {
-            MonitorMessage message = (MonitorMessage) messages.get(key);            
-            message.increaseCount();
-            message.setPeriod(logmessage.getTimestamp() - message.getLastLogMessage().getTimestamp());
-            message.setLastLogMessage(logmessage);
-            
-            int index = messages.headMap(key).size();
-            tableEvent = new TableModelEvent(this, index, index, TableModelEvent.ALL_COLUMNS, TableModelEvent.UPDATE);
+        // check if message already in map, update it and move it to its new position
+        MonitorMessage message = get(key);
+        if (message != null) {
+            message.update(logmessage);
+            int from = message.row;
+            int to = reposition(message);
+            markDirty(Math.min(from, to), Math.max(from, to));
             
         } else {
-            messages.put(key, new MonitorMessage(logmessage));
-            
-            int index = messages.headMap(key).size();
-            tableEvent = new TableModelEvent(this, index, index, TableModelEvent.ALL_COLUMNS, TableModelEvent.INSERT);            
+            message = new MonitorMessage(logmessage, key);
+            put(message);
+            int index = insertionPoint(message);
+            rows.add(index, message);
+            for (int i = index; i < rows.size(); i++) {
+                rows.get(i).row = i;
+            }
+            if (anyDirty) {
+                markDirty(index, rows.size() - 1);
+            }
+
+            TableModelEvent tableEvent = new TableModelEvent(this, index, index, TableModelEvent.ALL_COLUMNS, TableModelEvent.INSERT);
+            for (int i = 0, n = listeners.size(); i < n; i++) {
+                listeners.get(i).tableChanged(tableEvent);
+            }
         }
-                
-        // report event to listeners
+    }
+
+    /**
+     * Look up message of given key
+     * 
+     * @param key Key
+     * @return Message, null if not found
+     */
+    private MonitorMessage get(int key) {
+        int mask = table.length - 1;
+        for (int i = slot(key, mask); table[i] != null; i = (i + 1) & mask) {
+            if (table[i].getKey() == key) {
+                return table[i];
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Get home slot of given key
+     * 
+     * @param key Key
+     * @param mask Table size - 1
+     * @return Slot index
+     */
+    private static int slot(int key, int mask) {
+        int h = key * 0x9e3779b9;
+        return (h ^ (h >>> 16)) & mask;
+    }
+
+    /**
+     * Store new message in hash table, grow it at half load
+     * 
+     * @param message Message with key not yet stored
+     */
+    private void put(MonitorMessage message) {
+        if ((rows.size() + 1) * 2 > table.length) {
+            MonitorMessage[] old = table;
+            table = new MonitorMessage[old.length * 2];
+            for (MonitorMessage m : old) {
+                if (m != null) {
+                    insert(m);
+                }
+            }
+        }
+        insert(message);
+    }
+
+    /**
+     * Insert message into free slot of hash table
+     * 
+     * @param message Message
+     */
+    private void insert(MonitorMessage message) {
+        int mask = table.length - 1;
+        int i = slot(message.getKey(), mask);
+        while (table[i] != null) {
+            i = (i + 1) & mask;
+        }
+        table[i] = message;
+    }
+
+    /**
+     * Find sort position of a new message by binary search
+     * 
+     * @param message Message not yet in rows
+     * @return Row index
+     */
+    private int insertionPoint(MonitorMessage message) {
+        int low = 0;
+        int high = rows.size();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (order.compare(rows.get(mid), message) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Move changed message to its sort position. The other rows keep their
+     * order, so only the rows between old and new position are shifted.
+     * 
+     * @param message Changed message
+     * @return New row index
+     */
+    private int reposition(MonitorMessage message) {
+        int index = message.row;
+        while (index > 0 && order.compare(rows.get(index - 1), message) > 0) {
+            MonitorMessage other = rows.get(index - 1);
+            rows.set(index, other);
+            other.row = index;
+            index--;
+        }
+        while (index < rows.size() - 1 && order.compare(rows.get(index + 1), message) < 0) {
+            MonitorMessage other = rows.get(index + 1);
+            rows.set(index, other);
+            other.row = index;
+            index++;
+        }
+        rows.set(index, message);
+        message.row = index;
+        return index;
+    }
+
+    /**
+     * Mark range of rows as changed
+     * 
+     * @param first First changed row
+     * @param last Last changed row
+     */
+    private void markDirty(int first, int last) {
+        int lastWord = last >>> 6;
+        if (lastWord >= dirty.length) {
+            dirty = Arrays.copyOf(dirty, Math.max(dirty.length * 2, lastWord + 1));
+        }
+        for (int word = first >>> 6; word <= lastWord; word++) {
+            long bits = -1L;
+            if (word == first >>> 6) {
+                bits &= -1L << (first & 63);
+            }
+            if (word == lastWord) {
+                bits &= -1L >>> (63 - (last & 63));
+            }
+            dirty[word] |= bits;
+        }
+        anyDirty = true;
+    }
+
+    /**
+     * Forget all changed rows
+     */
+    private void clearDirty() {
+        Arrays.fill(dirty, 0);
+        anyDirty = false;
+    }
+
+    /**
+     * Report rows changed since the last publish. Called at the display
+     * refresh rate by the dispatcher; each row is reported once however
+     * often it changed. Runs of changed rows become one update event each,
+     * runs separated by a few clean rows are merged and too many runs are
+     * reported as one range.
+     */
+    public void publish() {
+        if (!anyDirty) return;
+
+        int runs = 0;
+        for (int word = 0; word < dirty.length; word++) {
+            long bits = dirty[word];
+            while (bits != 0) {
+                int row = (word << 6) + Long.numberOfTrailingZeros(bits);
+                bits &= bits - 1;
+                if (runs > 0 && row - runLast[runs - 1] <= MERGE_GAP + 1) {
+                    runLast[runs - 1] = row;
+                } else if (runs <= MAX_EVENTS) {
+                    runFirst[runs] = row;
+                    runLast[runs] = row;
+                    runs++;
+                } else {
+                    runLast[runs - 1] = row;
+                }
+            }
+        }
+        clearDirty();
+        if (runs > MAX_EVENTS) {
+            runLast[0] = runLast[runs - 1];
+            runs = 1;
+        }
+
+        for (int r = 0; r < runs; r++) {
+            TableModelEvent e = new TableModelEvent(this, runFirst[r], runLast[r], TableModelEvent.ALL_COLUMNS, TableModelEvent.UPDATE);
+            for (int i = 0, n = listeners.size(); i < n; i++) {
+                listeners.get(i).tableChanged(e);
+            }
+        }
+    }
+
+    /**
+     * Sort rows by given column. Selecting the current column again toggles
+     * the direction.
+     * 
+     * @param column One of SORT_PERIOD, SORT_COUNT, SORT_ID, SORT_LAST
+     */
+    public void sortBy(int column) {
+        if (column == sortColumn) {
+            descending = !descending;
+        } else {
+            sortColumn = column;
+            // chattiest, slowest and latest first
+            descending = column != SORT_ID;
+        }
+        Collections.sort(rows, order);
+        for (int i = 0; i < rows.size(); i++) {
+            rows.get(i).row = i;
+        }
+        clearDirty();
+
+        TableModelEvent e = new TableModelEvent(this);
         for (int i = 0, n = listeners.size(); i < n; i++) {
-            listeners.get(i).tableChanged(tableEvent);
+            listeners.get(i).tableChanged(e);
         }
     }
+
+    /**
+     * Get column the rows are sorted by
+     * 
+     * @return Sort column
+     */
+    public int getSortColumn() {
+        return sortColumn;
+    }
+
+    /**
+     * Check sort direction
+     * 
+     * @return True, if sorted descending
+     */
+    public boolean isDescending() {
+        return descending;
+    }
     
+    /**
+     * Switch J1939 mode, which aggregates extended ids by PGN and source
+     * address. The monitor is cleared on change.
+     * 
+     * @param j1939 True, for J1939 mode
+     */
+    public void setJ1939(boolean j1939) {
+        if (j1939 != this.j1939) {
+            clear();
+            this.j1939 = j1939;
+        }
+    }
+
+    /**
+     * Check for J1939 mode
+     * 
+     * @return True, if extended ids are aggregated by PGN and source address
+     */
+    public boolean isJ1939() {
+        return j1939;
+    }
+
+    /**
+     * Show next resolution of the rate history
+     */
+    public void nextRateLevel() {
+        rateLevel = (rateLevel + 1) % RateHistory.WIDTHS.length;
+    }
+
+    /**
+     * Get shown resolution of the rate history
+     * 
+     * @return Index into RateHistory.WIDTHS
+     */
+    public int getRateLevel() {
+        return rateLevel;
+    }
+
+    /**
+     * Set current time of shown rate history
+     * 
+     * @param time Time in ms
+     */
+    public void setTime(long time) {
+        this.time = time;
+    }
+
+    /**
+     * Get current time of shown rate history
+     * 
+     * @return Time in ms
+     */
+    public long getTime() {
+        return time;
+    }
+
     /**
      * Clear the message list
      */
     public void clear() {
         
-        if (messages.size() == 0) return;        
-        int lastRow = messages.size() - 1;
+        if (rows.size() == 0) return;        
+        int lastRow = rows.size() - 1;
 
-        messages.clear();
+        table = new MonitorMessage[256];
+        rows.clear();
+        clearDirty();
 
         TableModelEvent e = new TableModelEvent(this, 0, lastRow, TableModelEvent.ALL_COLUMNS, TableModelEvent.DELETE);
         for (int i = 0, n = listeners.size(); i < n; i++) {
@@ -124,7 +496,7 @@ public class MonitorMessageTableModel implements TableModel {
      */
     @Override
     public int getRowCount() {
-        return messages.size();
+        return rows.size();
     }
 
     /**
@@ -145,6 +517,12 @@ public class MonitorMessageTableModel implements TableModel {
      */
     @Override
     public String getColumnName(int i) {
+        if (i == SORT_ID && j1939) {
+            return "PGN / SA";
+        }
+        if (i == RATE_COLUMN) {
+            return titles[i] + " (" + RateHistory.NAMES[rateLevel] + ")";
+        }
         return titles[i];
     }
 
@@ -181,46 +559,62 @@ public class MonitorMessageTableModel implements TableModel {
     @Override
     public Object getValueAt(int row, int col) {
 
-        MonitorMessage message = (MonitorMessage) messages.values().toArray()[row];
-        
-        LogMessage logmessage = message.getLastLogMessage();
+        MonitorMessage message = rows.get(row);
         
-        CANMessage canmsg = logmessage.getCanmsg();
         switch (col) {
             case 0:                
                 return message.getPeriod();
             case 1:
                 return message.getCount();
             case 2:
-                return icons[logmessage.getType().ordinal()];
+                return icons[message.getType().ordinal()];
 
             case 3:
-                if (canmsg.isExtended()) {
-                    return String.format("%08xh", canmsg.getId());
+                if (message.isExtended() && j1939) {
+                    return J1939.format(message.getId());
+                } else if (message.isExtended()) {
+                    return String.format("%08xh", message.getId());
                 } else {
-                    return String.format("%03xh", canmsg.getId());
+                    return String.format("%03xh", message.getId());
                 }
 
             case 4:
-                return canmsg.getData().length;
+                return message.getDlc();
 
             case 5:
 
-                if (canmsg.isRtr()) {
+                if (message.isRtr()) {
                     return "Remote Transmission Request";
                 }
 
                 String s = "";
-                byte[] data = canmsg.getData();
-                for (int i = 0; i < data.length; i++) {
+                for (int i = 0; i < message.getDlc(); i++) {
                     if (i > 0) {
                         s = s.concat(" ");
                     }
-                    s = s.concat(String.format("%02x", data[i]));
+                    s = s.concat(String.format("%02x", CANFrame.getByte(message.getData(), i)));
                 }
 
                 return s;
 
+            case 6:
+                return message.getTimestamp();
+
+            case 7:
+                return message.getHistory();
+
+            case 8:
+                return message.getPeriods().getMin();
+
+            case 9:
+                return String.format("%.1f", message.getPeriods().getMean());
+
+            case 10:
+                return message.getPeriods().getMax();
+
+            case 11:
+                return String.format("%.2f", message.getPeriods().getJitter());
+
         }
         return "";
         
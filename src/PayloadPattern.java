@@ -0,0 +1,154 @@
+/*
+ * Part of USBtinViewer - Simple GUI for USBtin - USB to CAN interface
+ * http://www.fischl.de/usbtin
+ *
+ * Copyright (C) 2026  Thomas Fischl
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * Payload pattern compiled to mask and value on the packed payload (byte 0
+ * in the most significant byte).
+ *
+ * A pattern is a sequence of bytes from the first payload byte on. Tokens
+ * are separated by blanks. A hex token holds one or more bytes as hex
+ * digit pairs where "x" or "?" matches any nibble, e.g. "xx xx 12 ?4". A
+ * token starting with "b" is one byte as 8 bits where "x" or "?" matches
+ * any bit, e.g. "b1xxx0xxx". Frames shorter than the pattern never match.
+ *
+ * @author Thomas Fischl
+ */
+public class PayloadPattern {
+
+    /** Mask on packed payload */
+    protected long mask = 0;
+
+    /** Value on packed payload */
+    protected long value = 0;
+
+    /** Count of bytes covered by the pattern (minimum data length) */
+    protected int length = 0;
+
+    /** Pattern text */
+    protected final String text;
+
+    /**
+     * Compile given pattern
+     *
+     * @param text Pattern text
+     * @throws NumberFormatException Invalid pattern
+     */
+    public PayloadPattern(String text) {
+        this.text = text.trim();
+        for (String token : this.text.split("\\s+")) {
+            if (token.length() == 0) {
+                continue;
+            }
+            if (token.charAt(0) == 'b' || token.charAt(0) == 'B') {
+                if (token.length() != 9) {
+                    throw new NumberFormatException("Invalid bit pattern: " + token);
+                }
+                addByte(token.substring(1), 1);
+            } else {
+                if (token.length() % 2 != 0) {
+                    throw new NumberFormatException("Invalid hex pattern: " + token);
+                }
+                for (int i = 0; i < token.length(); i += 2) {
+                    addByte(token.substring(i, i + 2), 4);
+                }
+            }
+        }
+    }
+
+    /**
+     * Append one pattern byte
+     *
+     * @param digits Digits of the byte
+     * @param bits Bits per digit (1 = binary, 4 = hex)
+     * @throws NumberFormatException Invalid digit or more than 8 bytes
+     */
+    private void addByte(String digits, int bits) {
+        if (length == 8) {
+            throw new NumberFormatException("Pattern longer than 8 bytes: " + text);
+        }
+        int byteMask = 0;
+        int byteValue = 0;
+        for (int i = 0; i < digits.length(); i++) {
+            char c = digits.charAt(i);
+            byteMask <<= bits;
+            byteValue <<= bits;
+            if (c != 'x' && c != 'X' && c != '?') {
+                int digit = Character.digit(c, 1 << bits);
+                if (digit < 0) {
+                    throw new NumberFormatException("Invalid pattern digit: " + c);
+                }
+                byteMask |= (1 << bits) - 1;
+                byteValue |= digit;
+            }
+        }
+        int shift = 56 - length * 8;
+        mask |= (long) byteMask << shift;
+        value |= (long) byteValue << shift;
+        length++;
+    }
+
+    /**
+     * Check if given payload matches
+     *
+     * @param dlc Data length
+     * @param payload Packed payload
+     * @return True, if matching
+     */
+    public boolean matches(int dlc, long payload) {
+        return dlc >= length && (payload & mask) == value;
+    }
+
+    /**
+     * Get mask on packed payload
+     *
+     * @return Mask
+     */
+    public long getMask() {
+        return mask;
+    }
+
+    /**
+     * Get value on packed payload
+     *
+     * @return Value
+     */
+    public long getValue() {
+        return value;
+    }
+
+    /**
+     * Get count of bytes covered by the pattern
+     *
+     * @return Minimum data length
+     */
+    public int getLength() {
+        return length;
+    }
+
+    /**
+     * Get pattern text
+     *
+     * @return Text
+     */
+    @Override
+    public String toString() {
+        return text;
+    }
+}
@@ -0,0 +1,123 @@
+/*
+ * Part of USBtinViewer - Simple GUI for USBtin - USB to CAN interface
+ * http://www.fischl.de/usbtin
+ *
+ * Copyright (C) 2026  Thomas Fischl
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * Running statistics of the periods between frames: count, minimum,
+ * maximum, mean and jitter (standard deviation). Each period is counted in
+ * constant time, the periods are not kept.
+ *
+ * @author Thomas Fischl
+ */
+public class PeriodStatistics {
+
+    /** Count of periods */
+    protected long count = 0;
+
+    /** Sum of periods */
+    protected long sum = 0;
+
+    /** Sum of squared periods */
+    protected double squares = 0;
+
+    /** Minimum period */
+    protected long min = Long.MAX_VALUE;
+
+    /** Maximum period */
+    protected long max = 0;
+
+    /**
+     * Count one period
+     *
+     * @param period Period in ms
+     */
+    public void add(long period) {
+        count++;
+        sum += period;
+        squares += (double) period * period;
+        if (period < min) {
+            min = period;
+        }
+        if (period > max) {
+            max = period;
+        }
+    }
+
+    /**
+     * Add periods of other statistics
+     *
+     * @param other Statistics to add
+     */
+    public void merge(PeriodStatistics other) {
+        count += other.count;
+        sum += other.sum;
+        squares += other.squares;
+        min = Math.min(min, other.min);
+        max = Math.max(max, other.max);
+    }
+
+    /**
+     * Get count of periods
+     *
+     * @return Count of periods
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * Get minimum period
+     *
+     * @return Period in ms, 0 if no period counted
+     */
+    public long getMin() {
+        return count > 0 ? min : 0;
+    }
+
+    /**
+     * Get maximum period
+     *
+     * @return Period in ms
+     */
+    public long getMax() {
+        return max;
+    }
+
+    /**
+     * Get mean period
+     *
+     * @return Period in ms, 0 if no period counted
+     */
+    public double getMean() {
+        return count > 0 ? (double) sum / count : 0;
+    }
+
+    /**
+     * Get jitter as standard deviation of the period
+     *
+     * @return Jitter in ms
+     */
+    public double getJitter() {
+        if (count == 0) {
+            return 0;
+        }
+        double mean = getMean();
+        return Math.sqrt(Math.max(0, squares / count - mean * mean));
+    }
+}
@@ -0,0 +1,52 @@
+/*
+ * Part of USBtinViewer - Simple GUI for USBtin - USB to CAN interface
+ * http://www.fischl.de/usbtin
+ *
+ * Copyright (C) 2026  Thomas Fischl
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * Services of the viewer available to frame processors. All methods may be
+ * called from the processor thread.
+ *
+ * @author Thomas Fischl
+ */
+public interface PluginContext {
+
+    /**
+     * Add entry to the trace
+     *
+     * @param text Text
+     * @param type INFO or ERROR
+     */
+    public void log(String text, LogMessage.MessageType type);
+
+    /**
+     * Add annotation of given message to the trace
+     *
+     * @param message Message the annotation refers to
+     * @param text Annotation text
+     * @param error True, to log as error
+     */
+    public void annotate(LogMessage message, String text, boolean error);
+
+    /**
+     * Get current time on the trace time base
+     *
+     * @return Time in ms
+     */
+    public long getTimestamp();
+}
@@ -0,0 +1,309 @@
+/*
+ * Part of USBtinViewer - Simple GUI for USBtin - USB to CAN interface
+ * http://www.fischl.de/usbtin
+ *
+ * Copyright (C) 2026  Thomas Fischl
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs frame processor plugins on the merged message stream.
+ *
+ * Every processor gets its own stage: a bounded queue filled by the
+ * dispatcher and a thread calling the processor. Offering never blocks,
+ * messages not fitting into a full queue are dropped and counted. Per stage
+ * the processing time (histogram), processed and dropped messages and the
+ * queue depth are measured.
+ *
+ * @author Thomas Fischl
+ */
+public class PluginPipeline implements MessageSink {
+
+    /** Capacity of each stage queue */
+    protected static final int QUEUE_SIZE = 16384;
+
+    /** Viewer receiving log entries */
+    protected final USBtinViewer viewer;
+
+    /** Running stages */
+    protected final CopyOnWriteArrayList<Stage> stages = new CopyOnWriteArrayList<Stage>();
+
+    /**
+     * Stage running one processor
+     */
+    protected class Stage implements Runnable, PluginContext {
+
+        /** Processor */
+        protected final FrameProcessor processor;
+
+        /** Name of processor */
+        protected final String name;
+
+        /** Messages waiting for the processor */
+        protected final ArrayBlockingQueue<LogMessage> queue = new ArrayBlockingQueue<LogMessage>(QUEUE_SIZE);
+
+        /** Processing time per message */
+        protected final LatencyHistogram time = new LatencyHistogram();
+
+        /** Count of dropped messages */
+        protected final AtomicLong dropped = new AtomicLong();
+
+        /** Count of processor exceptions */
+        protected final AtomicLong failures = new AtomicLong();
+
+        /** Maximum queue depth */
+        protected volatile int maxDepth = 0;
+
+        /** Processor thread */
+        protected Thread thread;
+
+        /** True, while running */
+        protected volatile boolean running = true;
+
+        /**
+         * Create stage of given processor
+         *
+         * @param processor Processor
+         */
+        public Stage(FrameProcessor processor) {
+            this.processor = processor;
+            this.name = processor.getName();
+        }
+
+        /**
+         * Queue message without blocking
+         *
+         * @param message Log message
+         */
+        protected void offer(LogMessage message) {
+            if (!queue.offer(message)) {
+                dropped.incrementAndGet();
+            }
+        }
+
+        /**
+         * Processor loop
+         */
+        @Override
+        public void run() {
+            try {
+                processor.init(this);
+                while (running) {
+                    LogMessage message = queue.poll(100, TimeUnit.MILLISECONDS);
+                    if (message == null) {
+                        continue;
+                    }
+                    int depth = queue.size() + 1;
+                    if (depth > maxDepth) {
+                        maxDepth = depth;
+                    }
+                    long start = System.nanoTime();
+                    try {
+                        processor.process(message);
+                    } catch (RuntimeException e) {
+                        if (failures.getAndIncrement() == 0) {
+                            log("Plugin " + name + ": " + e, LogMessage.MessageType.ERROR);
+                        }
+                    }
+                    time.record(System.nanoTime() - start);
+                }
+                processor.close();
+            } catch (InterruptedException e) {
+                processor.close();
+            } catch (RuntimeException e) {
+                log("Plugin " + name + " stopped: " + e, LogMessage.MessageType.ERROR);
+            }
+        }
+
+        /**
+         * Add entry to the trace
+         *
+         * @param text Text
+         * @param type INFO or ERROR
+         */
+        @Override
+        public void log(String text, LogMessage.MessageType type) {
+            viewer.log(text, type);
+        }
+
+        /**
+         * Add annotation of given message to the trace
+         *
+         * @param message Message the annotation refers to
+         * @param text Annotation text
+         * @param error True, to log as error
+         */
+        @Override
+        public void annotate(LogMessage message, String text, boolean error) {
+            String subject = "";
+            if (message.getCanmsg() != null) {
+                subject = String.format(message.getCanmsg().isExtended() ? " %08xh" : " %03xh", message.getCanmsg().getId());
+                subject += " @" + message.getTimestamp() + " ms";
+            }
+            viewer.log("[" + name + "]" + subject + ": " + text, error ? LogMessage.MessageType.ERROR : LogMessage.MessageType.INFO);
+        }
+
+        /**
+         * Get current time on the trace time base
+         *
+         * @return Time in ms
+         */
+        @Override
+        public long getTimestamp() {
+            return viewer.getTimestamp();
+        }
+
+        /**
+         * Get statistics line
+         *
+         * @return Statistics
+         */
+        public String getReport() {
+            return name + ": queue " + queue.size() + " (max " + maxDepth + "/" + QUEUE_SIZE + "), dropped " + dropped.get()
+                    + (failures.get() > 0 ? ", failures " + failures.get() : "") + "\n  time " + time;
+        }
+    }
+
+    /**
+     * Create pipeline
+     *
+     * @param viewer Viewer receiving log entries
+     */
+    public PluginPipeline(USBtinViewer viewer) {
+        this.viewer = viewer;
+    }
+
+    /**
+     * Load all processors of given jar files and start them
+     *
+     * @param jars Jar files
+     * @return Count of started processors
+     * @throws IOException Error while loading
+     */
+    public int load(File... jars) throws IOException {
+        URL[] urls = new URL[jars.length];
+        for (int i = 0; i < jars.length; i++) {
+            urls[i] = jars[i].toURI().toURL();
+        }
+        ClassLoader loader = new URLClassLoader(urls, getClass().getClassLoader());
+        int count = 0;
+        try {
+            for (FrameProcessor processor : ServiceLoader.load(FrameProcessor.class, loader)) {
+                start(processor);
+                count++;
+            }
+        } catch (ServiceConfigurationError e) {
+            throw new IOException(e.getMessage());
+        }
+        return count;
+    }
+
+    /**
+     * Load all jar files of given directory
+     *
+     * @param directory Plugin directory
+     * @return Count of started processors
+     * @throws IOException Error while loading
+     */
+    public int loadDirectory(File directory) throws IOException {
+        File[] jars = directory.listFiles(new FileFilter() {
+            @Override
+            public boolean accept(File file) {
+                return file.isFile() && file.getName().endsWith(".jar");
+            }
+        });
+        return jars == null || jars.length == 0 ? 0 : load(jars);
+    }
+
+    /**
+     * Start given processor on its own thread
+     *
+     * @param processor Processor
+     */
+    public void start(FrameProcessor processor) {
+        Stage stage = new Stage(processor);
+        stage.thread = new Thread(stage, "Plugin " + stage.name);
+        stage.thread.setDaemon(true);
+        stage.thread.start();
+        stages.add(stage);
+        viewer.log("Plugin " + stage.name + " started", LogMessage.MessageType.INFO);
+    }
+
+    /**
+     * Stop and remove all processors
+     */
+    public void stopAll() {
+        for (Stage stage : stages) {
+            stage.running = false;
+        }
+        stages.clear();
+    }
+
+    /**
+     * Get count of running processors
+     *
+     * @return Count of processors
+     */
+    public int getCount() {
+        return stages.size();
+    }
+
+    /**
+     * Get statistics of all processors
+     *
+     * @return Statistics text
+     */
+    public String getReport() {
+        if (stages.isEmpty()) {
+            return "No plugins loaded";
+        }
+        StringBuilder sb = new StringBuilder();
+        for (Stage stage : stages) {
+            sb.append(stage.getReport()).append('\n');
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Hand message to all processors
+     *
+     * @param message Log message
+     */
+    @Override
+    public void receive(LogMessage message) {
+        for (Stage stage : stages) {
+            stage.offer(message);
+        }
+    }
+
+    /**
+     * Nothing to do per flush
+     */
+    @Override
+    public void tick() {
+    }
+}
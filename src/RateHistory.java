@@ -0,0 +1,93 @@
+/*
+ * Part of USBtinViewer - Simple GUI for USBtin - USB to CAN interface
+ * http://www.fischl.de/usbtin
+ *
+ * Copyright (C) 2026  Thomas Fischl
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.util.Arrays;
+
+/**
+ * Frame rate history of one id as a round robin database: per resolution
+ * (100 ms, 1 s, 10 s, 1 min) a ring of frame counts per time bucket. Each
+ * frame increments the current bucket of every resolution, buckets are
+ * zeroed when time moves past them, so memory is fixed per id however long
+ * the capture runs.
+ *
+ * @author Thomas Fischl
+ */
+public class RateHistory {
+
+    /** Bucket widths in ms per resolution */
+    public static final long[] WIDTHS = new long[]{100, 1000, 10000, 60000};
+
+    /** Names of resolutions */
+    public static final String[] NAMES = new String[]{"100 ms", "1 s", "10 s", "1 min"};
+
+    /** Count of buckets per resolution */
+    public static final int BUCKETS = 60;
+
+    /** Frame counts, BUCKETS per resolution */
+    protected final int[] counts = new int[WIDTHS.length * BUCKETS];
+
+    /** Newest bucket number per resolution, -1 = none */
+    protected final long[] newest = new long[WIDTHS.length];
+
+    /**
+     * Create empty history
+     */
+    public RateHistory() {
+        Arrays.fill(newest, -1);
+    }
+
+    /**
+     * Count one frame
+     *
+     * @param timestamp Timestamp in ms
+     */
+    public void add(long timestamp) {
+        for (int level = 0; level < WIDTHS.length; level++) {
+            long bucket = timestamp / WIDTHS[level];
+            int base = level * BUCKETS;
+            if (bucket > newest[level]) {
+                // zero buckets skipped since the newest one
+                for (long b = Math.max(newest[level] + 1, bucket - BUCKETS + 1); b <= bucket; b++) {
+                    counts[base + (int) (b % BUCKETS)] = 0;
+                }
+                newest[level] = bucket;
+            } else if (newest[level] - bucket >= BUCKETS) {
+                continue;
+            }
+            counts[base + (int) (bucket % BUCKETS)]++;
+        }
+    }
+
+    /**
+     * Get counts of the complete buckets before given time, oldest first
+     *
+     * @param level Resolution index
+     * @param now Current time in ms
+     * @param result Array of BUCKETS counts to fill
+     */
+    public void getCounts(int level, long now, int[] result) {
+        long last = now / WIDTHS[level] - 1;
+        int base = level * BUCKETS;
+        for (int i = 0; i < BUCKETS; i++) {
+            long b = last - BUCKETS + 1 + i;
+            result[i] = b >= 0 && b <= newest[level] && newest[level] - b < BUCKETS ? counts[base + (int) (b % BUCKETS)] : 0;
+        }
+    }
+}
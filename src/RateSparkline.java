@@ -0,0 +1,100 @@
+/*
+ * Part of USBtinViewer - Simple GUI for USBtin - USB to CAN interface
+ * http://www.fischl.de/usbtin
+ *
+ * Copyright (C) 2026  Thomas Fischl
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.awt.Color;
+import java.awt.Component;
+import java.awt.Graphics;
+import javax.swing.JComponent;
+import javax.swing.JTable;
+import javax.swing.table.TableCellRenderer;
+
+/**
+ * Cell renderer drawing the rate history of a monitor row as bars, scaled
+ * to the peak of the shown buckets.
+ *
+ * @author Thomas Fischl
+ */
+public class RateSparkline extends JComponent implements TableCellRenderer {
+
+    /** Color of bars */
+    protected static final Color BAR_COLOR = new Color(60, 90, 160);
+
+    /** Bucket counts of the rendered cell */
+    protected final int[] counts = new int[RateHistory.BUCKETS];
+
+    /** Peak count of the rendered cell */
+    protected int peak;
+
+    /** Background of the rendered cell */
+    protected Color background;
+
+    /**
+     * Prepare rendering of given history
+     *
+     * @param table Monitor table
+     * @param value Rate history
+     * @param selected True, if row is selected
+     * @param focused True, if cell has focus
+     * @param row Row index
+     * @param column Column index
+     * @return This component
+     */
+    @Override
+    public Component getTableCellRendererComponent(JTable table, Object value, boolean selected, boolean focused, int row, int column) {
+        MonitorMessageTableModel model = (MonitorMessageTableModel) table.getModel();
+        int level = model.getRateLevel();
+        ((RateHistory) value).getCounts(level, model.getTime(), counts);
+        peak = 0;
+        long sum = 0;
+        for (int count : counts) {
+            peak = Math.max(peak, count);
+            sum += count;
+        }
+        background = selected ? table.getSelectionBackground() : table.getBackground();
+        double width = RateHistory.WIDTHS[level] / 1000.0;
+        setToolTipText(String.format("peak %.1f/s, mean %.1f/s", peak / width, sum / width / RateHistory.BUCKETS));
+        return this;
+    }
+
+    /**
+     * Paint bars
+     *
+     * @param g Graphics
+     */
+    @Override
+    protected void paintComponent(Graphics g) {
+        int w = getWidth();
+        int h = getHeight() - 2;
+        g.setColor(background);
+        g.fillRect(0, 0, w, getHeight());
+        if (peak == 0 || h <= 0) {
+            return;
+        }
+        g.setColor(BAR_COLOR);
+        for (int i = 0; i < counts.length; i++) {
+            if (counts[i] > 0) {
+                int x0 = i * w / counts.length;
+                int x1 = Math.max(x0 + 1, (i + 1) * w / counts.length - 1);
+                int bar = Math.max(1, (int) ((long) counts[i] * h / peak));
+                g.fillRect(x0, h + 1 - bar, x1 - x0, bar);
+            }
+        }
+    }
+}
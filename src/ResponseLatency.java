@@ -0,0 +1,481 @@
+/*
+ * Part of USBtinViewer - Simple GUI for USBtin - USB to CAN interface
+ * http://www.fischl.de/usbtin
+ *
+ * Copyright (C) 2026  Thomas Fischl
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import de.fischl.usbtin.*;
+import java.util.ArrayList;
+import javax.swing.table.AbstractTableModel;
+
+/**
+ * Measures response times of configured request/response id pairs.
+ *
+ * A pair is given as "request=response" with hex ids, each optionally
+ * followed by ":" and a payload prefix (see PayloadPattern, "x" matches any
+ * nibble), e.g. "7e0:0210=7e8:xx50" or "100=180". Ids with more than three
+ * digits or above 7ffh are extended ids. The prefix is compiled to mask and
+ * value on the packed payload. Requests are queued per pair, a matching
+ * response answers the oldest pending request of the first pair with one.
+ * Frames are looked up by channel, id and extended flag in open addressing
+ * tables, so per frame only a few array accesses are needed.
+ *
+ * Latencies are measured on the host receive/send times (System.nanoTime)
+ * of the messages, messages without host time fall back to the millisecond
+ * trace timestamps. Requests without response within the timeout are
+ * counted as timeouts.
+ *
+ * @author Thomas Fischl
+ */
+public class ResponseLatency extends AbstractTableModel implements MessageSink {
+
+    /** Maximum count of pending requests per pair */
+    protected static final int MAX_PENDING = 64;
+
+    /** Column titles */
+    protected static final String[] TITLES = new String[]{"Request", "Response", "Count", "Timeouts", "Unmatched", "Pending", "Mean (ms)", "p50 (ms)", "p90 (ms)", "p99 (ms)", "Max (ms)"};
+
+    /** Column classes */
+    protected static final Class[] CLASSES = new Class[]{String.class, String.class, Long.class, Long.class, Long.class, Integer.class, Double.class, Double.class, Double.class, Double.class, Double.class};
+
+    /**
+     * Frame pattern: id and payload prefix
+     */
+    protected static class Pattern {
+
+        /** CAN id */
+        int id;
+
+        /** True, if extended id */
+        boolean extended;
+
+        /** Payload prefix */
+        PayloadPattern payload;
+
+        /** Text of pattern */
+        String text;
+
+        /**
+         * Check if given frame matches the payload prefix
+         *
+         * @param dlc Data length
+         * @param payload Packed payload
+         * @return True, if matching
+         */
+        boolean matches(int dlc, long payload) {
+            return this.payload.matches(dlc, payload);
+        }
+    }
+
+    /**
+     * One request/response pair with its pending requests and statistics
+     */
+    protected static class Pair {
+
+        /** Request pattern */
+        Pattern request;
+
+        /** Response pattern */
+        Pattern response;
+
+        /** Next pair with same request id */
+        Pair nextByRequest;
+
+        /** Next pair with same response id */
+        Pair nextByResponse;
+
+        /** Host times of pending requests (ring) */
+        final long[] pendingNanos = new long[MAX_PENDING];
+
+        /** Trace timestamps of pending requests (ring) */
+        final long[] pendingMillis = new long[MAX_PENDING];
+
+        /** Index of oldest pending request */
+        int pendingFirst = 0;
+
+        /** Count of pending requests */
+        int pendingSize = 0;
+
+        /** Latencies in ns */
+        final LatencyHistogram latency = new LatencyHistogram();
+
+        /** Count of requests without response */
+        long timeouts = 0;
+
+        /** Count of responses without pending request of any pair */
+        long unmatched = 0;
+    }
+
+    /**
+     * Open addressing table of pair chains by key (see IdStatistics.getKey)
+     */
+    protected static class IdTable {
+
+        /** Keys */
+        final long[] keys;
+
+        /** First pair of chain, null = free slot */
+        final Pair[] heads;
+
+        /**
+         * Create table for given count of ids
+         *
+         * @param count Maximum count of ids
+         */
+        IdTable(int count) {
+            int size = 16;
+            while (size < count * 2) {
+                size *= 2;
+            }
+            keys = new long[size];
+            heads = new Pair[size];
+        }
+
+        /**
+         * Add pair to the chain of given key
+         *
+         * @param key Key
+         * @param pair Pair
+         * @return Previous first pair of chain
+         */
+        Pair add(long key, Pair pair) {
+            int i = find(key);
+            Pair next = heads[i];
+            keys[i] = key;
+            heads[i] = pair;
+            return next;
+        }
+
+        /**
+         * Get slot of given key
+         *
+         * @param key Key
+         * @return Slot index, slot is free if key is not in table
+         */
+        int find(long key) {
+            int mask = keys.length - 1;
+            int i = IdStatisticsTable.slot(key, mask);
+            while (heads[i] != null && keys[i] != key) {
+                i = (i + 1) & mask;
+            }
+            return i;
+        }
+
+        /**
+         * Get first pair of given key
+         *
+         * @param key Key
+         * @return First pair, null if none
+         */
+        Pair get(long key) {
+            return heads[find(key)];
+        }
+    }
+
+    /** Viewer used for timestamps */
+    protected final USBtinViewer viewer;
+
+    /** Channel of requests and responses */
+    protected final int channel;
+
+    /** Configured pairs */
+    protected final Pair[] pairs;
+
+    /** Pairs by request id */
+    protected final IdTable byRequest;
+
+    /** Pairs by response id */
+    protected final IdTable byResponse;
+
+    /** Timeout in ms */
+    protected final long timeout;
+
+    /** True, if table has to be updated at next tick */
+    protected boolean changed = false;
+
+    /**
+     * Create measurement of given pairs
+     *
+     * @param viewer Viewer used for timestamps
+     * @param channel Channel of requests and responses
+     * @param spec Pairs, e.g. "7e0:0210=7e8:xx50,100=180"
+     * @param timeout Timeout in ms
+     * @throws NumberFormatException Invalid pair specification
+     */
+    public ResponseLatency(USBtinViewer viewer, int channel, String spec, long timeout) {
+        this.viewer = viewer;
+        this.channel = channel;
+        this.timeout = timeout;
+        ArrayList<Pair> list = new ArrayList<Pair>();
+        for (String entry : spec.split(",")) {
+            String[] parts = entry.split("=");
+            if (parts.length != 2) {
+                throw new NumberFormatException("Invalid pair: " + entry);
+            }
+            Pair pair = new Pair();
+            pair.request = parsePattern(parts[0]);
+            pair.response = parsePattern(parts[1]);
+            list.add(pair);
+        }
+        pairs = list.toArray(new Pair[list.size()]);
+        byRequest = new IdTable(pairs.length);
+        byResponse = new IdTable(pairs.length);
+        for (Pair pair : pairs) {
+            pair.nextByRequest = byRequest.add(IdStatistics.getKey(channel, pair.request.id, pair.request.extended, false), pair);
+            pair.nextByResponse = byResponse.add(IdStatistics.getKey(channel, pair.response.id, pair.response.extended, false), pair);
+        }
+    }
+
+    /**
+     * Parse pattern "id[:prefix]"
+     *
+     * @param s Pattern text
+     * @return Pattern
+     * @throws NumberFormatException Invalid pattern
+     */
+    protected static Pattern parsePattern(String s) {
+        Pattern pattern = new Pattern();
+        pattern.text = s.trim();
+        String[] parts = pattern.text.split(":");
+        if (parts.length > 2) {
+            throw new NumberFormatException("Invalid pattern: " + s);
+        }
+        String id = parts[0].trim();
+        pattern.id = Integer.parseInt(id, 16);
+        pattern.extended = id.length() > 3 || pattern.id > 0x7ff;
+        if (pattern.id < 0 || pattern.id > 0x1fffffff) {
+            throw new NumberFormatException("Invalid id: " + id);
+        }
+        pattern.payload = new PayloadPattern(parts.length == 2 ? parts[1] : "");
+        return pattern;
+    }
+
+    /**
+     * Match message against requests and responses
+     *
+     * @param message Log message
+     */
+    @Override
+    public void receive(LogMessage message) {
+        CANMessage canmsg = message.getCanmsg();
+        if (canmsg == null || canmsg.isRtr()) {
+            return;
+        }
+        long key = IdStatistics.getKey(message.getChannel(), canmsg.getId(), canmsg.isExtended(), false);
+        Pair responses = byResponse.get(key);
+        Pair requests = byRequest.get(key);
+        if (responses == null && requests == null) {
+            return;
+        }
+        byte[] data = canmsg.getData();
+        long payload = CANFrame.pack(data);
+        Pair unmatched = null;
+        for (Pair pair = responses; pair != null; pair = pair.nextByResponse) {
+            if (pair.response.matches(data.length, payload)) {
+                if (respond(pair, message)) {
+                    unmatched = null;
+                    break;
+                }
+                unmatched = pair;
+            }
+        }
+        if (unmatched != null) {
+            unmatched.unmatched++;
+        }
+        for (Pair pair = requests; pair != null; pair = pair.nextByRequest) {
+            if (pair.request.matches(data.length, payload)) {
+                request(pair, message);
+            }
+        }
+    }
+
+    /**
+     * Queue request of given pair
+     *
+     * @param pair Pair
+     * @param message Request message
+     */
+    protected void request(Pair pair, LogMessage message) {
+        if (pair.pendingSize == MAX_PENDING) {
+            pair.pendingFirst = (pair.pendingFirst + 1) % MAX_PENDING;
+            pair.pendingSize--;
+            pair.timeouts++;
+        }
+        int i = (pair.pendingFirst + pair.pendingSize) % MAX_PENDING;
+        pair.pendingNanos[i] = message.getNanoTime();
+        pair.pendingMillis[i] = message.getTimestamp();
+        pair.pendingSize++;
+        changed = true;
+    }
+
+    /**
+     * Take oldest pending request of given pair and record latency
+     *
+     * @param pair Pair
+     * @param message Response message
+     * @return True, if a pending request was answered
+     */
+    protected boolean respond(Pair pair, LogMessage message) {
+        expire(pair, message.getTimestamp());
+        changed = true;
+        if (pair.pendingSize == 0) {
+            return false;
+        }
+        int i = pair.pendingFirst;
+        pair.pendingFirst = (i + 1) % MAX_PENDING;
+        pair.pendingSize--;
+        if (pair.pendingNanos[i] != 0 && message.getNanoTime() != 0) {
+            pair.latency.record(message.getNanoTime() - pair.pendingNanos[i]);
+        } else {
+            pair.latency.record((message.getTimestamp() - pair.pendingMillis[i]) * 1000000L);
+        }
+        return true;
+    }
+
+    /**
+     * Count pending requests older than the timeout as timeouts
+     *
+     * @param pair Pair
+     * @param now Current time in ms
+     */
+    protected void expire(Pair pair, long now) {
+        while (pair.pendingSize > 0 && now - pair.pendingMillis[pair.pendingFirst] > timeout) {
+            pair.pendingFirst = (pair.pendingFirst + 1) % MAX_PENDING;
+            pair.pendingSize--;
+            pair.timeouts++;
+            changed = true;
+        }
+    }
+
+    /**
+     * Expire pending requests and update table
+     */
+    @Override
+    public void tick() {
+        long now = viewer.getTimestamp();
+        for (Pair pair : pairs) {
+            expire(pair, now);
+        }
+        if (changed) {
+            changed = false;
+            fireTableRowsUpdated(0, pairs.length - 1);
+        }
+    }
+
+    /**
+     * Get statistics of all pairs
+     *
+     * @return Statistics text
+     */
+    public String getReport() {
+        StringBuilder sb = new StringBuilder();
+        for (Pair pair : pairs) {
+            sb.append(pair.request.text).append(" -> ").append(pair.response.text).append(": ")
+                    .append(pair.latency).append(", timeouts ").append(pair.timeouts).append('\n');
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Get count of rows
+     *
+     * @return Count of pairs
+     */
+    @Override
+    public int getRowCount() {
+        return pairs.length;
+    }
+
+    /**
+     * Get count of columns
+     *
+     * @return Count of columns
+     */
+    @Override
+    public int getColumnCount() {
+        return TITLES.length;
+    }
+
+    /**
+     * Get name of given column
+     *
+     * @param column Column id
+     * @return Name of given column
+     */
+    @Override
+    public String getColumnName(int column) {
+        return TITLES[column];
+    }
+
+    /**
+     * Get class of given column
+     *
+     * @param column Column id
+     * @return Class of given column
+     */
+    @Override
+    public Class<?> getColumnClass(int column) {
+        return CLASSES[column];
+    }
+
+    /**
+     * Get value of given table cell
+     *
+     * @param row Row id
+     * @param col Column id
+     * @return Value of given cell
+     */
+    @Override
+    public Object getValueAt(int row, int col) {
+        Pair pair = pairs[row];
+        switch (col) {
+            case 0:
+                return pair.request.text;
+            case 1:
+                return pair.response.text;
+            case 2:
+                return pair.latency.getCount();
+            case 3:
+                return pair.timeouts;
+            case 4:
+                return pair.unmatched;
+            case 5:
+                return pair.pendingSize;
+            case 6:
+                return toMillis(pair.latency.getMean());
+            case 7:
+                return toMillis(pair.latency.getPercentile(50));
+            case 8:
+                return toMillis(pair.latency.getPercentile(90));
+            case 9:
+                return toMillis(pair.latency.getPercentile(99));
+            case 10:
+                return toMillis(pair.latency.getMax());
+        }
+        return "";
+    }
+
+    /**
+     * Convert nanoseconds to milliseconds with microsecond resolution
+     *
+     * @param nanos Time in ns
+     * @return Time in ms
+     */
+    protected static double toMillis(long nanos) {
+        return Math.round(nanos / 1000.0) / 1000.0;
+    }
+}
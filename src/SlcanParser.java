@@ -0,0 +1,229 @@
+/*
+ * Part of USBtinViewer - Simple GUI for USBtin - USB to CAN interface
+ * http://www.fischl.de/usbtin
+ *
+ * Copyright (C) 2026  Thomas Fischl
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * Allocation free parser for slcan records (t, T, r, R with optional
+ * timestamp). Bytes are collected in a fixed line buffer; complete records
+ * are decoded in place into one reusable frame slot.
+ *
+ * @author Thomas Fischl
+ */
+public class SlcanParser {
+
+    /** Result of feed: no complete record yet */
+    public static final int NONE = 0;
+
+    /** Result of feed: frame decoded into frame slot */
+    public static final int FRAME = 1;
+
+    /** Result of feed: transmit acknowledge (z or Z) */
+    public static final int ACK = 2;
+
+    /** Result of feed: error (BELL) */
+    public static final int BELL = 3;
+
+    /** Result of feed: other or invalid record */
+    public static final int OTHER = 4;
+
+    /** Maximum length of a record ("T" + 8 + 1 + 16 + 4) */
+    protected static final int MAX_LINE = 30;
+
+    /** Line buffer */
+    private final byte[] line = new byte[MAX_LINE];
+
+    /** Count of bytes in line buffer */
+    private int length = 0;
+
+    /** True, if current line overflowed and is discarded */
+    private boolean overflow = false;
+
+    /** Frame slot filled by feed */
+    private final CANFrame frame = new CANFrame();
+
+    /**
+     * Get frame slot containing the last decoded frame
+     *
+     * @return Frame slot
+     */
+    public CANFrame getFrame() {
+        return frame;
+    }
+
+    /**
+     * Reset parser state
+     */
+    public void reset() {
+        length = 0;
+        overflow = false;
+    }
+
+    /**
+     * Feed one received byte
+     *
+     * @param b Received byte
+     * @return NONE, FRAME, ACK, BELL or OTHER
+     */
+    public int feed(byte b) {
+        if (b == 7) {
+            length = 0;
+            return BELL;
+        }
+        if (b != '\r') {
+            if (length < MAX_LINE) {
+                line[length++] = b;
+            } else {
+                overflow = true;
+            }
+            return NONE;
+        }
+
+        int len = length;
+        boolean skip = overflow;
+        length = 0;
+        overflow = false;
+        if (len == 0 || skip) {
+            return len == 0 ? NONE : OTHER;
+        }
+        byte c = line[0];
+        if (c == 'z' || c == 'Z') {
+            return ACK;
+        }
+        return parse(line, 0, len, frame) ? FRAME : OTHER;
+    }
+
+    /**
+     * Decode one slcan record without terminating carriage return
+     *
+     * @param buf Buffer containing record
+     * @param off Offset of record
+     * @param len Length of record
+     * @param frame Frame slot to fill
+     * @return True, if record is a valid frame
+     */
+    public static boolean parse(byte[] buf, int off, int len, CANFrame frame) {
+        if (len < 1) {
+            return false;
+        }
+        int idLength;
+        switch (buf[off]) {
+            case 't':
+                frame.extended = false;
+                frame.rtr = false;
+                idLength = 3;
+                break;
+            case 'T':
+                frame.extended = true;
+                frame.rtr = false;
+                idLength = 8;
+                break;
+            case 'r':
+                frame.extended = false;
+                frame.rtr = true;
+                idLength = 3;
+                break;
+            case 'R':
+                frame.extended = true;
+                frame.rtr = true;
+                idLength = 8;
+                break;
+            default:
+                return false;
+        }
+        int pos = off + 1;
+        int end = off + len;
+        if (end - pos < idLength + 1) {
+            return false;
+        }
+
+        long id = hex(buf, pos, idLength);
+        pos += idLength;
+        int dlc = hexDigit(buf[pos++]);
+        if (id < 0 || dlc < 0 || dlc > 8) {
+            return false;
+        }
+
+        long data = 0;
+        if (!frame.rtr) {
+            if (end - pos < dlc * 2) {
+                return false;
+            }
+            for (int i = 0; i < dlc; i++) {
+                long value = hex(buf, pos, 2);
+                if (value < 0) {
+                    return false;
+                }
+                data |= value << (56 - i * 8);
+                pos += 2;
+            }
+        }
+
+        int timestamp = -1;
+        if (end - pos == 4) {
+            timestamp = (int) hex(buf, pos, 4);
+        } else if (end != pos) {
+            return false;
+        }
+
+        frame.id = (int) id;
+        frame.dlc = dlc;
+        frame.data = data;
+        frame.timestamp = timestamp;
+        return true;
+    }
+
+    /**
+     * Decode hex number
+     *
+     * @param buf Buffer
+     * @param off Offset of first digit
+     * @param digits Count of digits
+     * @return Value, -1 if invalid digit found
+     */
+    private static long hex(byte[] buf, int off, int digits) {
+        long value = 0;
+        for (int i = 0; i < digits; i++) {
+            int d = hexDigit(buf[off + i]);
+            if (d < 0) {
+                return -1;
+            }
+            value = (value << 4) | d;
+        }
+        return value;
+    }
+
+    /**
+     * Decode one hex digit
+     *
+     * @param b Character
+     * @return Value (0..15), -1 if not a hex digit
+     */
+    private static int hexDigit(byte b) {
+        if (b >= '0' && b <= '9') {
+            return b - '0';
+        }
+        if (b >= 'a' && b <= 'f') {
+            return b - 'a' + 10;
+        }
+        if (b >= 'A' && b <= 'F') {
+            return b - 'A' + 10;
+        }
+        return -1;
+    }
+}
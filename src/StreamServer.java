@@ -0,0 +1,483 @@
+/*
+ * Part of USBtinViewer - Simple GUI for USBtin - USB to CAN interface
+ * http://www.fischl.de/usbtin
+ *
+ * Copyright (C) 2026  Thomas Fischl
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import de.fischl.usbtin.*;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * TCP server publishing all received and sent CAN messages to local clients.
+ *
+ * Clients get slcan text lines ("t1238112233...tttt\r" with millisecond
+ * timestamp) by default. Sending the line "B" switches a client to the binary
+ * format, "A" switches back. Binary records are big endian: flags
+ * (1 = extended, 2 = rtr, 4 = sent), channel, dlc, 0, id (4 bytes),
+ * timestamp in ms (8 bytes) and dlc data bytes (none for rtr). Text lines
+ * starting with t, T, r or R are sent on the main channel, malformed ones
+ * are dropped.
+ *
+ * The server runs on its own thread with one selector. Publishing only
+ * queues the message, so the receive path never waits on the network. Each
+ * client has a bounded output buffer; frames not fitting are skipped for
+ * this client (downsampling) and a client staying behind for too long is
+ * dropped.
+ *
+ * @author Thomas Fischl
+ */
+public class StreamServer implements Runnable {
+
+    /** Size of output buffer per client */
+    protected static final int CLIENT_BUFFER_SIZE = 64 * 1024;
+
+    /** Size of input buffer per client */
+    protected static final int INPUT_BUFFER_SIZE = 1024;
+
+    /** Maximum count of messages waiting for the server thread */
+    protected static final int QUEUE_LIMIT = 65536;
+
+    /** Clients not catching up within this time (ms) are dropped */
+    protected static final long SLOW_CLIENT_TIMEOUT = 2000;
+
+    /** Maximum length of an encoded message */
+    protected static final int MAX_RECORD = 32;
+
+    /**
+     * Connected client
+     */
+    protected static class Client {
+
+        /** Socket of client */
+        final SocketChannel socket;
+
+        /** Pending output, in fill mode */
+        final ByteBuffer output = ByteBuffer.allocateDirect(CLIENT_BUFFER_SIZE);
+
+        /** Pending input, in fill mode */
+        final ByteBuffer input = ByteBuffer.allocate(INPUT_BUFFER_SIZE);
+
+        /** True, if client gets binary records */
+        boolean binary = false;
+
+        /** Time (ms) since the output buffer overflows, 0 if not overflowing */
+        long behindSince = 0;
+
+        /** Count of messages skipped for this client */
+        long skipped = 0;
+
+        /** Count of malformed frames received from this client */
+        long invalid = 0;
+
+        /** Frame slot for decoding received lines */
+        final CANFrame frame = new CANFrame();
+
+        Client(SocketChannel socket) {
+            this.socket = socket;
+        }
+    }
+
+    /** Viewer used to send received frames and to log */
+    protected final USBtinViewer viewer;
+
+    /** TCP port */
+    protected final int port;
+
+    /** Messages waiting for the server thread */
+    private final ConcurrentLinkedQueue<LogMessage> queue = new ConcurrentLinkedQueue<LogMessage>();
+
+    /** Count of messages in queue */
+    private final AtomicInteger queueSize = new AtomicInteger();
+
+    /** True, if a selector wakeup is pending */
+    private final AtomicBoolean wakeupPending = new AtomicBoolean();
+
+    /** Count of messages dropped because the server thread fell behind */
+    protected final AtomicLong dropped = new AtomicLong();
+
+    /** Connected clients, only used by server thread */
+    protected final ArrayList<Client> clients = new ArrayList<Client>();
+
+    /** Count of connected clients */
+    protected volatile int clientCount = 0;
+
+    /** Encoded text record */
+    private final ByteBuffer textRecord = ByteBuffer.allocate(MAX_RECORD);
+
+    /** Encoded binary record */
+    private final ByteBuffer binaryRecord = ByteBuffer.allocate(MAX_RECORD);
+
+    /** Selector of server thread */
+    protected Selector selector;
+
+    /** Listening socket */
+    protected ServerSocketChannel serverSocket;
+
+    /** Server thread */
+    protected Thread thread;
+
+    /** True, while running */
+    protected volatile boolean running = false;
+
+    /**
+     * Construct server
+     *
+     * @param viewer Viewer
+     * @param port TCP port to listen on (localhost only)
+     */
+    public StreamServer(USBtinViewer viewer, int port) {
+        this.viewer = viewer;
+        this.port = port;
+    }
+
+    /**
+     * Open listening socket and start server thread
+     *
+     * @throws IOException Error opening socket
+     */
+    public void start() throws IOException {
+        selector = Selector.open();
+        serverSocket = ServerSocketChannel.open();
+        serverSocket.configureBlocking(false);
+        serverSocket.socket().bind(new InetSocketAddress("127.0.0.1", port));
+        serverSocket.register(selector, SelectionKey.OP_ACCEPT);
+        running = true;
+        thread = new Thread(this, "Stream server");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Stop server thread and close all connections
+     */
+    public void stop() {
+        running = false;
+        if (selector != null) {
+            selector.wakeup();
+        }
+    }
+
+    /**
+     * Get count of connected clients
+     *
+     * @return Client count
+     */
+    public int getClientCount() {
+        return clientCount;
+    }
+
+    /**
+     * Publish message to all clients. May be called from any thread and
+     * never blocks.
+     *
+     * @param message Log message, only IN and OUT messages are published
+     */
+    public void publish(LogMessage message) {
+        if (!running || clientCount == 0 || message.getCanmsg() == null) {
+            return;
+        }
+        if (queueSize.incrementAndGet() > QUEUE_LIMIT) {
+            queueSize.decrementAndGet();
+            dropped.incrementAndGet();
+            return;
+        }
+        queue.add(message);
+        if (wakeupPending.compareAndSet(false, true)) {
+            selector.wakeup();
+        }
+    }
+
+    /**
+     * Server loop
+     */
+    @Override
+    public void run() {
+        try {
+            while (running) {
+                selector.select(100);
+                wakeupPending.set(false);
+
+                Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+                while (it.hasNext()) {
+                    SelectionKey key = it.next();
+                    it.remove();
+                    if (!key.isValid()) {
+                        continue;
+                    }
+                    if (key.isAcceptable()) {
+                        accept();
+                        continue;
+                    }
+                    Client client = (Client) key.attachment();
+                    try {
+                        if (key.isReadable()) {
+                            read(client);
+                        }
+                        if (key.isValid() && key.isWritable()) {
+                            write(client);
+                        }
+                    } catch (IOException e) {
+                        close(client);
+                    }
+                }
+
+                distribute();
+            }
+        } catch (IOException e) {
+            viewer.log("Stream server: " + e.getMessage(), LogMessage.MessageType.ERROR);
+        } finally {
+            for (Client client : new ArrayList<Client>(clients)) {
+                close(client);
+            }
+            try {
+                serverSocket.close();
+                selector.close();
+            } catch (IOException e) {
+                // ignore, shutting down
+            }
+        }
+    }
+
+    /**
+     * Accept new client
+     *
+     * @throws IOException Error while accepting
+     */
+    protected void accept() throws IOException {
+        SocketChannel socket = serverSocket.accept();
+        if (socket == null) {
+            return;
+        }
+        socket.configureBlocking(false);
+        socket.socket().setTcpNoDelay(true);
+        Client client = new Client(socket);
+        socket.register(selector, SelectionKey.OP_READ, client);
+        clients.add(client);
+        clientCount = clients.size();
+    }
+
+    /**
+     * Close connection of client
+     *
+     * @param client Client to close
+     */
+    protected void close(Client client) {
+        clients.remove(client);
+        clientCount = clients.size();
+        try {
+            client.socket.close();
+        } catch (IOException e) {
+            // ignore, connection is gone anyway
+        }
+    }
+
+    /**
+     * Encode queued messages once per format and append them to the client
+     * buffers
+     */
+    protected void distribute() {
+        LogMessage message;
+        long now = System.currentTimeMillis();
+        while ((message = queue.poll()) != null) {
+            queueSize.decrementAndGet();
+            encodeText(message, textRecord);
+            encodeBinary(message, binaryRecord);
+            for (int i = 0, n = clients.size(); i < n; i++) {
+                Client client = clients.get(i);
+                ByteBuffer record = client.binary ? binaryRecord : textRecord;
+                if (client.output.remaining() >= record.limit()) {
+                    client.output.put(record.duplicate());
+                } else {
+                    client.skipped++;
+                    if (client.behindSince == 0) {
+                        client.behindSince = now;
+                    }
+                }
+            }
+        }
+
+        for (int i = clients.size() - 1; i >= 0; i--) {
+            Client client = clients.get(i);
+            try {
+                write(client);
+            } catch (IOException e) {
+                close(client);
+                continue;
+            }
+            if (client.behindSince != 0 && now - client.behindSince > SLOW_CLIENT_TIMEOUT) {
+                viewer.log("Stream server: dropped slow client (" + client.skipped + " frames skipped)", LogMessage.MessageType.ERROR);
+                close(client);
+            }
+        }
+    }
+
+    /**
+     * Write pending output of client, wait for writability if not all fits
+     *
+     * @param client Client
+     * @throws IOException Error while writing
+     */
+    protected void write(Client client) throws IOException {
+        if (client.output.position() == 0) {
+            return;
+        }
+        client.output.flip();
+        client.socket.write(client.output);
+        boolean pending = client.output.hasRemaining();
+        client.output.compact();
+
+        SelectionKey key = client.socket.keyFor(selector);
+        if (pending) {
+            key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+        } else {
+            key.interestOps(SelectionKey.OP_READ);
+            client.behindSince = 0;
+        }
+    }
+
+    /**
+     * Read input of client and handle complete lines
+     *
+     * @param client Client
+     * @throws IOException Error while reading or connection closed
+     */
+    protected void read(Client client) throws IOException {
+        if (client.socket.read(client.input) < 0) {
+            throw new IOException("closed");
+        }
+        ByteBuffer in = client.input;
+        int start = 0;
+        for (int i = 0; i < in.position(); i++) {
+            byte b = in.get(i);
+            if (b == '\r' || b == '\n') {
+                if (i > start) {
+                    handleLine(client, in.array(), start, i - start);
+                }
+                start = i + 1;
+            }
+        }
+        if (start > 0) {
+            in.flip();
+            in.position(start);
+            in.compact();
+        } else if (!in.hasRemaining()) {
+            // line too long, discard
+            in.clear();
+        }
+    }
+
+    /**
+     * Handle one line received from client. Malformed frames are dropped,
+     * the first one of a client is logged.
+     *
+     * @param client Client
+     * @param buf Buffer containing line
+     * @param off Offset of line
+     * @param len Length of line
+     */
+    protected void handleLine(Client client, byte[] buf, int off, int len) {
+        byte c = buf[off];
+        if (len == 1 && c == 'B') {
+            client.binary = true;
+        } else if (len == 1 && c == 'A') {
+            client.binary = false;
+        } else if (c == 't' || c == 'T' || c == 'r' || c == 'R') {
+            if (SlcanParser.parse(buf, off, len, client.frame)) {
+                viewer.send(client.frame.toCANMessage());
+            } else if (client.invalid++ == 0) {
+                viewer.log("Stream server: dropped malformed frame from client", LogMessage.MessageType.INFO);
+            }
+        }
+    }
+
+    /**
+     * Encode message as slcan line with timestamp
+     *
+     * @param message Message
+     * @param record Buffer receiving the record, flipped for reading
+     */
+    protected static void encodeText(LogMessage message, ByteBuffer record) {
+        CANMessage canmsg = message.getCanmsg();
+        byte[] data = canmsg.getData();
+        record.clear();
+        if (canmsg.isExtended()) {
+            record.put((byte) (canmsg.isRtr() ? 'R' : 'T'));
+            putHex(record, canmsg.getId(), 8);
+        } else {
+            record.put((byte) (canmsg.isRtr() ? 'r' : 't'));
+            putHex(record, canmsg.getId(), 3);
+        }
+        putHex(record, data.length, 1);
+        if (!canmsg.isRtr()) {
+            for (int i = 0; i < data.length; i++) {
+                putHex(record, data[i], 2);
+            }
+        }
+        putHex(record, (int) (message.getTimestamp() % 60000), 4);
+        record.put((byte) '\r');
+        record.flip();
+    }
+
+    /**
+     * Encode message as binary record
+     *
+     * @param message Message
+     * @param record Buffer receiving the record, flipped for reading
+     */
+    protected static void encodeBinary(LogMessage message, ByteBuffer record) {
+        CANMessage canmsg = message.getCanmsg();
+        byte[] data = canmsg.getData();
+        int flags = (canmsg.isExtended() ? 1 : 0) | (canmsg.isRtr() ? 2 : 0)
+                | (message.getType() == LogMessage.MessageType.OUT ? 4 : 0);
+        record.clear();
+        record.put((byte) flags);
+        record.put((byte) message.getChannel());
+        record.put((byte) data.length);
+        record.put((byte) 0);
+        record.putInt(canmsg.getId());
+        record.putLong(message.getTimestamp());
+        if (!canmsg.isRtr()) {
+            record.put(data);
+        }
+        record.flip();
+    }
+
+    /**
+     * Put value as given count of hex digits
+     *
+     * @param buffer Buffer
+     * @param value Value
+     * @param digits Count of hex digits
+     */
+    private static void putHex(ByteBuffer buffer, int value, int digits) {
+        for (int shift = (digits - 1) * 4; shift >= 0; shift -= 4) {
+            buffer.put((byte) Character.forDigit((value >> shift) & 0xf, 16));
+        }
+    }
+}
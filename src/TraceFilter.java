@@ -0,0 +1,121 @@
+/*
+ * Part of USBtinViewer - Simple GUI for USBtin - USB to CAN interface
+ * http://www.fischl.de/usbtin
+ *
+ * Copyright (C) 2026  Thomas Fischl
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import de.fischl.usbtin.*;
+
+/**
+ * Filter of a trace view: id ranges, channel and payload pattern. Info and
+ * error messages are shown optionally.
+ *
+ * @author Thomas Fischl
+ */
+public class TraceFilter {
+
+    /** First ids of accepted ranges, empty = all ids */
+    protected final int[] from;
+
+    /** Last ids of accepted ranges */
+    protected final int[] to;
+
+    /** Accepted channel, -1 for all channels */
+    protected final int channel;
+
+    /** Payload pattern, null for any payload */
+    protected final PayloadPattern payload;
+
+    /** True, if info and error messages are accepted */
+    protected final boolean text;
+
+    /** Description */
+    protected final String description;
+
+    /**
+     * Create filter
+     *
+     * @param ids Hex ids and ranges, e.g. "7e0-7ef,100", empty for all ids
+     * @param channel Channel index, -1 for all channels
+     * @param payload Payload pattern, null for any payload
+     * @param text True, to accept info and error messages
+     * @throws NumberFormatException Invalid id
+     */
+    public TraceFilter(String ids, int channel, PayloadPattern payload, boolean text) {
+        String[] ranges = ids.trim().length() == 0 ? new String[0] : ids.split(",");
+        from = new int[ranges.length];
+        to = new int[ranges.length];
+        for (int i = 0; i < ranges.length; i++) {
+            String[] bounds = ranges[i].split("-");
+            if (bounds.length > 2) {
+                throw new NumberFormatException("Invalid id range: " + ranges[i]);
+            }
+            from[i] = Integer.parseInt(bounds[0].trim(), 16);
+            to[i] = bounds.length == 2 ? Integer.parseInt(bounds[1].trim(), 16) : from[i];
+        }
+        this.channel = channel;
+        this.payload = payload;
+        this.text = text;
+
+        StringBuilder sb = new StringBuilder();
+        sb.append(ranges.length == 0 ? "all ids" : "ids " + ids.trim());
+        if (channel >= 0) {
+            sb.append(", CH").append(channel);
+        }
+        if (payload != null) {
+            sb.append(", payload ").append(payload);
+        }
+        description = sb.toString();
+    }
+
+    /**
+     * Check if given message is shown
+     *
+     * @param msg Log message
+     * @return True, if accepted
+     */
+    public boolean accept(LogMessage msg) {
+        CANMessage canmsg = msg.getCanmsg();
+        if (canmsg == null) {
+            return text;
+        }
+        if (channel >= 0 && msg.getChannel() != channel) {
+            return false;
+        }
+        if (from.length > 0) {
+            int id = canmsg.getId();
+            boolean found = false;
+            for (int i = 0; i < from.length && !found; i++) {
+                found = id >= from[i] && id <= to[i];
+            }
+            if (!found) {
+                return false;
+            }
+        }
+        return payload == null || (!canmsg.isRtr() && payload.matches(canmsg.getData().length, CANFrame.pack(canmsg.getData())));
+    }
+
+    /**
+     * Get description
+     *
+     * @return Description
+     */
+    @Override
+    public String toString() {
+        return description;
+    }
+}
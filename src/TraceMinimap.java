@@ -0,0 +1,269 @@
+/*
+ * Part of USBtinViewer - Simple GUI for USBtin - USB to CAN interface
+ * http://www.fischl.de/usbtin
+ *
+ * Copyright (C) 2026  Thomas Fischl
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.Graphics;
+import java.awt.Rectangle;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import javax.swing.JComponent;
+import javax.swing.JScrollPane;
+import javax.swing.JTable;
+import javax.swing.event.ChangeEvent;
+import javax.swing.event.ChangeListener;
+import javax.swing.event.TableModelEvent;
+import javax.swing.event.TableModelListener;
+
+/**
+ * Strip showing frame density and error markers over the whole trace.
+ *
+ * Frames are counted in fixed time buckets as rows get published. If the
+ * trace outgrows the buckets, neighboured buckets are merged and the bucket
+ * width doubles, so each row is counted once and painting is independent of
+ * the trace length. Clicking or dragging jumps to the time under the mouse.
+ *
+ * @author Thomas Fischl
+ */
+public class TraceMinimap extends JComponent implements TableModelListener {
+
+    /** Count of time buckets */
+    protected static final int BUCKETS = 1024;
+
+    /** Initial bucket width in ms */
+    protected static final long INITIAL_WIDTH = 100;
+
+    /** Color of density bars */
+    protected static final Color DENSITY_COLOR = new Color(60, 90, 160);
+
+    /** Trace table */
+    protected final JTable table;
+
+    /** Trace model */
+    protected final LogMessageTableModel model;
+
+    /** Frame counts per bucket */
+    protected final int[] counts = new int[BUCKETS];
+
+    /** Error counts per bucket */
+    protected final int[] errors = new int[BUCKETS];
+
+    /** Time of first bucket, -1 if empty */
+    protected long start = -1;
+
+    /** Bucket width in ms */
+    protected long width = INITIAL_WIDTH;
+
+    /** Count of used buckets */
+    protected int used = 0;
+
+    /**
+     * Create minimap of given trace table
+     *
+     * @param table Trace table with LogMessageTableModel
+     * @param scrollPane Scroll pane of trace table
+     */
+    public TraceMinimap(JTable table, JScrollPane scrollPane) {
+        this.table = table;
+        this.model = (LogMessageTableModel) table.getModel();
+        model.addTableModelListener(this);
+
+        // count rows published before this minimap was created
+        for (int row = 0, n = model.getRowCount(); row < n; row++) {
+            add(model.getTimestamp(row), model.getMessage(row).getType() == LogMessage.MessageType.ERROR);
+        }
+        scrollPane.getViewport().addChangeListener(new ChangeListener() {
+            @Override
+            public void stateChanged(ChangeEvent ce) {
+                repaint();
+            }
+        });
+
+        MouseAdapter mouse = new MouseAdapter() {
+            @Override
+            public void mousePressed(MouseEvent e) {
+                goTo(getTimeAt(e.getY()));
+            }
+
+            @Override
+            public void mouseDragged(MouseEvent e) {
+                goTo(getTimeAt(e.getY()));
+            }
+        };
+        addMouseListener(mouse);
+        addMouseMotionListener(mouse);
+        setPreferredSize(new Dimension(24, 100));
+        setToolTipText("Frame density and errors, click to jump");
+    }
+
+    /**
+     * Count published rows, reset on clear
+     *
+     * @param e Table model event
+     */
+    @Override
+    public void tableChanged(TableModelEvent e) {
+        if (e.getType() == TableModelEvent.DELETE) {
+            java.util.Arrays.fill(counts, 0);
+            java.util.Arrays.fill(errors, 0);
+            start = -1;
+            width = INITIAL_WIDTH;
+            used = 0;
+        } else if (e.getType() == TableModelEvent.INSERT) {
+            for (int row = e.getFirstRow(); row <= e.getLastRow(); row++) {
+                add(model.getTimestamp(row), model.getMessage(row).getType() == LogMessage.MessageType.ERROR);
+            }
+        }
+        repaint();
+    }
+
+    /**
+     * Count one row
+     *
+     * @param timestamp Indexed timestamp of row
+     * @param error True, if row is an error message
+     */
+    protected void add(long timestamp, boolean error) {
+        if (start < 0) {
+            start = timestamp;
+        }
+        long bucket = (timestamp - start) / width;
+        while (bucket >= BUCKETS) {
+            compact();
+            bucket = (timestamp - start) / width;
+        }
+        int b = (int) bucket;
+        counts[b]++;
+        if (error) {
+            errors[b]++;
+        }
+        if (b >= used) {
+            used = b + 1;
+        }
+    }
+
+    /**
+     * Merge neighboured buckets and double bucket width
+     */
+    protected void compact() {
+        for (int i = 0; i < BUCKETS / 2; i++) {
+            counts[i] = counts[2 * i] + counts[2 * i + 1];
+            errors[i] = errors[2 * i] + errors[2 * i + 1];
+        }
+        java.util.Arrays.fill(counts, BUCKETS / 2, BUCKETS, 0);
+        java.util.Arrays.fill(errors, BUCKETS / 2, BUCKETS, 0);
+        used = (used + 1) / 2;
+        width *= 2;
+    }
+
+    /**
+     * Get time at given y position
+     *
+     * @param y Y position
+     * @return Time in ms
+     */
+    protected long getTimeAt(int y) {
+        int height = Math.max(1, getHeight());
+        y = Math.max(0, Math.min(height - 1, y));
+        return start + (long) y * used * width / height;
+    }
+
+    /**
+     * Get y position of given time
+     *
+     * @param time Time in ms
+     * @return Y position
+     */
+    protected int getY(long time) {
+        if (used == 0) {
+            return 0;
+        }
+        return (int) ((time - start) * getHeight() / (used * width));
+    }
+
+    /**
+     * Scroll trace to first row at or after given time and select it
+     *
+     * @param time Time in ms
+     */
+    public void goTo(long time) {
+        int row = model.findRow(time);
+        if (row < 0) {
+            return;
+        }
+        table.setRowSelectionInterval(row, row);
+        table.scrollRectToVisible(table.getCellRect(row, 0, true));
+    }
+
+    /**
+     * Paint density bars, error markers and visible range
+     *
+     * @param g Graphics
+     */
+    @Override
+    protected void paintComponent(Graphics g) {
+        int w = getWidth();
+        int h = getHeight();
+        g.setColor(getBackground() != null ? getBackground() : Color.WHITE);
+        g.fillRect(0, 0, w, h);
+        if (used == 0 || h == 0) {
+            return;
+        }
+
+        // sum buckets per pixel row, scale bars logarithmically to maximum
+        int[] rowCounts = new int[h];
+        boolean[] rowErrors = new boolean[h];
+        int max = 1;
+        for (int y = 0; y < h; y++) {
+            int from = (int) ((long) y * used / h);
+            int to = Math.max(from + 1, (int) ((long) (y + 1) * used / h));
+            for (int b = from; b < to && b < used; b++) {
+                rowCounts[y] += counts[b];
+                rowErrors[y] |= errors[b] > 0;
+            }
+            max = Math.max(max, rowCounts[y]);
+        }
+        double scale = (w - 6) / Math.log(max + 1);
+        for (int y = 0; y < h; y++) {
+            if (rowCounts[y] > 0) {
+                g.setColor(DENSITY_COLOR);
+                g.drawLine(0, y, Math.max(1, (int) (Math.log(rowCounts[y] + 1) * scale)), y);
+            }
+            if (rowErrors[y]) {
+                g.setColor(Color.RED);
+                g.drawLine(w - 5, y, w - 1, y);
+            }
+        }
+
+        // visible range of trace table
+        Rectangle visible = table.getVisibleRect();
+        int first = table.rowAtPoint(visible.getLocation());
+        int last = table.rowAtPoint(new java.awt.Point(0, visible.y + visible.height - 1));
+        if (first >= 0) {
+            if (last < 0) {
+                last = model.getRowCount() - 1;
+            }
+            int y1 = getY(model.getTimestamp(first));
+            int y2 = Math.max(y1 + 2, getY(model.getTimestamp(last)));
+            g.setColor(Color.DARK_GRAY);
+            g.drawRect(0, y1, w - 1, Math.min(y2, h - 1) - y1);
+        }
+    }
+}
@@ -0,0 +1,294 @@
+/*
+ * Part of USBtinViewer - Simple GUI for USBtin - USB to CAN interface
+ * http://www.fischl.de/usbtin
+ *
+ * Copyright (C) 2026  Thomas Fischl
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+/**
+ * Store of all trace messages shared by the trace views.
+ *
+ * Messages are kept in a compressed trace together with a time index and
+ * the repeat counts of the change-only mode. Views register as listeners
+ * and are notified once per added batch, so each view only has to look at
+ * the new rows.
+ *
+ * Not thread safe, used on the Swing event thread.
+ *
+ * @author Thomas Fischl
+ */
+public class TraceStore {
+
+    /**
+     * Listener of store changes
+     */
+    public interface Listener {
+
+        /**
+         * Rows were appended
+         *
+         * @param first First new row
+         * @param last Last new row
+         */
+        public void rowsAppended(int first, int last);
+
+        /**
+         * Repeat counts of stored rows changed
+         *
+         * @param first First changed row
+         * @param last Last changed row
+         */
+        public void rowsRepeated(int first, int last);
+
+        /**
+         * All rows were removed
+         */
+        public void storeCleared();
+    }
+
+    /** Messages, sealed in compressed segments */
+    private final CompressedTrace messages = new CompressedTrace();
+
+    /** Timestamps of all stored messages, non-decreasing (time index) */
+    private long[] timestamps = new long[1024];
+
+    /** Count of suppressed unchanged repeats per stored message */
+    private int[] repeats = new int[1024];
+
+    /** Filter of the change-only mode, null if all messages are stored */
+    private ChangeFilter changeFilter = null;
+
+    /** First row with new repeats, -1 if none */
+    private int repeatFirst = -1;
+
+    /** Last row with new repeats */
+    private int repeatLast = -1;
+
+    /** Registered views */
+    private final ArrayList<Listener> listeners = new ArrayList<Listener>();
+
+    /**
+     * Add listener
+     *
+     * @param listener Listener to add
+     */
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Remove listener
+     *
+     * @param listener Listener to remove
+     */
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Add given message
+     *
+     * @param msg Message to add
+     */
+    public void addMessage(LogMessage msg) {
+        int first = messages.size();
+        store(msg);
+        notifyListeners(first);
+    }
+
+    /**
+     * Add given messages, the views are notified once
+     *
+     * @param msgs Messages to add
+     */
+    public void addMessages(List<LogMessage> msgs) {
+        int first = messages.size();
+        for (int i = 0, n = msgs.size(); i < n; i++) {
+            store(msgs.get(i));
+        }
+        notifyListeners(first);
+    }
+
+    /**
+     * Add given messages bypassing the change filter, the views are notified
+     * once. Used for frames the trace did not keep, e.g. trigger snapshots.
+     *
+     * @param msgs Messages to add
+     */
+    public void addUnfiltered(List<LogMessage> msgs) {
+        int first = messages.size();
+        for (int i = 0, n = msgs.size(); i < n; i++) {
+            index(msgs.get(i));
+            messages.add(msgs.get(i));
+        }
+        notifyListeners(first);
+    }
+
+    /**
+     * Check if change-only mode is active
+     *
+     * @return True, if a change filter is set
+     */
+    public boolean isChangesOnly() {
+        return changeFilter != null;
+    }
+
+    /**
+     * Notify listeners about repeats and rows added since given row
+     *
+     * @param first First new row
+     */
+    private void notifyListeners(int first) {
+        if (repeatFirst >= 0) {
+            for (int i = 0, n = listeners.size(); i < n; i++) {
+                listeners.get(i).rowsRepeated(repeatFirst, repeatLast);
+            }
+            repeatFirst = -1;
+            repeatLast = -1;
+        }
+        int last = messages.size() - 1;
+        if (last >= first) {
+            for (int i = 0, n = listeners.size(); i < n; i++) {
+                listeners.get(i).rowsAppended(first, last);
+            }
+        }
+    }
+
+    /**
+     * Store given message, or count it on its stored predecessor if it is
+     * an unchanged repeat in change-only mode
+     *
+     * @param msg Message to add
+     */
+    private void store(LogMessage msg) {
+        if (changeFilter != null) {
+            int row = changeFilter.check(msg, messages.size());
+            if (row >= 0) {
+                repeats[row]++;
+                repeatFirst = repeatFirst < 0 ? row : Math.min(repeatFirst, row);
+                repeatLast = Math.max(repeatLast, row);
+                return;
+            }
+        }
+        index(msg);
+        messages.add(msg);
+    }
+
+    /**
+     * Add timestamp of given message to the time index. Timestamps of the
+     * merged stream are ascending, a message older than its predecessor is
+     * indexed with the time of the predecessor to keep the index sorted.
+     *
+     * @param msg Message to be added next
+     */
+    private void index(LogMessage msg) {
+        int n = messages.size();
+        if (n == timestamps.length) {
+            long[] grown = new long[n * 2];
+            System.arraycopy(timestamps, 0, grown, 0, n);
+            timestamps = grown;
+            int[] grownRepeats = new int[n * 2];
+            System.arraycopy(repeats, 0, grownRepeats, 0, n);
+            repeats = grownRepeats;
+        }
+        repeats[n] = 0;
+        long timestamp = msg.getTimestamp();
+        timestamps[n] = n > 0 && timestamp < timestamps[n - 1] ? timestamps[n - 1] : timestamp;
+    }
+
+    /**
+     * Switch change-only mode. In this mode a CAN message is only stored if
+     * the filter finds a change, repeats are counted on the stored row.
+     *
+     * @param filter Change filter, null to store all messages
+     */
+    public void setChangeFilter(ChangeFilter filter) {
+        this.changeFilter = filter;
+    }
+
+    /**
+     * Get message of given row
+     *
+     * @param row Row
+     * @return Log message
+     */
+    public LogMessage get(int row) {
+        return messages.get(row);
+    }
+
+    /**
+     * Get count of stored messages
+     *
+     * @return Count of rows
+     */
+    public int size() {
+        return messages.size();
+    }
+
+    /**
+     * Get indexed timestamp of given row
+     *
+     * @param row Row
+     * @return Timestamp in milliseconds
+     */
+    public long getTimestamp(int row) {
+        return timestamps[row];
+    }
+
+    /**
+     * Get count of unchanged repeats suppressed after given row
+     *
+     * @param row Row
+     * @return Count of repeats
+     */
+    public int getRepeats(int row) {
+        return repeats[row];
+    }
+
+    /**
+     * Prepare parallel search for CAN messages with matching payload. The
+     * returned task may run on any thread.
+     *
+     * @param pattern Payload pattern
+     * @param id CAN id, -1 for any id
+     * @param limit Maximum count of hits
+     * @return Task returning the ascending rows of matching messages
+     */
+    public Callable<int[]> search(PayloadPattern pattern, int id, int limit) {
+        return messages.search(pattern, id, limit);
+    }
+
+    /**
+     * Remove all messages
+     */
+    public void clear() {
+        messages.clear();
+        timestamps = new long[1024];
+        repeats = new int[1024];
+        repeatFirst = -1;
+        repeatLast = -1;
+        if (changeFilter != null) {
+            changeFilter.clear();
+        }
+        for (int i = 0, n = listeners.size(); i < n; i++) {
+            listeners.get(i).storeCleared();
+        }
+    }
+}
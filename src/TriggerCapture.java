@@ -0,0 +1,365 @@
+/*
+ * Part of USBtinViewer - Simple GUI for USBtin - USB to CAN interface
+ * http://www.fischl.de/usbtin
+ *
+ * Copyright (C) 2026  Thomas Fischl
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import de.fischl.usbtin.*;
+import java.io.File;
+import java.io.IOException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+
+/**
+ * Oscilloscope like trigger capture.
+ *
+ * The last frames are kept in a preallocated ring buffer of primitives. When
+ * the trigger condition matches, the pre-trigger frames plus the following
+ * post-trigger frames are saved to a capture file and the trigger re-arms.
+ * Per frame only the ring write and the condition check are done. If the
+ * trace does not keep all frames (statistics only or change-only mode), the
+ * saved frames are also appended to the trace.
+ *
+ * The condition triggers on a frame with (id & idMask) == idValue and
+ * (payload & dataMask) == dataValue (if a mask is set), on an error message
+ * (if enabled) or if the watched frame was not seen for the missing timeout
+ * (if set). A failed save disarms the trigger, so its error message does not
+ * trigger again.
+ *
+ * @author Thomas Fischl
+ */
+public class TriggerCapture implements MessageSink {
+
+    /** Viewer used for logging and timestamps */
+    protected final USBtinViewer viewer;
+
+    /** Directory receiving the capture files */
+    protected final File directory;
+
+    /** Count of frames kept before the trigger */
+    protected final int preFrames;
+
+    /** Maximum age (ms) of frames kept before the trigger, 0 for no limit */
+    protected final long preTime;
+
+    /** Count of frames captured after the trigger */
+    protected final int postFrames;
+
+    /** Id mask of frame condition */
+    protected int idMask = 0;
+
+    /** Id value of frame condition */
+    protected int idValue = 0;
+
+    /** Payload mask of frame condition */
+    protected long dataMask = 0;
+
+    /** Payload value of frame condition */
+    protected long dataValue = 0;
+
+    /** True, if the frame condition is used */
+    protected boolean frameCondition = false;
+
+    /** True, if error messages trigger */
+    protected boolean onError = false;
+
+    /** Id of frame watched for missing timeout */
+    protected int watchedId = 0;
+
+    /** Missing timeout (ms) of watched frame, 0 if not used */
+    protected long missingTimeout = 0;
+
+    /** Ring buffer: timestamps */
+    private final long[] timestamps;
+
+    /** Ring buffer: ids */
+    private final int[] ids;
+
+    /** Ring buffer: flags */
+    private final byte[] flags;
+
+    /** Ring buffer: channels */
+    private final byte[] channels;
+
+    /** Ring buffer: dlcs */
+    private final byte[] dlcs;
+
+    /** Ring buffer: packed payloads */
+    private final long[] data;
+
+    /** Next write position in ring */
+    private int head = 0;
+
+    /** Count of frames in ring */
+    private int size = 0;
+
+    /** True, while capturing post-trigger frames */
+    private boolean triggered = false;
+
+    /** Count of post-trigger frames still to capture */
+    private int postRemaining = 0;
+
+    /** Count of pre-trigger frames of current trigger */
+    private int preCount = 0;
+
+    /** Timestamp of current trigger */
+    private long triggerTime = 0;
+
+    /** Reason of current trigger */
+    private String triggerReason;
+
+    /** Count of triggers */
+    private int triggerCount = 0;
+
+    /** True, after saving a capture failed; set by the writer thread */
+    private volatile boolean disarmed = false;
+
+    /** Last timestamp of watched frame, -1 if not seen yet */
+    private long lastWatched = -1;
+
+    /** True, if missing watched frame already triggered */
+    private boolean watchedMissing = false;
+
+    /**
+     * Construct trigger capture
+     *
+     * @param viewer Viewer used for logging and timestamps
+     * @param directory Directory receiving the capture files
+     * @param preFrames Count of frames kept before the trigger
+     * @param preTime Maximum age (ms) of frames kept before the trigger, 0 for no limit
+     * @param postFrames Count of frames captured after the trigger
+     */
+    public TriggerCapture(USBtinViewer viewer, File directory, int preFrames, long preTime, int postFrames) {
+        this.viewer = viewer;
+        this.directory = directory;
+        this.preFrames = preFrames;
+        this.preTime = preTime;
+        this.postFrames = postFrames;
+
+        int capacity = preFrames + 1 + postFrames;
+        timestamps = new long[capacity];
+        ids = new int[capacity];
+        flags = new byte[capacity];
+        channels = new byte[capacity];
+        dlcs = new byte[capacity];
+        data = new long[capacity];
+    }
+
+    /**
+     * Set frame condition
+     *
+     * @param idMask Id mask
+     * @param idValue Id value
+     * @param dataMask Payload mask (packed)
+     * @param dataValue Payload value (packed)
+     */
+    public void setFrameCondition(int idMask, int idValue, long dataMask, long dataValue) {
+        this.idMask = idMask;
+        this.idValue = idValue & idMask;
+        this.dataMask = dataMask;
+        this.dataValue = dataValue & dataMask;
+        this.frameCondition = idMask != 0 || dataMask != 0;
+    }
+
+    /**
+     * Trigger on frame with given id not seen for given time
+     *
+     * @param id Watched id
+     * @param timeout Timeout in ms, 0 to disable
+     */
+    public void setMissingCondition(int id, long timeout) {
+        this.watchedId = id;
+        this.missingTimeout = timeout;
+    }
+
+    /**
+     * Trigger on error messages
+     *
+     * @param onError True, to trigger on errors
+     */
+    public void setErrorCondition(boolean onError) {
+        this.onError = onError;
+    }
+
+    /**
+     * Get count of triggers
+     *
+     * @return Count of triggers
+     */
+    public int getTriggerCount() {
+        return triggerCount;
+    }
+
+    /**
+     * Handle next message of merged stream
+     *
+     * @param message Log message
+     */
+    @Override
+    public void receive(LogMessage message) {
+        CANMessage canmsg = message.getCanmsg();
+        if (canmsg == null) {
+            if (onError && !triggered && message.getType() == LogMessage.MessageType.ERROR) {
+                fire(message.getTimestamp(), "error: " + message.getMessage(), false);
+            }
+            return;
+        }
+
+        long timestamp = message.getTimestamp();
+        int id = canmsg.getId();
+        byte[] bytes = canmsg.getData();
+        long payload = CANFrame.pack(bytes);
+
+        // ring buffer write
+        timestamps[head] = timestamp;
+        ids[head] = id;
+        flags[head] = (byte) CaptureFile.getFlags(message);
+        channels[head] = (byte) message.getChannel();
+        dlcs[head] = (byte) bytes.length;
+        data[head] = payload;
+        head = head + 1 == timestamps.length ? 0 : head + 1;
+        if (size < timestamps.length) {
+            size++;
+        }
+
+        if (triggered) {
+            if (--postRemaining <= 0) {
+                snapshot();
+            }
+            return;
+        }
+
+        // condition check
+        if (frameCondition && (id & idMask) == idValue && (payload & dataMask) == dataValue) {
+            fire(timestamp, String.format("frame %xh", id), true);
+        } else if (missingTimeout > 0) {
+            if (id == watchedId) {
+                if (lastWatched >= 0 && !watchedMissing && timestamp - lastWatched > missingTimeout) {
+                    fire(timestamp, String.format("%xh late (%d ms)", id, timestamp - lastWatched), true);
+                }
+                lastWatched = timestamp;
+                watchedMissing = false;
+            } else if (lastWatched >= 0 && !watchedMissing && timestamp - lastWatched > missingTimeout) {
+                watchedMissing = true;
+                fire(timestamp, String.format("%xh missing", watchedId), false);
+            }
+        }
+    }
+
+    /**
+     * Check missing timeout on idle bus
+     */
+    @Override
+    public void tick() {
+        if (missingTimeout > 0 && !triggered && lastWatched >= 0 && !watchedMissing
+                && viewer.getTimestamp() - lastWatched > missingTimeout) {
+            watchedMissing = true;
+            fire(viewer.getTimestamp(), String.format("%xh missing", watchedId), false);
+        }
+    }
+
+    /**
+     * Trigger
+     *
+     * @param timestamp Trigger time
+     * @param reason Description of trigger
+     * @param frameInRing True, if the trigger frame is the last ring entry
+     */
+    protected void fire(long timestamp, String reason, boolean frameInRing) {
+        if (disarmed) {
+            return;
+        }
+        triggered = true;
+        triggerTime = timestamp;
+        triggerReason = reason;
+        preCount = Math.min(size, preFrames + (frameInRing ? 1 : 0));
+        postRemaining = postFrames;
+        if (postRemaining == 0) {
+            snapshot();
+        }
+    }
+
+    /**
+     * Copy pre- and post-trigger frames, save them on a background thread
+     * and re-arm
+     */
+    protected void snapshot() {
+        int count = preCount + postFrames - Math.max(0, postRemaining);
+        int capacity = timestamps.length;
+        int start = (head - count + capacity) % capacity;
+
+        // skip pre-trigger frames older than preTime
+        int skip = 0;
+        while (preTime > 0 && skip < preCount && timestamps[(start + skip) % capacity] < triggerTime - preTime) {
+            skip++;
+        }
+
+        final int n = count - skip;
+        final long[] t = new long[n];
+        final int[] i = new int[n];
+        final byte[] f = new byte[n];
+        final byte[] c = new byte[n];
+        final byte[] l = new byte[n];
+        final long[] d = new long[n];
+        for (int k = 0; k < n; k++) {
+            int pos = (start + skip + k) % capacity;
+            t[k] = timestamps[pos];
+            i[k] = ids[pos];
+            f[k] = flags[pos];
+            c[k] = channels[pos];
+            l[k] = dlcs[pos];
+            d[k] = data[pos];
+        }
+
+        triggerCount++;
+        final int number = triggerCount;
+        final String reason = triggerReason;
+        final long time = triggerTime;
+
+        // statistics only and change-only trace lack these frames, append them
+        if (!viewer.isTraceComplete()) {
+            ArrayList<LogMessage> rows = new ArrayList<LogMessage>(n + 1);
+            rows.add(new LogMessage(null, "Trigger #" + number + " (" + reason + ") at " + time + " ms: " + n + " frames", LogMessage.MessageType.INFO, n > 0 ? t[0] : time));
+            for (int k = 0; k < n; k++) {
+                rows.add(CaptureFile.toMessage(t[k], i[k], f[k], c[k], l[k], d[k]));
+            }
+            viewer.addToTrace(rows);
+        }
+        final File file = new File(directory, "trigger-" + new SimpleDateFormat("yyyyMMdd-HHmmss").format(new Date()) + "-" + number + CaptureFile.EXTENSION);
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    CaptureFile.Writer writer = new CaptureFile.Writer(file);
+                    for (int k = 0; k < n; k++) {
+                        writer.write(t[k], i[k], f[k], c[k], l[k], d[k]);
+                    }
+                    writer.close();
+                    viewer.log("Trigger #" + number + " (" + reason + ") at " + time + " ms: " + n + " frames saved to " + file.getName(), LogMessage.MessageType.INFO);
+                } catch (IOException e) {
+                    // disarm before logging, the error must not trigger again
+                    disarmed = true;
+                    viewer.log("Trigger #" + number + ": " + e.getMessage() + ", trigger disarmed", LogMessage.MessageType.ERROR);
+                }
+            }
+        }, "Trigger writer").start();
+
+        // re-arm
+        triggered = false;
+    }
+}
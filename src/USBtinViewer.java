@@ -3,8 +3,8 @@
  * http://www.fischl.de/usbtin
  *
  * Notes:
- * - The timestamp is generated in the application on the host, the hardware
- *   timestamping is currently not used!
+ * - The timestamp is generated in the application on the host, unless device
+ *   timestamps are enabled (menu Channels, fast receive parser only)
  * - Disable "Follow" on high-loaded busses!
  *
  * Copyright (C) 2014-2016  Thomas Fischl 
@@ -26,6 +26,8 @@
 import de.fischl.usbtin.*;
 
 import javax.swing.*;
+import javax.swing.event.ChangeEvent;
+import javax.swing.event.ChangeListener;
 import javax.swing.event.DocumentEvent;
 import javax.swing.event.DocumentListener;
 import javax.swing.table.DefaultTableCellRenderer;
@@ -36,6 +38,9 @@ import java.awt.datatransfer.StringSelection;
 import java.awt.event.ActionEvent;
 import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import static java.awt.Toolkit.getDefaultToolkit;
 import static java.lang.System.getProperty;
@@ -45,13 +50,73 @@ import static java.lang.System.getProperty;
  * 
  * @author Thomas Fischl
  */
-public class USBtinViewer extends javax.swing.JFrame implements CANMessageListener {
+public class USBtinViewer extends javax.swing.JFrame {
 
     /** Version string */
     protected final String version = "1.3.1";
 
+    /** Maximum count of payload search hits */
+    protected static final int MAX_HITS = 1000000;
+
     /** USBtin device */
-    protected USBtin usbtin = new USBtin();
+    protected USBtin usbtin = new FastUSBtin();
+
+    /** True, if channels use the allocation free parser (FastUSBtin) */
+    protected boolean fastParser = true;
+
+    /** True, if channels opened with the fast parser use device timestamps */
+    protected boolean deviceTimestamps = false;
+
+    /** Opened CAN channels, index 0 is the main channel; send reads it from any thread */
+    protected final CopyOnWriteArrayList<CANChannel> channels = new CopyOnWriteArrayList<CANChannel>();
+
+    /** Monitor tables of additional channels */
+    protected ArrayList<JTable> channelMonitorTables = new ArrayList<JTable>();
+
+    /** Rate history repaint timers of the monitor tables */
+    protected HashMap<JTable, javax.swing.Timer> rateTimers = new HashMap<JTable, javax.swing.Timer>();
+
+    /** Running gateway between two channels, null if none */
+    protected CANBridge bridge;
+
+    /** Running TCP stream server, null if none */
+    protected volatile StreamServer streamServer;
+
+    /** Running recorder, null if none */
+    protected CaptureRecorder recorder;
+
+    /** Armed trigger capture, null if none */
+    protected TriggerCapture triggerCapture;
+
+    /** ISO-TP reassembler, null if not configured */
+    protected IsoTpReassembler isoTp;
+
+    /** Table of reassembled ISO-TP PDUs */
+    protected JTable isoTpTable;
+
+    /** Response latency measurement, null if not configured */
+    protected ResponseLatency responseLatency;
+
+    /** Table of response latencies */
+    protected JTable latencyTable;
+
+    /** Cycle time watchdog, null if not running */
+    protected volatile CycleWatchdog cycleWatchdog;
+
+    /** Capture playback, null if not started */
+    protected CapturePlayback playback;
+
+    /** J1939 transport reassembler, null if J1939 mode is off */
+    protected J1939Transport j1939;
+
+    /** Table of reassembled J1939 transfers */
+    protected JTable j1939Table;
+
+    /** Pipeline running frame processor plugins */
+    protected PluginPipeline plugins;
+
+    /** Density minimap beside the trace */
+    protected TraceMinimap minimap;
     
     /** Input fields containing payload data */    
     protected JTextField[] msgDataFields;
@@ -62,153 +127,1653 @@ public class USBtinViewer extends javax.swing.JFrame implements CANMessageListen
     /** Start timestamp in system-milliseconds */
     protected long baseTimestamp = 0;
 
+    /** Dispatcher moving log messages to the views */
+    protected MessageDispatcher dispatcher;
+
+    /**
+     * Creates new form and initialize it
+     */
+    public USBtinViewer() {
+        
+        // init view components
+        initComponents();
+        setTitle(getTitle() + " " + version);
+        setIconImage(new ImageIcon(getClass().getResource("/res/icons/usbtinviewer.png")).getImage());
+        openmodeComboBox.setSelectedItem(USBtin.OpenMode.ACTIVE);
+        
+        // initialize message payload input fields and add listeners
+        msgDataFields = new JTextField[]{msgData0, msgData1, msgData2, msgData3, msgData4, msgData5, msgData6, msgData7};
+        DocumentListener msgListener = new DocumentListener() {
+            @Override
+            public void insertUpdate(DocumentEvent de) {
+                msgFields2msgString();
+            }
+
+            @Override
+            public void removeUpdate(DocumentEvent de) {
+                msgFields2msgString();
+            }
+
+            @Override
+            public void changedUpdate(DocumentEvent de) {
+                msgFields2msgString();
+            }
+        };
+        msgId.getDocument().addDocumentListener(msgListener);
+        for (JTextField msgDataField : msgDataFields) {
+            msgDataField.getDocument().addDocumentListener(msgListener);
+        }
+
+        // add listener to message string input field
+        sendMessage.getDocument().addDocumentListener(new DocumentListener() {
+
+            @Override
+            public void insertUpdate(DocumentEvent de) {
+                msgString2msgFields();
+            }
+
+            @Override
+            public void removeUpdate(DocumentEvent de) {
+                msgString2msgFields();
+            }
+
+            @Override
+            public void changedUpdate(DocumentEvent de) {
+                msgString2msgFields();
+            }
+        });
+
+        logTable.addMouseListener(new MouseAdapter() {
+            private boolean isIoType(LogMessage message) {
+                LogMessage.MessageType type = message.getType();
+                return (type == LogMessage.MessageType.OUT ||
+                        type == LogMessage.MessageType.IN);
+            }
+
+            // "Popup menus are triggered differently on different systems.
+            // Therefore, isPopupTrigger should be checked in both
+            // mousePressed and mouseReleased"
+            @Override
+            public void mousePressed(MouseEvent e) {
+                if (e.isPopupTrigger()) {
+                    mouseReleased(e);
+                }
+            }
+
+            @Override
+            public void mouseReleased(MouseEvent e) {
+                if (e.isPopupTrigger()) {
+                    final LogMessageTableModel model = (LogMessageTableModel) logTable.getModel();
+                    JPopupMenu popup = new JPopupMenu();
+
+                    popup.add(new AbstractAction("Resend") {
+                        @Override
+                        public void actionPerformed(ActionEvent e) {
+                            for (int r : logTable.getSelectedRows()) {
+                                LogMessage message = model.getMessage(r);
+                                if (isIoType(message)) {
+                                    send(message.getCanmsg(), message.getChannel());
+                                }
+                            }
+                        }
+                    });
+
+                    popup.add(new AbstractAction("Copy") {
+                        @Override
+                        public void actionPerformed(ActionEvent e) {
+                            StringBuilder builder = new StringBuilder();
+                            String separator = getProperty("line.separator");
+
+                            for (int r : logTable.getSelectedRows()) {
+                                LogMessage message = model.getMessage(r);
+                                if (isIoType(message)) {
+                                    builder.append(message.getCanmsg().toString());
+                                    builder.append(separator);
+                                }
+                            }
+
+                            getDefaultToolkit()
+                                    .getSystemClipboard()
+                                    .setContents(new StringSelection(builder.toString()), null);
+                        }
+                    });
+
+                    popup.show(e.getComponent(), e.getX(), e.getY());
+                }
+            }
+        });
+
+        // configure table columns
+        configureTraceTable(logTable);
+
+        // density minimap beside trace, jumping to a time stops following
+        minimap = new TraceMinimap(logTable, logScrollPane);
+        minimap.addMouseListener(new MouseAdapter() {
+            @Override
+            public void mousePressed(MouseEvent e) {
+                followButton.setSelected(false);
+            }
+        });
+        JPanel tracePanel = new JPanel(new java.awt.BorderLayout());
+        tracePanel.add(logScrollPane, java.awt.BorderLayout.CENTER);
+        tracePanel.add(minimap, java.awt.BorderLayout.EAST);
+        mainTabbedPane.setComponentAt(0, tracePanel);
+
+        // monitor table
+        configureMonitorTable(monitorTable);
+        
+        // main channel
+        channels.add(new CANChannel(0, usbtin, this));
+
+        // menu bar
+        JMenuBar menuBar = new JMenuBar();
+        JMenu fileMenu = new JMenu("File");
+        fileMenu.add(new AbstractAction("Record...") {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                startRecording();
+            }
+        });
+        fileMenu.add(new AbstractAction("Stop recording") {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                if (recorder != null) {
+                    dispatcher.removeSink(recorder);
+                    recorder.stop();
+                    recorder = null;
+                }
+            }
+        });
+        fileMenu.add(new AbstractAction("Play back capture...") {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                startPlayback();
+            }
+        });
+        fileMenu.add(new AbstractAction("Stop playback") {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                if (playback != null) {
+                    playback.stop();
+                    playback = null;
+                }
+            }
+        });
+        fileMenu.addSeparator();
+        fileMenu.add(new AbstractAction("Summarize file...") {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                summarizeFile();
+            }
+        });
+        fileMenu.add(new AbstractAction("Compare captures...") {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                compareCaptures();
+            }
+        });
+        fileMenu.add(new AbstractAction("Bit activity of file...") {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                analyzeBitActivity();
+            }
+        });
+        menuBar.add(fileMenu);
+        JMenu viewMenu = new JMenu("View");
+        JMenuItem goToItem = new JMenuItem(new AbstractAction("Go to time...") {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                goToTime();
+            }
+        });
+        goToItem.setAccelerator(javax.swing.KeyStroke.getKeyStroke(java.awt.event.KeyEvent.VK_G, java.awt.event.InputEvent.CTRL_DOWN_MASK));
+        viewMenu.add(goToItem);
+        JMenuItem findItem = new JMenuItem(new AbstractAction("Find payload...") {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                findPayload();
+            }
+        });
+        findItem.setAccelerator(javax.swing.KeyStroke.getKeyStroke(java.awt.event.KeyEvent.VK_F, java.awt.event.InputEvent.CTRL_DOWN_MASK));
+        viewMenu.add(findItem);
+        viewMenu.add(new AbstractAction("New trace window...") {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                openTraceWindow();
+            }
+        });
+        viewMenu.addSeparator();
+        final JCheckBoxMenuItem statisticsItem = new JCheckBoxMenuItem("Statistics only (no trace)");
+        statisticsItem.addActionListener(new java.awt.event.ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                setStatisticsOnly(statisticsItem.isSelected());
+            }
+        });
+        viewMenu.add(statisticsItem);
+        final JCheckBoxMenuItem changesItem = new JCheckBoxMenuItem("Changes only (collapse repeats)...");
+        changesItem.addActionListener(new java.awt.event.ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                changesItem.setSelected(setChangesOnly(changesItem.isSelected()));
+            }
+        });
+        viewMenu.add(changesItem);
+        final JCheckBoxMenuItem j1939Item = new JCheckBoxMenuItem("J1939 (PGN/SA monitor, TP reassembly)");
+        j1939Item.addActionListener(new java.awt.event.ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                setJ1939(j1939Item.isSelected());
+            }
+        });
+        viewMenu.add(j1939Item);
+        menuBar.add(viewMenu);
+        JMenu channelMenu = new JMenu("Channels");
+        channelMenu.add(new AbstractAction("Add channel...") {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                addChannel();
+            }
+        });
+        channelMenu.add(new AbstractAction("Remove channel...") {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                removeChannel();
+            }
+        });
+        channelMenu.addSeparator();
+        final JCheckBoxMenuItem fastParserItem = new JCheckBoxMenuItem("Fast receive parser", fastParser);
+        fastParserItem.addActionListener(new java.awt.event.ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                fastParser = fastParserItem.isSelected();
+            }
+        });
+        channelMenu.add(fastParserItem);
+        final JCheckBoxMenuItem deviceTimestampsItem = new JCheckBoxMenuItem("Device timestamps", deviceTimestamps);
+        deviceTimestampsItem.addActionListener(new java.awt.event.ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                deviceTimestamps = deviceTimestampsItem.isSelected();
+            }
+        });
+        channelMenu.add(deviceTimestampsItem);
+        menuBar.add(channelMenu);
+        JMenu toolsMenu = new JMenu("Tools");
+        toolsMenu.add(new AbstractAction("Start bridge...") {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                startBridge();
+            }
+        });
+        toolsMenu.add(new AbstractAction("Stop bridge") {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                stopBridge();
+            }
+        });
+        toolsMenu.add(new AbstractAction("Bridge statistics") {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                JOptionPane.showMessageDialog(USBtinViewer.this, bridge != null ? bridge.getReport() : "Bridge not running", "Bridge statistics", JOptionPane.INFORMATION_MESSAGE);
+            }
+        });
+        toolsMenu.addSeparator();
+        toolsMenu.add(new AbstractAction("Trigger capture...") {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                startTriggerCapture();
+            }
+        });
+        toolsMenu.add(new AbstractAction("Stop trigger capture") {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                if (triggerCapture != null) {
+                    dispatcher.removeSink(triggerCapture);
+                    log("Trigger capture stopped after " + triggerCapture.getTriggerCount() + " triggers", LogMessage.MessageType.INFO);
+                    triggerCapture = null;
+                }
+            }
+        });
+        toolsMenu.addSeparator();
+        toolsMenu.add(new AbstractAction("ISO-TP reassembly...") {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                startIsoTp();
+            }
+        });
+        toolsMenu.add(new AbstractAction("Response latency...") {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                startResponseLatency();
+            }
+        });
+        toolsMenu.add(new AbstractAction("Cycle watchdog...") {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                startCycleWatchdog();
+            }
+        });
+        toolsMenu.add(new AbstractAction("Stop cycle watchdog") {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                if (cycleWatchdog != null) {
+                    cycleWatchdog.stop();
+                    log("Watchdog stopped: " + cycleWatchdog.getReport(), LogMessage.MessageType.INFO);
+                    cycleWatchdog = null;
+                }
+            }
+        });
+        toolsMenu.add(new AbstractAction("Bit activity") {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                BitActivity activity = new BitActivity();
+                dispatcher.addSink(activity);
+                showBitActivity("Bit activity (live)", activity, activity);
+            }
+        });
+        toolsMenu.add(new AbstractAction("Loopback self-test...") {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                startLoopbackTest();
+            }
+        });
+        toolsMenu.addSeparator();
+        toolsMenu.add(new AbstractAction("Start stream server...") {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                startStreamServer();
+            }
+        });
+        toolsMenu.add(new AbstractAction("Stop stream server") {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                if (streamServer != null) {
+                    streamServer.stop();
+                    streamServer = null;
+                    log("Stream server stopped", LogMessage.MessageType.INFO);
+                }
+            }
+        });
+        menuBar.add(toolsMenu);
+        JMenu pluginMenu = new JMenu("Plugins");
+        pluginMenu.add(new AbstractAction("Load plugin jar...") {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                loadPlugins();
+            }
+        });
+        pluginMenu.add(new AbstractAction("Unload all plugins") {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                plugins.stopAll();
+                log("Plugins unloaded", LogMessage.MessageType.INFO);
+            }
+        });
+        pluginMenu.add(new AbstractAction("Plugin statistics") {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                showReport("Plugin statistics", plugins.getReport());
+            }
+        });
+        menuBar.add(pluginMenu);
+        setJMenuBar(menuBar);
+        
+        // trigger initial sync between message string and message input fields
+        msgString2msgFields();
+
+        // init dispatcher, follow trace and show hidden rows on overload
+        dispatcher = new MessageDispatcher((LogMessageTableModel) logTable.getModel(), (MonitorMessageTableModel) monitorTable.getModel());
+        dispatcher.addChangeListener(new ChangeListener() {
+            @Override
+            public void stateChanged(ChangeEvent ce) {
+                LogMessageTableModel tm = (LogMessageTableModel) logTable.getModel();
+                int hidden = tm.getHiddenCount();
+                if (hidden > 0) {
+                    mainTabbedPane.setTitleAt(0, "Trace (" + hidden + " frames hidden)");
+                } else {
+                    mainTabbedPane.setTitleAt(0, "Trace");
+                }
+                if (followButton.isSelected() && tm.getRowCount() > 0) {
+                    logTable.scrollRectToVisible(logTable.getCellRect(tm.getRowCount() - 1, 0, true));
+                }
+            }
+        });
+        dispatcher.start();
+
+        // frame processor plugins of folder plugins/
+        plugins = new PluginPipeline(this);
+        dispatcher.addSink(plugins);
+        java.io.File pluginDirectory = new java.io.File("plugins");
+        if (pluginDirectory.isDirectory()) {
+            try {
+                plugins.loadDirectory(pluginDirectory);
+            } catch (java.io.IOException e) {
+                log("Plugins: " + e.getMessage(), LogMessage.MessageType.ERROR);
+            }
+        }
+    }
+
+    /**
+     * Ask for plugin jar and start its frame processors
+     */
+    protected void loadPlugins() {
+        JFileChooser chooser = new JFileChooser(new java.io.File("plugins"));
+        chooser.setFileFilter(new javax.swing.filechooser.FileNameExtensionFilter("Plugin jar", "jar"));
+        if (chooser.showOpenDialog(this) != JFileChooser.APPROVE_OPTION) {
+            return;
+        }
+        try {
+            if (plugins.load(chooser.getSelectedFile()) == 0) {
+                log("No frame processor found in " + chooser.getSelectedFile().getName(), LogMessage.MessageType.ERROR);
+            }
+        } catch (java.io.IOException e) {
+            log("Plugins: " + e.getMessage(), LogMessage.MessageType.ERROR);
+        }
+    }
+
+    /**
+     * Create USBtin device for a new channel
+     * 
+     * @return FastUSBtin, or FifoUSBtin if the fast parser is disabled
+     */
+    protected USBtin createUSBtin() {
+        if (!fastParser) {
+            return new FifoUSBtin();
+        }
+        FastUSBtin fast = new FastUSBtin();
+        fast.setTimestamping(deviceTimestamps);
+        return fast;
+    }
+
+    /**
+     * Set column widths and alignment of given trace table
+     * 
+     * @param table Trace table
+     */
+    protected void configureTraceTable(JTable table) {
+        TableColumnModel columnModel = table.getColumnModel();
+        columnModel.getColumn(0).setPreferredWidth(100);
+        columnModel.getColumn(1).setPreferredWidth(40);
+        columnModel.getColumn(2).setPreferredWidth(30);
+        columnModel.getColumn(3).setPreferredWidth(90);
+        columnModel.getColumn(4).setPreferredWidth(40);
+        columnModel.getColumn(5).setPreferredWidth(340);
+        
+        // set alignment of id column
+        DefaultTableCellRenderer rightRenderer = new DefaultTableCellRenderer();
+        rightRenderer.setHorizontalAlignment(DefaultTableCellRenderer.RIGHT);
+        columnModel.getColumn(3).setCellRenderer(rightRenderer);
+
+        // set alignment of channel and length column
+        DefaultTableCellRenderer centerRenderer = new DefaultTableCellRenderer();
+        centerRenderer.setHorizontalAlignment(DefaultTableCellRenderer.CENTER);
+        columnModel.getColumn(2).setCellRenderer(centerRenderer);
+        columnModel.getColumn(4).setCellRenderer(centerRenderer);
+    }
+
+    /**
+     * Set column widths and alignment of given monitor table
+     * 
+     * @param table Monitor table
+     */
+    protected void configureMonitorTable(JTable table) {
+        DefaultTableCellRenderer rightRenderer = new DefaultTableCellRenderer();
+        rightRenderer.setHorizontalAlignment(DefaultTableCellRenderer.RIGHT);
+        DefaultTableCellRenderer centerRenderer = new DefaultTableCellRenderer();
+        centerRenderer.setHorizontalAlignment(DefaultTableCellRenderer.CENTER);
+
+        TableColumnModel columnModel = table.getColumnModel();
+        columnModel.getColumn(0).setPreferredWidth(50);
+        columnModel.getColumn(1).setPreferredWidth(50);
+        columnModel.getColumn(2).setPreferredWidth(40);
+        columnModel.getColumn(3).setPreferredWidth(110);
+        columnModel.getColumn(4).setPreferredWidth(40);
+        columnModel.getColumn(5).setPreferredWidth(300);        
+        columnModel.getColumn(6).setPreferredWidth(70);
+        columnModel.getColumn(7).setPreferredWidth(130);
+        columnModel.getColumn(3).setCellRenderer(rightRenderer);
+        columnModel.getColumn(4).setCellRenderer(centerRenderer);
+        columnModel.getColumn(6).setCellRenderer(rightRenderer);
+        columnModel.getColumn(7).setCellRenderer(new RateSparkline());
+        for (int i = 8; i < 12; i++) {
+            columnModel.getColumn(i).setPreferredWidth(50);
+            columnModel.getColumn(i).setCellRenderer(rightRenderer);
+        }
+
+        // sort by period, count, id or last seen on header click, rate header switches resolution
+        final JTable monitor = table;
+        final MonitorMessageTableModel model = (MonitorMessageTableModel) table.getModel();
+        table.getTableHeader().addMouseListener(new MouseAdapter() {
+            @Override
+            public void mouseClicked(MouseEvent e) {
+                int column = monitor.convertColumnIndexToModel(monitor.columnAtPoint(e.getPoint()));
+                if (column == MonitorMessageTableModel.SORT_PERIOD || column == MonitorMessageTableModel.SORT_COUNT
+                        || column == MonitorMessageTableModel.SORT_ID || column == MonitorMessageTableModel.SORT_LAST) {
+                    model.sortBy(column);
+                    updateMonitorHeader(monitor);
+                } else if (column == MonitorMessageTableModel.RATE_COLUMN) {
+                    model.nextRateLevel();
+                    updateMonitorHeader(monitor);
+                    monitor.repaint();
+                }
+            }
+        });
+        updateMonitorHeader(table);
+
+        // rate histories move on without new frames, repaint their visible cells
+        javax.swing.Timer rateTimer = new javax.swing.Timer((int) RateHistory.WIDTHS[0], new java.awt.event.ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                model.setTime(getTimestamp());
+                int column = monitor.convertColumnIndexToView(MonitorMessageTableModel.RATE_COLUMN);
+                if (monitor.isShowing() && column >= 0 && model.getRowCount() > 0) {
+                    java.awt.Rectangle cells = monitor.getCellRect(0, column, false).union(monitor.getCellRect(model.getRowCount() - 1, column, false));
+                    monitor.repaint(cells.intersection(monitor.getVisibleRect()));
+                }
+            }
+        });
+        rateTimer.start();
+        rateTimers.put(table, rateTimer);
+    }
+
+    /**
+     * Mark sort column and direction in header of given monitor table
+     * 
+     * @param table Monitor table
+     */
+    protected void updateMonitorHeader(JTable table) {
+        MonitorMessageTableModel model = (MonitorMessageTableModel) table.getModel();
+        TableColumnModel columnModel = table.getColumnModel();
+        for (int i = 0; i < columnModel.getColumnCount(); i++) {
+            javax.swing.table.TableColumn column = columnModel.getColumn(i);
+            String title = model.getColumnName(column.getModelIndex());
+            if (column.getModelIndex() == model.getSortColumn()) {
+                title += model.isDescending() ? " \u25bc" : " \u25b2";
+            }
+            column.setHeaderValue(title);
+        }
+        table.getTableHeader().repaint();
+    }
+
+    /**
+     * Ask for port settings and open an additional CAN channel with its own
+     * monitor tab
+     */
+    protected void addChannel() {
+        JComboBox portBox = new JComboBox(SerialPortList.getPortNames());
+        portBox.setEditable(true);
+        JComboBox rateBox = new JComboBox(new String[] { "10000", "20000", "50000", "100000", "125000", "250000", "500000", "800000", "1000000" });
+        rateBox.setEditable(true);
+        rateBox.setSelectedItem(bitRate.getSelectedItem());
+        JComboBox modeBox = new JComboBox(USBtin.OpenMode.values());
+        modeBox.setSelectedItem(USBtin.OpenMode.LISTENONLY);
+
+        JPanel panel = new JPanel();
+        panel.add(portBox);
+        panel.add(rateBox);
+        panel.add(modeBox);
+        if (JOptionPane.showConfirmDialog(this, panel, "Add channel", JOptionPane.OK_CANCEL_OPTION) != JOptionPane.OK_OPTION) {
+            return;
+        }
+
+        if (baseTimestamp == 0) {
+            baseTimestamp = System.currentTimeMillis();
+        }
+
+        CANChannel channel = new CANChannel(channels.size(), createUSBtin(), this);
+        MonitorMessageTableModel model = new MonitorMessageTableModel();
+        model.setJ1939(j1939 != null);
+        dispatcher.setMonitorModel(channel.getIndex(), model);
+        try {
+            channel.open((String) portBox.getSelectedItem(), Integer.parseInt((String) rateBox.getSelectedItem()), (USBtin.OpenMode) modeBox.getSelectedItem());
+        } catch (USBtinException e) {
+            log(e.getMessage(), LogMessage.MessageType.ERROR);
+            return;
+        } catch (NumberFormatException e) {
+            log("Invalid baudrate: " + rateBox.getSelectedItem(), LogMessage.MessageType.ERROR);
+            return;
+        }
+        channels.add(channel);
+
+        JTable table = new JTable(model);
+        configureMonitorTable(table);
+        channelMonitorTables.add(table);
+        mainTabbedPane.addTab("Monitor CH" + channel.getIndex(), new JScrollPane(table));
+
+        USBtin device = channel.getUSBtin();
+        log("CH" + channel.getIndex() + " connected to USBtin on " + channel.getName() + " (FW" + device.getFirmwareVersion() + "/HW" + device.getHardwareVersion() + ", SN: " + device.getSerialNumber() + ")", LogMessage.MessageType.INFO);
+    }
+
+    /**
+     * Get names of all open channels
+     * 
+     * @return Channel names "CHn (port)"
+     */
+    protected String[] getOpenChannelNames() {
+        ArrayList<String> names = new ArrayList<String>();
+        for (CANChannel channel : channels) {
+            if (channel.isOpen()) {
+                names.add("CH" + channel.getIndex() + " (" + channel.getName() + ")");
+            }
+        }
+        return names.toArray(new String[names.size()]);
+    }
+
+    /**
+     * Get channel of given channel name
+     * 
+     * @param name Channel name "CHn (port)"
+     * @return Channel
+     */
+    protected CANChannel getChannelByName(String name) {
+        return channels.get(Integer.parseInt(name.substring(2, name.indexOf(' '))));
+    }
+
+    /**
+     * Ask for bridge settings and start forwarding between two channels
+     */
+    protected void startBridge() {
+        String[] names = getOpenChannelNames();
+        if (names.length < 2) {
+            log("Bridge needs two connected channels", LogMessage.MessageType.ERROR);
+            return;
+        }
+
+        JComboBox sourceBox = new JComboBox(names);
+        JComboBox destinationBox = new JComboBox(names);
+        destinationBox.setSelectedIndex(1);
+        JCheckBox bothBox = new JCheckBox("Both directions", true);
+        JTextField maskField = new JTextField("0");
+        JTextField valueField = new JTextField("0");
+        JTextField rewriteField = new JTextField();
+        JTextField andField = new JTextField();
+        JTextField orField = new JTextField();
+
+        JPanel panel = new JPanel(new java.awt.GridLayout(0, 2));
+        panel.add(new JLabel("Source"));
+        panel.add(sourceBox);
+        panel.add(new JLabel("Destination"));
+        panel.add(destinationBox);
+        panel.add(new JLabel(""));
+        panel.add(bothBox);
+        panel.add(new JLabel("Id mask (hex)"));
+        panel.add(maskField);
+        panel.add(new JLabel("Id value (hex)"));
+        panel.add(valueField);
+        panel.add(new JLabel("Rewrite (from=to,...)"));
+        panel.add(rewriteField);
+        panel.add(new JLabel("Payload AND (hex)"));
+        panel.add(andField);
+        panel.add(new JLabel("Payload OR (hex)"));
+        panel.add(orField);
+        if (JOptionPane.showConfirmDialog(this, panel, "Start bridge", JOptionPane.OK_CANCEL_OPTION) != JOptionPane.OK_OPTION) {
+            return;
+        }
+
+        CANChannel source = getChannelByName((String) sourceBox.getSelectedItem());
+        CANChannel destination = getChannelByName((String) destinationBox.getSelectedItem());
+        if (source == destination) {
+            log("Bridge source and destination must differ", LogMessage.MessageType.ERROR);
+            return;
+        }
+
+        CANBridge newBridge = new CANBridge();
+        try {
+            int mask = Integer.parseInt(maskField.getText().trim(), 16);
+            int value = Integer.parseInt(valueField.getText().trim(), 16);
+            java.util.HashMap<Integer, Integer> rewrite = CANBridge.parseRewrite(rewriteField.getText());
+            byte[] and = CANBridge.parseMask(andField.getText(), 0xff);
+            byte[] or = CANBridge.parseMask(orField.getText(), 0x00);
+
+            CANBridge.Direction direction = new CANBridge.Direction(source, destination, this);
+            direction.setFilter(mask, value);
+            direction.setRewrite(rewrite);
+            direction.setPayloadMasks(and, or);
+            newBridge.addDirection(direction);
+            if (bothBox.isSelected()) {
+                direction = new CANBridge.Direction(destination, source, this);
+                direction.setFilter(mask, value);
+                direction.setRewrite(CANBridge.invertRewrite(rewrite));
+                direction.setPayloadMasks(and, or);
+                newBridge.addDirection(direction);
+            }
+        } catch (NumberFormatException e) {
+            log("Invalid bridge setting: " + e.getMessage(), LogMessage.MessageType.ERROR);
+            return;
+        }
+        stopBridge();
+        bridge = newBridge;
+        bridge.start();
+        log("Bridge started between CH" + source.getIndex() + " and CH" + destination.getIndex(), LogMessage.MessageType.INFO);
+    }
+
+    /**
+     * Stop running bridge and log its statistics
+     */
+    protected void stopBridge() {
+        if (bridge != null) {
+            bridge.stop();
+            log("Bridge stopped\n" + bridge.getReport(), LogMessage.MessageType.INFO);
+            bridge = null;
+        }
+    }
+
+    /**
+     * Switch statistics only mode. CAN messages are then only counted in the
+     * monitor and handed to recorder and trigger capture, the trace is
+     * cleared and keeps info and error messages only.
+     * 
+     * @param statisticsOnly True, to stop trace retention
+     */
+    protected void setStatisticsOnly(boolean statisticsOnly) {
+        dispatcher.setRetainTrace(!statisticsOnly);
+        if (statisticsOnly) {
+            ((LogMessageTableModel) logTable.getModel()).clear();
+            log("Statistics only mode: CAN messages are not kept in the trace", LogMessage.MessageType.INFO);
+        } else {
+            log("Trace retention enabled", LogMessage.MessageType.INFO);
+        }
+    }
+
+    /**
+     * Check if the trace keeps every CAN message (neither statistics only
+     * nor change-only mode)
+     * 
+     * @return True, if all CAN messages are in the trace
+     */
+    protected boolean isTraceComplete() {
+        return dispatcher.isRetainTrace() && !((LogMessageTableModel) logTable.getModel()).getStore().isChangesOnly();
+    }
+
+    /**
+     * Append messages the trace did not keep, e.g. trigger snapshots
+     * 
+     * @param messages Messages to append
+     */
+    protected void addToTrace(java.util.List<LogMessage> messages) {
+        ((LogMessageTableModel) logTable.getModel()).getStore().addUnfiltered(messages);
+    }
+
+    /**
+     * Switch change-only trace mode. When enabled, the period deviation and
+     * gap timeout which force storing a repeated payload are asked for.
+     * 
+     * @param changesOnly True, to store changed frames only
+     * @return True, if change-only mode is active afterwards
+     */
+    protected boolean setChangesOnly(boolean changesOnly) {
+        LogMessageTableModel model = (LogMessageTableModel) logTable.getModel();
+        if (!changesOnly) {
+            model.getStore().setChangeFilter(null);
+            log("Change-only trace disabled", LogMessage.MessageType.INFO);
+            return false;
+        }
+        JTextField deviationField = new JTextField("0");
+        JTextField timeoutField = new JTextField("0");
+        JPanel panel = new JPanel(new java.awt.GridLayout(0, 2));
+        panel.add(new JLabel("Period deviation (ms, 0 = off)"));
+        panel.add(deviationField);
+        panel.add(new JLabel("Timeout (ms, 0 = off)"));
+        panel.add(timeoutField);
+        if (JOptionPane.showConfirmDialog(this, panel, "Changes only", JOptionPane.OK_CANCEL_OPTION) != JOptionPane.OK_OPTION) {
+            return false;
+        }
+        try {
+            model.getStore().setChangeFilter(new ChangeFilter(Long.parseLong(deviationField.getText().trim()), Long.parseLong(timeoutField.getText().trim())));
+        } catch (NumberFormatException e) {
+            log("Invalid change-only setting: " + e.getMessage(), LogMessage.MessageType.ERROR);
+            return false;
+        }
+        log("Change-only trace: unchanged repeats are counted on the stored row", LogMessage.MessageType.INFO);
+        return true;
+    }
+
+    /**
+     * Ask for time and scroll trace to the first row at or after it
+     */
+    protected void goToTime() {
+        String time = JOptionPane.showInputDialog(this, "Time (ms)", "Go to time", JOptionPane.QUESTION_MESSAGE);
+        if (time == null) {
+            return;
+        }
+        try {
+            followButton.setSelected(false);
+            mainTabbedPane.setSelectedIndex(0);
+            minimap.goTo(Long.parseLong(time.trim()));
+        } catch (NumberFormatException e) {
+            log("Invalid time: " + time, LogMessage.MessageType.ERROR);
+        }
+    }
+
+    /**
+     * Ask for filter and open a detached trace window. The window shows a
+     * view over the shared trace store, so only the filter index is kept
+     * per window.
+     */
+    protected void openTraceWindow() {
+        JTextField idsField = new JTextField();
+        JTextField channelField = new JTextField();
+        JTextField payloadField = new JTextField();
+        JCheckBox textBox = new JCheckBox("Show info and errors", true);
+        JPanel panel = new JPanel(new java.awt.GridLayout(0, 2));
+        panel.add(new JLabel("Ids (hex, e.g. 7e0-7ef,100, empty = all)"));
+        panel.add(idsField);
+        panel.add(new JLabel("Channel (empty = all)"));
+        panel.add(channelField);
+        panel.add(new JLabel("Payload pattern (empty = any)"));
+        panel.add(payloadField);
+        panel.add(new JLabel(""));
+        panel.add(textBox);
+        if (JOptionPane.showConfirmDialog(this, panel, "New trace window", JOptionPane.OK_CANCEL_OPTION) != JOptionPane.OK_OPTION) {
+            return;
+        }
+
+        TraceFilter filter;
+        try {
+            filter = new TraceFilter(idsField.getText(),
+                    channelField.getText().trim().length() == 0 ? -1 : Integer.parseInt(channelField.getText().trim()),
+                    payloadField.getText().trim().length() == 0 ? null : new PayloadPattern(payloadField.getText()),
+                    textBox.isSelected());
+        } catch (NumberFormatException e) {
+            log("Invalid trace filter: " + e.getMessage(), LogMessage.MessageType.ERROR);
+            return;
+        }
+        TraceStore store = ((LogMessageTableModel) logTable.getModel()).getStore();
+        final LogMessageTableModel view = new LogMessageTableModel(store, filter);
+        dispatcher.addView(view);
+        final JTable table = new JTable(view);
+        configureTraceTable(table);
+        JScrollPane scrollPane = new JScrollPane(table);
+        final JCheckBox followBox = new JCheckBox("Follow", true);
+        view.addTableModelListener(new javax.swing.event.TableModelListener() {
+            @Override
+            public void tableChanged(javax.swing.event.TableModelEvent e) {
+                if (followBox.isSelected() && e.getType() == javax.swing.event.TableModelEvent.INSERT) {
+                    table.scrollRectToVisible(table.getCellRect(view.getRowCount() - 1, 0, true));
+                }
+            }
+        });
+        TraceMinimap map = new TraceMinimap(table, scrollPane);
+        map.addMouseListener(new MouseAdapter() {
+            @Override
+            public void mousePressed(MouseEvent e) {
+                followBox.setSelected(false);
+            }
+        });
+
+        JFrame frame = new JFrame("Trace: " + filter);
+        frame.add(followBox, java.awt.BorderLayout.NORTH);
+        frame.add(scrollPane, java.awt.BorderLayout.CENTER);
+        frame.add(map, java.awt.BorderLayout.EAST);
+        frame.addWindowListener(new java.awt.event.WindowAdapter() {
+            @Override
+            public void windowClosed(java.awt.event.WindowEvent e) {
+                dispatcher.removeView(view);
+                view.dispose();
+            }
+        });
+        frame.setDefaultCloseOperation(JFrame.DISPOSE_ON_CLOSE);
+        frame.setSize(700, 500);
+        frame.setLocationRelativeTo(this);
+        frame.setVisible(true);
+    }
+
+    /**
+     * Ask for payload pattern and optional id and search the whole trace on
+     * a background thread. The hits are shown in a list window, selecting a
+     * hit scrolls the trace to its row.
+     */
+    protected void findPayload() {
+        JTextField patternField = new JTextField("xx xx 12 x4");
+        JTextField idField = new JTextField();
+        JPanel panel = new JPanel(new java.awt.GridLayout(0, 2));
+        panel.add(new JLabel("Payload (hex, x = any nibble, b01xx.. = bits)"));
+        panel.add(patternField);
+        panel.add(new JLabel("Id (hex, empty = any)"));
+        panel.add(idField);
+        if (JOptionPane.showConfirmDialog(this, panel, "Find payload", JOptionPane.OK_CANCEL_OPTION) != JOptionPane.OK_OPTION) {
+            return;
+        }
+
+        final PayloadPattern pattern;
+        final int id;
+        try {
+            pattern = new PayloadPattern(patternField.getText());
+            id = idField.getText().trim().length() == 0 ? -1 : Integer.parseInt(idField.getText().trim(), 16);
+        } catch (NumberFormatException e) {
+            log("Invalid search: " + e.getMessage(), LogMessage.MessageType.ERROR);
+            return;
+        }
+        final LogMessageTableModel model = (LogMessageTableModel) logTable.getModel();
+        final java.util.concurrent.Callable<int[]> search = model.getStore().search(pattern, id, MAX_HITS);
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    long start = System.nanoTime();
+                    final int[] rows = search.call();
+                    final long time = (System.nanoTime() - start) / 1000000;
+                    SwingUtilities.invokeLater(new Runnable() {
+                        @Override
+                        public void run() {
+                            showHits(model, pattern + (id >= 0 ? String.format(" (id %xh)", id) : ""), rows, time);
+                        }
+                    });
+                } catch (Exception e) {
+                    log("Search: " + e, LogMessage.MessageType.ERROR);
+                }
+            }
+        }, "Payload search").start();
+    }
+
+    /**
+     * Show list of search hits
+     *
+     * @param model Trace view of the searched store
+     * @param title Description of search
+     * @param rows Store rows of hits
+     * @param time Search time in ms
+     */
+    protected void showHits(final LogMessageTableModel model, String title, final int[] rows, long time) {
+        final JList list = new JList(new AbstractListModel() {
+            @Override
+            public int getSize() {
+                return rows.length;
+            }
+
+            @Override
+            public Object getElementAt(int index) {
+                int row = model.getRow(rows[index]);
+                if (row < 0) {
+                    return rows[index] + ": (not in trace)";
+                }
+                return row + ": " + model.getValueAt(row, 0) + " ms  CH" + model.getValueAt(row, 2) + "  " + model.getValueAt(row, 3) + "  " + model.getValueAt(row, 5);
+            }
+        });
+        list.setPrototypeCellValue("0000000000: 00000000 ms  CH0  00000000h  00 00 00 00 00 00 00 00");
+        list.setFont(new java.awt.Font(java.awt.Font.MONOSPACED, java.awt.Font.PLAIN, 12));
+        list.addListSelectionListener(new javax.swing.event.ListSelectionListener() {
+            @Override
+            public void valueChanged(javax.swing.event.ListSelectionEvent e) {
+                int index = list.getSelectedIndex();
+                int row = index < 0 ? -1 : model.getRow(rows[index]);
+                if (e.getValueIsAdjusting() || row < 0 || logTable.getModel() != model) {
+                    return;
+                }
+                followButton.setSelected(false);
+                mainTabbedPane.setSelectedIndex(0);
+                logTable.setRowSelectionInterval(row, row);
+                logTable.scrollRectToVisible(logTable.getCellRect(row, 0, true));
+            }
+        });
+
+        JFrame frame = new JFrame("Find " + title + ": " + rows.length + (rows.length == MAX_HITS ? "+" : "") + " hits in " + time + " ms");
+        frame.add(new JScrollPane(list));
+        frame.pack();
+        frame.setLocationRelativeTo(this);
+        frame.setVisible(true);
+    }
+
+    /**
+     * Ask for capture file and record all CAN messages to it
+     */
+    protected void startRecording() {
+        JFileChooser chooser = new JFileChooser();
+        chooser.setSelectedFile(new java.io.File("capture" + CaptureFile.EXTENSION));
+        if (chooser.showSaveDialog(this) != JFileChooser.APPROVE_OPTION) {
+            return;
+        }
+        if (recorder != null) {
+            dispatcher.removeSink(recorder);
+            recorder.stop();
+        }
+        try {
+            recorder = new CaptureRecorder(this, chooser.getSelectedFile());
+            recorder.start();
+            dispatcher.addSink(recorder);
+            log("Recording to " + chooser.getSelectedFile().getName(), LogMessage.MessageType.INFO);
+        } catch (java.io.IOException e) {
+            recorder = null;
+            log("Recording: " + e.getMessage(), LogMessage.MessageType.ERROR);
+        }
+    }
+
+    /**
+     * Ask for capture file and playback settings and transmit the capture
+     * with its recorded timing on a background thread
+     */
+    protected void startPlayback() {
+        if (playback != null && playback.isRunning()) {
+            log("Playback already running", LogMessage.MessageType.ERROR);
+            return;
+        }
+        JFileChooser chooser = new JFileChooser();
+        if (chooser.showOpenDialog(this) != JFileChooser.APPROVE_OPTION) {
+            return;
+        }
+        java.io.File file = chooser.getSelectedFile();
+        JTextField channelField = new JTextField("0");
+        JTextField idsField = new JTextField();
+        JTextField sourceField = new JTextField();
+        JTextField speedField = new JTextField("1.0");
+        JCheckBox loopBox = new JCheckBox("Loop");
+        JPanel panel = new JPanel(new java.awt.GridLayout(0, 2));
+        panel.add(new JLabel("Send on channel"));
+        panel.add(channelField);
+        panel.add(new JLabel("Ids (hex, e.g. 7e0-7ef,100, empty = all)"));
+        panel.add(idsField);
+        panel.add(new JLabel("Recorded channel (empty = all)"));
+        panel.add(sourceField);
+        panel.add(new JLabel("Speed factor"));
+        panel.add(speedField);
+        panel.add(new JLabel(""));
+        panel.add(loopBox);
+        if (JOptionPane.showConfirmDialog(this, panel, "Play back " + file.getName(), JOptionPane.OK_CANCEL_OPTION) != JOptionPane.OK_OPTION) {
+            return;
+        }
+
+        CANChannel channel;
+        TraceFilter filter;
+        double speed;
+        try {
+            int index = Integer.parseInt(channelField.getText().trim());
+            if (index < 0 || index >= channels.size()) {
+                throw new NumberFormatException("No channel " + index);
+            }
+            channel = channels.get(index);
+            filter = new TraceFilter(idsField.getText(),
+                    sourceField.getText().trim().length() == 0 ? -1 : Integer.parseInt(sourceField.getText().trim()), null, false);
+            speed = Double.parseDouble(speedField.getText().trim());
+            if (speed <= 0) {
+                throw new NumberFormatException("Speed must be positive");
+            }
+        } catch (NumberFormatException e) {
+            log("Invalid playback setting: " + e.getMessage(), LogMessage.MessageType.ERROR);
+            return;
+        }
+        if (!channel.isOpen()) {
+            log("CH" + channel.getIndex() + " not connected", LogMessage.MessageType.ERROR);
+            return;
+        }
+        playback = new CapturePlayback(this, file, channel, filter, speed, loopBox.isSelected());
+        log("Playback of " + file.getName() + " (" + filter + ", speed " + speed + ") on CH" + channel.getIndex(), LogMessage.MessageType.INFO);
+        Thread thread = new Thread(playback, "Capture playback");
+        thread.setPriority(Thread.MAX_PRIORITY);
+        thread.start();
+    }
+
+    /**
+     * Ask for capture file and optional time range and show a monitor like
+     * summary. The analysis runs on a background thread.
+     */
+    protected void summarizeFile() {
+        JFileChooser chooser = new JFileChooser();
+        if (chooser.showOpenDialog(this) != JFileChooser.APPROVE_OPTION) {
+            return;
+        }
+        final java.io.File file = chooser.getSelectedFile();
+        JTextField fromField = new JTextField();
+        JTextField toField = new JTextField();
+        JPanel panel = new JPanel(new java.awt.GridLayout(0, 2));
+        panel.add(new JLabel("From (ms, empty = start)"));
+        panel.add(fromField);
+        panel.add(new JLabel("To (ms, empty = end)"));
+        panel.add(toField);
+        if (JOptionPane.showConfirmDialog(this, panel, "Summarize " + file.getName(), JOptionPane.OK_CANCEL_OPTION) != JOptionPane.OK_OPTION) {
+            return;
+        }
+        final long from;
+        final long to;
+        try {
+            from = fromField.getText().trim().isEmpty() ? Long.MIN_VALUE : Long.parseLong(fromField.getText().trim());
+            to = toField.getText().trim().isEmpty() ? Long.MAX_VALUE : Long.parseLong(toField.getText().trim());
+        } catch (NumberFormatException e) {
+            log("Invalid time: " + e.getMessage(), LogMessage.MessageType.ERROR);
+            return;
+        }
+
+        log("Summarizing " + file.getName() + "...", LogMessage.MessageType.INFO);
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    CaptureAnalyzer analyzer = new CaptureAnalyzer(file);
+                    analyzer.analyzeTime(from, to);
+                    final CaptureSummary summary = new CaptureSummary(analyzer);
+                    SwingUtilities.invokeLater(new Runnable() {
+                        @Override
+                        public void run() {
+                            showSummary(summary);
+                        }
+                    });
+                } catch (java.io.IOException e) {
+                    log("Summarize: " + e.getMessage(), LogMessage.MessageType.ERROR);
+                }
+            }
+        }, "Capture summary").start();
+    }
+
     /**
-     * Creates new form and initialize it
+     * Show capture summary in a sortable table window
+     * 
+     * @param summary Capture summary
      */
-    public USBtinViewer() {
-        
-        // init view components
-        initComponents();
-        setTitle(getTitle() + " " + version);
-        setIconImage(new ImageIcon(getClass().getResource("/res/icons/usbtinviewer.png")).getImage());
-        openmodeComboBox.setSelectedItem(USBtin.OpenMode.ACTIVE);
-        
-        // initialize message payload input fields and add listeners
-        msgDataFields = new JTextField[]{msgData0, msgData1, msgData2, msgData3, msgData4, msgData5, msgData6, msgData7};
-        DocumentListener msgListener = new DocumentListener() {
-            @Override
-            public void insertUpdate(DocumentEvent de) {
-                msgFields2msgString();
-            }
+    protected void showSummary(CaptureSummary summary) {
+        JTable table = new JTable(summary);
+        table.setAutoCreateRowSorter(true);
+        table.getColumnModel().getColumn(10).setPreferredWidth(250);
+        table.getColumnModel().getColumn(11).setPreferredWidth(130);
+        JFrame frame = new JFrame(summary.getDescription());
+        frame.add(new JScrollPane(table));
+        frame.setSize(1000, 500);
+        frame.setLocationRelativeTo(this);
+        frame.setVisible(true);
+    }
 
-            @Override
-            public void removeUpdate(DocumentEvent de) {
-                msgFields2msgString();
-            }
+    /**
+     * Ask for capture file and show its bit activity. The analysis runs on a
+     * background thread.
+     */
+    protected void analyzeBitActivity() {
+        JFileChooser chooser = new JFileChooser();
+        if (chooser.showOpenDialog(this) != JFileChooser.APPROVE_OPTION) {
+            return;
+        }
+        final java.io.File file = chooser.getSelectedFile();
 
+        log("Analyzing " + file.getName() + "...", LogMessage.MessageType.INFO);
+        new Thread(new Runnable() {
             @Override
-            public void changedUpdate(DocumentEvent de) {
-                msgFields2msgString();
+            public void run() {
+                try {
+                    CaptureAnalyzer analyzer = new CaptureAnalyzer(file);
+                    analyzer.analyze();
+                    final IdStatisticsTable table = new IdStatisticsTable();
+                    for (IdStatistics s : analyzer.getStatistics().values()) {
+                        table.get(s.getKey()).merge(s);
+                    }
+                    SwingUtilities.invokeLater(new Runnable() {
+                        @Override
+                        public void run() {
+                            showBitActivity("Bit activity: " + file.getName(), table, null);
+                        }
+                    });
+                } catch (java.io.IOException e) {
+                    log("Bit activity: " + e.getMessage(), LogMessage.MessageType.ERROR);
+                }
             }
-        };
-        msgId.getDocument().addDocumentListener(msgListener);
-        for (JTextField msgDataField : msgDataFields) {
-            msgDataField.getDocument().addDocumentListener(msgListener);
-        }
-
-        // add listener to message string input field
-        sendMessage.getDocument().addDocumentListener(new DocumentListener() {
+        }, "Bit activity").start();
+    }
 
+    /**
+     * Show id list and bit activity heatmap of the selected id. A live table
+     * is refreshed periodically and its sink is removed when the window is
+     * closed.
+     *
+     * @param title Window title
+     * @param table Per id statistics
+     * @param sink Sink filling the table, null if not live
+     */
+    protected void showBitActivity(String title, final IdStatisticsTable table, final MessageSink sink) {
+        final ArrayList<IdStatistics> ids = new ArrayList<IdStatistics>();
+        final DefaultListModel names = new DefaultListModel();
+        final JList list = new JList(names);
+        list.setFont(new java.awt.Font(java.awt.Font.MONOSPACED, java.awt.Font.PLAIN, 12));
+        list.setPrototypeCellValue("CH0 00000000h out");
+        final BitHeatmap heatmap = new BitHeatmap();
+        list.addListSelectionListener(new javax.swing.event.ListSelectionListener() {
             @Override
-            public void insertUpdate(DocumentEvent de) {
-                msgString2msgFields();
+            public void valueChanged(javax.swing.event.ListSelectionEvent e) {
+                int index = list.getSelectedIndex();
+                heatmap.setStatistics(index < 0 ? null : ids.get(index));
             }
+        });
 
+        // rebuild id list only if ids were added, keep selection
+        final Runnable refresh = new Runnable() {
             @Override
-            public void removeUpdate(DocumentEvent de) {
-                msgString2msgFields();
+            public void run() {
+                if (table.size() != ids.size()) {
+                    int index = list.getSelectedIndex();
+                    IdStatistics selected = index < 0 ? null : ids.get(index);
+                    ids.clear();
+                    ids.addAll(table.getSorted());
+                    names.clear();
+                    for (IdStatistics s : ids) {
+                        names.addElement(s.getName());
+                    }
+                    if (selected != null) {
+                        list.setSelectedIndex(ids.indexOf(selected));
+                    }
+                }
+                heatmap.repaint();
             }
-
+        };
+        refresh.run();
+        final javax.swing.Timer timer = new javax.swing.Timer(500, new java.awt.event.ActionListener() {
             @Override
-            public void changedUpdate(DocumentEvent de) {
-                msgString2msgFields();
+            public void actionPerformed(ActionEvent e) {
+                refresh.run();
             }
         });
 
-        logTable.addMouseListener(new MouseAdapter() {
-            private boolean isIoType(LogMessage message) {
-                LogMessage.MessageType type = message.getType();
-                return (type == LogMessage.MessageType.OUT ||
-                        type == LogMessage.MessageType.IN);
-            }
-
-            // "Popup menus are triggered differently on different systems.
-            // Therefore, isPopupTrigger should be checked in both
-            // mousePressed and mouseReleased"
+        JFrame frame = new JFrame(title);
+        frame.add(new JScrollPane(list), java.awt.BorderLayout.WEST);
+        frame.add(heatmap, java.awt.BorderLayout.CENTER);
+        frame.addWindowListener(new java.awt.event.WindowAdapter() {
             @Override
-            public void mousePressed(MouseEvent e) {
-                if (e.isPopupTrigger()) {
-                    mouseReleased(e);
+            public void windowClosed(java.awt.event.WindowEvent e) {
+                timer.stop();
+                if (sink != null) {
+                    dispatcher.removeSink(sink);
                 }
             }
+        });
+        frame.setDefaultCloseOperation(JFrame.DISPOSE_ON_CLOSE);
+        frame.pack();
+        frame.setLocationRelativeTo(this);
+        frame.setVisible(true);
+        if (sink != null) {
+            timer.start();
+        }
+    }
 
-            @Override
-            public void mouseReleased(MouseEvent e) {
-                if (e.isPopupTrigger()) {
-                    final LogMessageTableModel model = (LogMessageTableModel) logTable.getModel();
-                    JPopupMenu popup = new JPopupMenu();
+    /**
+     * Ask for two capture files and show per id differences. The analysis
+     * runs on a background thread.
+     */
+    protected void compareCaptures() {
+        JFileChooser chooser = new JFileChooser();
+        chooser.setDialogTitle("Capture before (A)");
+        if (chooser.showOpenDialog(this) != JFileChooser.APPROVE_OPTION) {
+            return;
+        }
+        final java.io.File fileA = chooser.getSelectedFile();
+        chooser.setDialogTitle("Capture after (B)");
+        if (chooser.showOpenDialog(this) != JFileChooser.APPROVE_OPTION) {
+            return;
+        }
+        final java.io.File fileB = chooser.getSelectedFile();
 
-                    popup.add(new AbstractAction("Resend") {
+        log("Comparing " + fileA.getName() + " and " + fileB.getName() + "...", LogMessage.MessageType.INFO);
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    CaptureAnalyzer a = new CaptureAnalyzer(fileA);
+                    CaptureAnalyzer b = new CaptureAnalyzer(fileB);
+                    a.analyze();
+                    b.analyze();
+                    final String report = CaptureDiff.compare(a, b);
+                    SwingUtilities.invokeLater(new Runnable() {
                         @Override
-                        public void actionPerformed(ActionEvent e) {
-                            for (int r : logTable.getSelectedRows()) {
-                                LogMessage message = model.getMessage(r);
-                                if (isIoType(message)) {
-                                    send(message.getCanmsg());
-                                }
-                            }
+                        public void run() {
+                            showReport("Capture comparison", report);
                         }
                     });
+                } catch (java.io.IOException e) {
+                    log("Compare: " + e.getMessage(), LogMessage.MessageType.ERROR);
+                }
+            }
+        }, "Capture comparison").start();
+    }
 
-                    popup.add(new AbstractAction("Copy") {
-                        @Override
-                        public void actionPerformed(ActionEvent e) {
-                            StringBuilder builder = new StringBuilder();
-                            String separator = getProperty("line.separator");
+    /**
+     * Show given report text in a dialog
+     * 
+     * @param title Dialog title
+     * @param report Report text
+     */
+    protected void showReport(String title, String report) {
+        JTextArea area = new JTextArea(report, 30, 100);
+        area.setFont(new java.awt.Font(java.awt.Font.MONOSPACED, java.awt.Font.PLAIN, 12));
+        area.setEditable(false);
+        JOptionPane.showMessageDialog(this, new JScrollPane(area), title, JOptionPane.PLAIN_MESSAGE);
+    }
 
-                            for (int r : logTable.getSelectedRows()) {
-                                LogMessage message = model.getMessage(r);
-                                if (isIoType(message)) {
-                                    builder.append(message.getCanmsg().toString());
-                                    builder.append(separator);
-                                }
-                            }
+    /**
+     * Ask for trigger condition and arm trigger capture
+     */
+    protected void startTriggerCapture() {
+        JTextField idMaskField = new JTextField("0");
+        JTextField idValueField = new JTextField("0");
+        JTextField dataMaskField = new JTextField();
+        JTextField dataValueField = new JTextField();
+        JTextField missingIdField = new JTextField("0");
+        JTextField missingField = new JTextField("0");
+        JCheckBox errorBox = new JCheckBox("Trigger on errors", true);
+        JTextField preFramesField = new JTextField("10000");
+        JTextField preTimeField = new JTextField("0");
+        JTextField postFramesField = new JTextField("1000");
+        JTextField directoryField = new JTextField(System.getProperty("user.dir"));
+
+        JPanel panel = new JPanel(new java.awt.GridLayout(0, 2));
+        panel.add(new JLabel("Id mask (hex)"));
+        panel.add(idMaskField);
+        panel.add(new JLabel("Id value (hex)"));
+        panel.add(idValueField);
+        panel.add(new JLabel("Payload mask (hex)"));
+        panel.add(dataMaskField);
+        panel.add(new JLabel("Payload value (hex)"));
+        panel.add(dataValueField);
+        panel.add(new JLabel("Missing id (hex)"));
+        panel.add(missingIdField);
+        panel.add(new JLabel("Missing timeout (ms, 0 = off)"));
+        panel.add(missingField);
+        panel.add(new JLabel(""));
+        panel.add(errorBox);
+        panel.add(new JLabel("Pre-trigger frames"));
+        panel.add(preFramesField);
+        panel.add(new JLabel("Pre-trigger time (ms, 0 = all)"));
+        panel.add(preTimeField);
+        panel.add(new JLabel("Post-trigger frames"));
+        panel.add(postFramesField);
+        panel.add(new JLabel("Directory"));
+        panel.add(directoryField);
+        if (JOptionPane.showConfirmDialog(this, panel, "Trigger capture", JOptionPane.OK_CANCEL_OPTION) != JOptionPane.OK_OPTION) {
+            return;
+        }
 
-                            getDefaultToolkit()
-                                    .getSystemClipboard()
-                                    .setContents(new StringSelection(builder.toString()), null);
+        if (triggerCapture != null) {
+            dispatcher.removeSink(triggerCapture);
+            triggerCapture = null;
+        }
+        try {
+            TriggerCapture trigger = new TriggerCapture(this, new java.io.File(directoryField.getText()),
+                    Integer.parseInt(preFramesField.getText().trim()), Long.parseLong(preTimeField.getText().trim()),
+                    Integer.parseInt(postFramesField.getText().trim()));
+            trigger.setFrameCondition(Integer.parseInt(idMaskField.getText().trim(), 16), Integer.parseInt(idValueField.getText().trim(), 16),
+                    parsePayload(dataMaskField.getText()), parsePayload(dataValueField.getText()));
+            trigger.setMissingCondition(Integer.parseInt(missingIdField.getText().trim(), 16), Long.parseLong(missingField.getText().trim()));
+            trigger.setErrorCondition(errorBox.isSelected());
+            triggerCapture = trigger;
+            dispatcher.addSink(trigger);
+            log("Trigger capture armed", LogMessage.MessageType.INFO);
+        } catch (NumberFormatException e) {
+            log("Invalid trigger setting: " + e.getMessage(), LogMessage.MessageType.ERROR);
+        }
+    }
+
+    /**
+     * Parse payload given as hex string, missing bytes are 0
+     *
+     * @param s Hex string
+     * @return Packed payload
+     */
+    protected static long parsePayload(String s) {
+        byte[] bytes = CANBridge.parseMask(s, 0);
+        return bytes == null ? 0 : CANFrame.pack(bytes);
+    }
+
+    /**
+     * Ask for request/response id pairs and show reassembled ISO-TP PDUs in
+     * their own tab
+     */
+    protected void startIsoTp() {
+        String pairs = JOptionPane.showInputDialog(this, "Request=response id pairs (hex), e.g. 7e0=7e8,7df=7e8", "ISO-TP reassembly", JOptionPane.QUESTION_MESSAGE);
+        if (pairs == null) {
+            return;
+        }
+        HashMap<Integer, Integer> table;
+        try {
+            table = CANBridge.parseRewrite(pairs);
+        } catch (NumberFormatException e) {
+            log("Invalid id pairs: " + pairs, LogMessage.MessageType.ERROR);
+            return;
+        }
+        if (isoTp != null) {
+            dispatcher.removeSink(isoTp);
+            log("ISO-TP: " + isoTp.getReport(), LogMessage.MessageType.INFO);
+            isoTp = null;
+        }
+        if (table == null) {
+            return;
+        }
+
+        isoTp = new IsoTpReassembler(this, table);
+        if (isoTpTable == null) {
+            isoTpTable = new JTable(isoTp);
+            mainTabbedPane.addTab("ISO-TP", new JScrollPane(isoTpTable));
+        } else {
+            isoTpTable.setModel(isoTp);
+        }
+        TableColumnModel columnModel = isoTpTable.getColumnModel();
+        columnModel.getColumn(0).setPreferredWidth(50);
+        columnModel.getColumn(6).setPreferredWidth(200);
+        columnModel.getColumn(7).setPreferredWidth(100);
+        columnModel.getColumn(8).setPreferredWidth(400);
+        dispatcher.addSink(isoTp);
+        log("ISO-TP reassembly of " + pairs, LogMessage.MessageType.INFO);
+    }
+
+    /**
+     * Switch J1939 mode: monitors aggregate extended ids by PGN and source
+     * address and transport protocol transfers are shown in their own tab
+     *
+     * @param enabled True, to enable J1939 mode
+     */
+    protected void setJ1939(boolean enabled) {
+        ((MonitorMessageTableModel) monitorTable.getModel()).setJ1939(enabled);
+        updateMonitorHeader(monitorTable);
+        for (JTable table : channelMonitorTables) {
+            ((MonitorMessageTableModel) table.getModel()).setJ1939(enabled);
+            updateMonitorHeader(table);
+        }
+        if (j1939 != null) {
+            dispatcher.removeSink(j1939);
+            log("J1939 TP: " + j1939.getReport(), LogMessage.MessageType.INFO);
+            j1939 = null;
+        }
+        if (!enabled) {
+            return;
+        }
+
+        j1939 = new J1939Transport(this);
+        if (j1939Table == null) {
+            j1939Table = new JTable(j1939);
+            mainTabbedPane.addTab("J1939 TP", new JScrollPane(j1939Table));
+        } else {
+            j1939Table.setModel(j1939);
+        }
+        j1939Table.getColumnModel().getColumn(0).setPreferredWidth(50);
+        j1939Table.getColumnModel().getColumn(10).setPreferredWidth(400);
+        dispatcher.addSink(j1939);
+        log("J1939 mode", LogMessage.MessageType.INFO);
+    }
+
+    /**
+     * Ask for request/response pairs and show their response times in their
+     * own tab
+     */
+    protected void startResponseLatency() {
+        JTextField pairsField = new JTextField("7e0=7e8");
+        JTextField channelField = new JTextField("0");
+        JTextField timeoutField = new JTextField("1000");
+        JPanel panel = new JPanel(new java.awt.GridLayout(0, 2));
+        panel.add(new JLabel("Request=response pairs, e.g. 7e0:0210=7e8:xx50"));
+        panel.add(pairsField);
+        panel.add(new JLabel("Channel"));
+        panel.add(channelField);
+        panel.add(new JLabel("Timeout (ms)"));
+        panel.add(timeoutField);
+        if (JOptionPane.showConfirmDialog(this, panel, "Response latency", JOptionPane.OK_CANCEL_OPTION) != JOptionPane.OK_OPTION) {
+            return;
+        }
+
+        ResponseLatency latency;
+        try {
+            latency = pairsField.getText().trim().length() == 0 ? null
+                    : new ResponseLatency(this, Integer.parseInt(channelField.getText().trim()), pairsField.getText(), Long.parseLong(timeoutField.getText().trim()));
+        } catch (NumberFormatException e) {
+            log("Invalid latency setting: " + e.getMessage(), LogMessage.MessageType.ERROR);
+            return;
+        }
+        if (responseLatency != null) {
+            dispatcher.removeSink(responseLatency);
+            log("Response latency:\n" + responseLatency.getReport(), LogMessage.MessageType.INFO);
+            responseLatency = null;
+        }
+        if (latency == null) {
+            return;
+        }
+
+        responseLatency = latency;
+        if (latencyTable == null) {
+            latencyTable = new JTable(latency);
+            mainTabbedPane.addTab("Latency", new JScrollPane(latencyTable));
+        } else {
+            latencyTable.setModel(latency);
+        }
+        dispatcher.addSink(latency);
+        log("Response latency of " + pairsField.getText(), LogMessage.MessageType.INFO);
+    }
+
+    /**
+     * Ask for expected periods and start the cycle time watchdog
+     */
+    protected void startCycleWatchdog() {
+        JTextField periodsField = new JTextField();
+        JCheckBox learnBox = new JCheckBox("Learn periods of other ids", true);
+        JTextField toleranceField = new JTextField("50");
+        JPanel panel = new JPanel(new java.awt.GridLayout(0, 2));
+        panel.add(new JLabel("Periods, e.g. 100=10,7e8=1000 (id hex = ms)"));
+        panel.add(periodsField);
+        panel.add(new JLabel(""));
+        panel.add(learnBox);
+        panel.add(new JLabel("Tolerance (% of period)"));
+        panel.add(toleranceField);
+        if (JOptionPane.showConfirmDialog(this, panel, "Cycle watchdog", JOptionPane.OK_CANCEL_OPTION) != JOptionPane.OK_OPTION) {
+            return;
+        }
+
+        CycleWatchdog watchdog;
+        try {
+            watchdog = new CycleWatchdog(this, periodsField.getText(), learnBox.isSelected(), Integer.parseInt(toleranceField.getText().trim()));
+        } catch (NumberFormatException e) {
+            log("Invalid watchdog setting: " + e.getMessage(), LogMessage.MessageType.ERROR);
+            return;
+        }
+        if (cycleWatchdog != null) {
+            cycleWatchdog.stop();
+        }
+        cycleWatchdog = watchdog;
+        watchdog.start();
+        log("Watchdog started", LogMessage.MessageType.INFO);
+    }
+
+    /**
+     * Ask for port and run the loopback self-test on a background thread.
+     * The port must not be connected.
+     */
+    protected void startLoopbackTest() {
+        JTextField portField = new JTextField((String) serialPort.getSelectedItem());
+        JTextField rateField = new JTextField((String) bitRate.getSelectedItem());
+        JTextField stepField = new JTextField("2000");
+        JPanel panel = new JPanel(new java.awt.GridLayout(0, 2));
+        panel.add(new JLabel("Port (not connected)"));
+        panel.add(portField);
+        panel.add(new JLabel("Baudrate"));
+        panel.add(rateField);
+        panel.add(new JLabel("Step duration (ms)"));
+        panel.add(stepField);
+        if (JOptionPane.showConfirmDialog(this, panel, "Loopback self-test", JOptionPane.OK_CANCEL_OPTION) != JOptionPane.OK_OPTION) {
+            return;
+        }
+
+        final String port = portField.getText().trim();
+        for (CANChannel channel : channels) {
+            if (channel.isOpen() && channel.getName().equals(port)) {
+                log("Loopback test: " + port + " is connected", LogMessage.MessageType.ERROR);
+                return;
+            }
+        }
+        final LoopbackTest test;
+        try {
+            test = new LoopbackTest(port, Integer.parseInt(rateField.getText().trim()), Long.parseLong(stepField.getText().trim()), this);
+        } catch (NumberFormatException e) {
+            log("Invalid loopback test setting: " + e.getMessage(), LogMessage.MessageType.ERROR);
+            return;
+        }
+        log("Loopback test on " + port + " started", LogMessage.MessageType.INFO);
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    final String report = test.run();
+                    SwingUtilities.invokeLater(new Runnable() {
+                        @Override
+                        public void run() {
+                            showReport("Loopback self-test", report);
                         }
                     });
-
-                    popup.show(e.getComponent(), e.getX(), e.getY());
+                } catch (USBtinException e) {
+                    log("Loopback test: " + e.getMessage(), LogMessage.MessageType.ERROR);
                 }
             }
-        });
+        }, "Loopback test").start();
+    }
 
-        // configure table columns
-        TableColumnModel columnModel = logTable.getColumnModel();
-        columnModel.getColumn(0).setPreferredWidth(100);
-        columnModel.getColumn(1).setPreferredWidth(40);
-        columnModel.getColumn(2).setPreferredWidth(90);
-        columnModel.getColumn(3).setPreferredWidth(40);
-        columnModel.getColumn(4).setPreferredWidth(370);
-        
-        // set alignment of id column
-        DefaultTableCellRenderer rightRenderer = new DefaultTableCellRenderer();
-        rightRenderer.setHorizontalAlignment(DefaultTableCellRenderer.RIGHT);
-        columnModel.getColumn(2).setCellRenderer(rightRenderer);
+    /**
+     * Ask for TCP port and start stream server
+     */
+    protected void startStreamServer() {
+        String port = JOptionPane.showInputDialog(this, "TCP port (localhost)", "20100");
+        if (port == null) {
+            return;
+        }
+        if (streamServer != null) {
+            streamServer.stop();
+            streamServer = null;
+        }
+        try {
+            StreamServer server = new StreamServer(this, Integer.parseInt(port.trim()));
+            server.start();
+            streamServer = server;
+            log("Stream server listening on port " + port.trim(), LogMessage.MessageType.INFO);
+        } catch (NumberFormatException e) {
+            log("Invalid port: " + port, LogMessage.MessageType.ERROR);
+        } catch (java.io.IOException e) {
+            log("Stream server: " + e.getMessage(), LogMessage.MessageType.ERROR);
+        }
+    }
 
-        // set alignment of length column
-        DefaultTableCellRenderer centerRenderer = new DefaultTableCellRenderer();
-        centerRenderer.setHorizontalAlignment(DefaultTableCellRenderer.CENTER);
-        columnModel.getColumn(3).setCellRenderer(centerRenderer);
+    /**
+     * Ask for an additional CAN channel and close it
+     */
+    protected void removeChannel() {
+        ArrayList<String> names = new ArrayList<String>();
+        for (CANChannel channel : channels) {
+            if (channel.getIndex() > 0 && channel.isOpen()) {
+                names.add("CH" + channel.getIndex() + " (" + channel.getName() + ")");
+            }
+        }
+        if (names.isEmpty()) {
+            return;
+        }
+        Object selected = JOptionPane.showInputDialog(this, "Channel", "Remove channel", JOptionPane.PLAIN_MESSAGE, null, names.toArray(), names.get(0));
+        if (selected == null) {
+            return;
+        }
+        int index = Integer.parseInt(((String) selected).substring(2, ((String) selected).indexOf(' ')));
 
-        // monitor table
-        columnModel = monitorTable.getColumnModel();
-        columnModel.getColumn(0).setPreferredWidth(50);
-        columnModel.getColumn(1).setPreferredWidth(50);
-        columnModel.getColumn(2).setPreferredWidth(40);
-        columnModel.getColumn(3).setPreferredWidth(90);
-        columnModel.getColumn(4).setPreferredWidth(40);
-        columnModel.getColumn(5).setPreferredWidth(370);        
-        columnModel.getColumn(3).setCellRenderer(rightRenderer);
-        columnModel.getColumn(4).setCellRenderer(centerRenderer);
-        
-        // trigger initial sync between message string and message input fields
-        msgString2msgFields();
-        
-        // init message listener
-        usbtin.addMessageListener(this);
+        if (bridge != null && bridge.uses(channels.get(index))) {
+            stopBridge();
+        }
+        try {
+            channels.get(index).close();
+            log("CH" + index + " disconnected", LogMessage.MessageType.INFO);
+        } catch (USBtinException e) {
+            log(e.getMessage(), LogMessage.MessageType.ERROR);
+        }
+        int tab = mainTabbedPane.indexOfTab("Monitor CH" + index);
+        if (tab >= 0) {
+            JTable table = (JTable) ((JScrollPane) mainTabbedPane.getComponentAt(tab)).getViewport().getView();
+            channelMonitorTables.remove(table);
+            rateTimers.remove(table).stop();
+            mainTabbedPane.removeTabAt(tab);
+        }
+        dispatcher.setMonitorModel(index, null);
     }
 
     /**
@@ -457,9 +2022,11 @@ public class USBtinViewer extends javax.swing.JFrame implements CANMessageListen
     private void connectionButtonActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_connectionButtonActionPerformed
 
         if (connectionButton.getText().equals("Disconnect")) {
+            if (bridge != null && bridge.uses(channels.get(0))) {
+                stopBridge();
+            }
             try {
-                usbtin.closeCANChannel();
-                usbtin.disconnect();
+                channels.get(0).close();
                 log("Disconnected", LogMessage.MessageType.INFO);
             } catch (USBtinException e) {
                 log(e.getMessage(), LogMessage.MessageType.ERROR);
@@ -471,8 +2038,9 @@ public class USBtinViewer extends javax.swing.JFrame implements CANMessageListen
             openmodeComboBox.setEnabled(true);
         } else {
             try {
-                usbtin.connect((String) serialPort.getSelectedItem());
-                usbtin.openCANChannel(Integer.parseInt((String) bitRate.getSelectedItem()), (USBtin.OpenMode) openmodeComboBox.getSelectedItem());
+                usbtin = createUSBtin();
+                channels.set(0, new CANChannel(0, usbtin, this));
+                channels.get(0).open((String) serialPort.getSelectedItem(), Integer.parseInt((String) bitRate.getSelectedItem()), (USBtin.OpenMode) openmodeComboBox.getSelectedItem());
                 connectionButton.setText("Disconnect");
                 bitRate.setEnabled(false);
                 serialPort.setEnabled(false);
@@ -504,12 +2072,16 @@ public class USBtinViewer extends javax.swing.JFrame implements CANMessageListen
      * @param evt Action event
      */
     private void clearButtonActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_clearButtonActionPerformed
+        dispatcher.clear();
         LogMessageTableModel tm = (LogMessageTableModel) logTable.getModel();
         tm.clear();
         baseTimestamp = System.currentTimeMillis();
         
         MonitorMessageTableModel mtm = (MonitorMessageTableModel) monitorTable.getModel();
         mtm.clear();
+        for (JTable table : channelMonitorTables) {
+            ((MonitorMessageTableModel) table.getModel()).clear();
+        }
     }//GEN-LAST:event_clearButtonActionPerformed
 
     /**
@@ -618,33 +2190,29 @@ public class USBtinViewer extends javax.swing.JFrame implements CANMessageListen
     // End of variables declaration//GEN-END:variables
 
     /**
-     * Receive can message (called via listener)
+     * Get current timestamp relative to start
      * 
-     * @param canmsg CAN message
+     * @return Timestamp in milliseconds
      */
-    @Override
-    public void receiveCANMessage(CANMessage canmsg) {
-        log(new LogMessage(canmsg, null, LogMessage.MessageType.IN, System.currentTimeMillis() - baseTimestamp));
+    public long getTimestamp() {
+        return System.currentTimeMillis() - baseTimestamp;
     }
 
     /**
-     * Insert given message to log list
+     * Insert given message to log list. May be called from any thread.
      * 
      * @param message Message to insert
      */
     public void log(LogMessage message) {
-        LogMessageTableModel tm = (LogMessageTableModel) logTable.getModel();
-        tm.addMessage(message);
-        if (followButton.isSelected()) {
-            logTable.scrollRectToVisible(logTable.getCellRect(tm.getRowCount() - 1, 0, true));
+        CycleWatchdog watchdog = cycleWatchdog;
+        if (watchdog != null) {
+            watchdog.receive(message);
         }
-
-        if ((message.type == LogMessage.MessageType.OUT) ||
-                (message.type == LogMessage.MessageType.IN)) {
-            MonitorMessageTableModel mtm = (MonitorMessageTableModel) monitorTable.getModel();
-            mtm.add(message);
+        dispatcher.post(message);
+        StreamServer server = streamServer;
+        if (server != null) {
+            server.publish(message);
         }
-
     }
 
     /**
@@ -654,11 +2222,7 @@ public class USBtinViewer extends javax.swing.JFrame implements CANMessageListen
      * @param type Type of message
      */
     public void log(String msg, LogMessage.MessageType type) {
-        LogMessageTableModel tm = (LogMessageTableModel) logTable.getModel();
-        tm.addMessage(new LogMessage(null, msg, type, System.currentTimeMillis() - baseTimestamp));
-        if (followButton.isSelected()) {
-            logTable.scrollRectToVisible(logTable.getCellRect(tm.getRowCount() - 1, 0, true));
-        }        
+        dispatcher.post(new LogMessage(null, msg, type, System.currentTimeMillis() - baseTimestamp));
     }
 
     /**
@@ -672,9 +2236,26 @@ public class USBtinViewer extends javax.swing.JFrame implements CANMessageListen
      * Send out a CAN message
      */
     public void send(CANMessage canmsg) {
-        log(new LogMessage(canmsg, null, LogMessage.MessageType.OUT, System.currentTimeMillis() - baseTimestamp));
+        send(canmsg, 0);
+    }
+
+    /**
+     * Send out a CAN message on given channel. May be called from any thread.
+     * 
+     * @param canmsg CAN message
+     * @param channel Channel index
+     */
+    public void send(CANMessage canmsg, int channel) {
+        CANChannel ch = channels.get(channel);
+        if (!ch.isOpen()) {
+            log("CH" + channel + " not connected", LogMessage.MessageType.ERROR);
+            return;
+        }
+        LogMessage message = new LogMessage(canmsg, null, LogMessage.MessageType.OUT, getTimestamp(), channel);
+        message.setNanoTime(System.nanoTime());
+        log(message);
         try {
-            usbtin.send(canmsg);
+            ch.send(canmsg);
         } catch (USBtinException e) {
             log(e.getMessage(), LogMessage.MessageType.ERROR);
         }